@@ -37,12 +37,17 @@ import org.springframework.scheduling.annotation.EnableScheduling;
                 // 依赖 RocketMQ 的服务
                 com.exam.online.service.ExamAnswerService.class,
                 com.exam.online.service.AnswerBufferService.class,
+                com.exam.online.service.AnswerSendJournal.class,
                 com.exam.online.consumer.AnswerRecordConsumer.class,
                 // 依赖数据库 Mapper 的服务
                 com.exam.online.service.AuthService.class,
                 com.exam.online.service.ExamParticipantService.class,
+                com.exam.online.service.PaperVariantService.class,
                 com.exam.online.service.ExamService.class,
+                com.exam.online.service.ExamPaperCacheService.class,
+                com.exam.online.service.ExamWarmUpService.class,
                 com.exam.online.service.QuestionService.class,
+                com.exam.online.service.QuestionTagService.class,
                 com.exam.online.service.ExamStatusScheduler.class
             }
         )
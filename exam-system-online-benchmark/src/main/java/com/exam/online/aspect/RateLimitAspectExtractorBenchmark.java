@@ -0,0 +1,119 @@
+package com.exam.online.aspect;
+
+import com.exam.online.controller.admin.controller.student.StudentExamController;
+import com.exam.online.dto.SaveAnswerRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流切面用户ID提取：旧实现（每次请求遍历参数并反射读取 studentId 字段）
+ * 与按方法缓存的提取器（数组下标 + MethodHandle 读取字段）的对比。
+ * <p>
+ * dto：保存答案接口，userId 位于请求体 SaveAnswerRequest.studentId（走字段回退查找）；
+ * long：userId 直接是名为 studentId 的 Long 参数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimitAspectExtractorBenchmark {
+
+    private static final String USER_ID_PARAM = "studentId";
+
+    @Param({"dto", "long"})
+    public String scenario;
+
+    private Method method;
+    private Object[] args;
+    private RateLimitAspect.UserIdExtractor extractor;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        if ("dto".equals(scenario)) {
+            method = StudentExamController.class.getMethod("saveAnswer", Long.class, SaveAnswerRequest.class);
+            SaveAnswerRequest request = new SaveAnswerRequest();
+            request.setStudentId(10001L);
+            request.setSortOrder(3);
+            request.setAnswer("A");
+            args = new Object[]{1L, request};
+        } else {
+            method = Fixture.class.getMethod("getPaper", Long.class, Long.class);
+            args = new Object[]{1L, 10001L};
+        }
+        extractor = RateLimitAspect.buildExtractor(method, USER_ID_PARAM);
+    }
+
+    @Benchmark
+    public Long legacyReflection() {
+        return legacyExtract(method, USER_ID_PARAM, args);
+    }
+
+    @Benchmark
+    public Long cachedExtractor() throws Throwable {
+        return extractor.extract(args);
+    }
+
+    /**
+     * 改造前 RateLimitAspect#extractUserId 的逻辑
+     */
+    private static Long legacyExtract(Method method, String paramName, Object[] args) {
+        Parameter[] parameters = method.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            if (paramName.equals(parameters[i].getName())) {
+                Object arg = args[i];
+                if (arg instanceof Long) {
+                    return (Long) arg;
+                } else if (arg != null) {
+                    Long value = readStudentId(arg);
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+        }
+        for (Object arg : args) {
+            if (arg != null) {
+                Long value = readStudentId(arg);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Long readStudentId(Object arg) {
+        try {
+            Field field = arg.getClass().getDeclaredField(USER_ID_PARAM);
+            field.setAccessible(true);
+            Object value = field.get(arg);
+            return value instanceof Long ? (Long) value : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * userId 直接作为方法参数的接口签名
+     */
+    public static class Fixture {
+        public void getPaper(Long examId, Long studentId) {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.exam.online.benchmark;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 基准测试用的 MySQL：指定系统属性 bench.mysql.url（可选 bench.mysql.user/bench.mysql.password）时连接已有库，
+ * 否则通过 Testcontainers 启动 mysql:8.0（需要本机 Docker）。
+ * 已有库请使用空的临时库：基准会按需建表，且只清理自己写入的数据。
+ * <p>
+ * 以 core 模块的 mapper XML 与 MyBatis-Plus BaseMapper 构建 SqlSessionFactory，执行的 SQL 与线上一致。
+ */
+public final class BenchmarkMysql implements AutoCloseable {
+
+    private final MySQLContainer<?> container;
+    private final HikariDataSource dataSource;
+    private final SqlSessionFactory sqlSessionFactory;
+
+    private BenchmarkMysql(MySQLContainer<?> container, String url, String user, String password) {
+        this.container = container;
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(user);
+        config.setPassword(password);
+        config.setMaximumPoolSize(4);
+        this.dataSource = new HikariDataSource(config);
+        MybatisConfiguration configuration = new MybatisConfiguration(
+            new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+        this.sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+    }
+
+    public static BenchmarkMysql start() {
+        String url = System.getProperty("bench.mysql.url");
+        if (url != null && !url.isBlank()) {
+            return new BenchmarkMysql(null, url,
+                System.getProperty("bench.mysql.user", "root"), System.getProperty("bench.mysql.password", ""));
+        }
+        MySQLContainer<?> container = new MySQLContainer<>(DockerImageName.parse("mysql:8.0"));
+        container.start();
+        return new BenchmarkMysql(container, container.getJdbcUrl(), container.getUsername(), container.getPassword());
+    }
+
+    /**
+     * 注册 Mapper 接口与 classpath 下对应的 XML（如 mapper/ExamQuestionMapper.xml）
+     */
+    public void addMapper(Class<?> mapperType, String xmlResource) {
+        MybatisConfiguration configuration = (MybatisConfiguration) sqlSessionFactory.getConfiguration();
+        configuration.addMapper(mapperType);
+        try (InputStream in = Resources.getResourceAsStream(xmlResource)) {
+            new XMLMapperBuilder(in, configuration, xmlResource, configuration.getSqlFragments()).parse();
+        } catch (IOException e) {
+            throw new IllegalStateException("加载mapper失败: " + xmlResource, e);
+        }
+    }
+
+    /**
+     * 执行建表等初始化语句
+     */
+    public void execute(String... statements) {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("执行初始化SQL失败", e);
+        }
+    }
+
+    public SqlSessionFactory sqlSessionFactory() {
+        return sqlSessionFactory;
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+        if (container != null) {
+            container.stop();
+        }
+    }
+}
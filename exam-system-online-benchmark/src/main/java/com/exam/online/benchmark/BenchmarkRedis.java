@@ -0,0 +1,56 @@
+package com.exam.online.benchmark;
+
+import com.exam.online.service.RedisService;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * 基准测试用的 Redis：指定系统属性 bench.redis.host（可选 bench.redis.port，默认 6379）时连接已有实例，
+ * 否则通过 Testcontainers 启动 redis:7-alpine（需要本机 Docker）
+ */
+public final class BenchmarkRedis implements AutoCloseable {
+
+    private static final int REDIS_PORT = 6379;
+
+    private final GenericContainer<?> container;
+    private final LettuceConnectionFactory connectionFactory;
+    private final RedisService redisService;
+
+    private BenchmarkRedis(GenericContainer<?> container, String host, int port) {
+        this.container = container;
+        this.connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        this.redisService = new RedisService(redisTemplate, new StringRedisTemplate(connectionFactory));
+    }
+
+    public static BenchmarkRedis start() {
+        String host = System.getProperty("bench.redis.host");
+        if (host != null && !host.isBlank()) {
+            return new BenchmarkRedis(null, host, Integer.getInteger("bench.redis.port", REDIS_PORT));
+        }
+        GenericContainer<?> container = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(REDIS_PORT);
+        container.start();
+        return new BenchmarkRedis(container, container.getHost(), container.getMappedPort(REDIS_PORT));
+    }
+
+    public RedisService redisService() {
+        return redisService;
+    }
+
+    @Override
+    public void close() {
+        connectionFactory.destroy();
+        if (container != null) {
+            container.stop();
+        }
+    }
+}
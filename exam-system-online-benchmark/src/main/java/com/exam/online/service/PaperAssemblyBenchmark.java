@@ -0,0 +1,241 @@
+package com.exam.online.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.exam.online.benchmark.BenchmarkMysql;
+import com.exam.online.dal.dataobject.ExamQuestionDO;
+import com.exam.online.dal.mapper.ExamQuestionMapper;
+import org.apache.ibatis.session.SqlSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 组卷耗时与题量的关系：ExamService#addQuestions（追加题目）与 ExamService#updateExam（按 sort_order 替换题目）
+ * 的 exam_questions 读写部分，旧实现逐行 insert/updateById（替换后再整卷查询一次算总分），
+ * 新实现多行 INSERT 与 CASE 批量 UPDATE（每条最多 500 行，总分按内存中的行计算）。
+ * 每次调用在一个事务内完成并提交，与 @Transactional 一致。
+ * <p>
+ * 默认用 Testcontainers 启动 MySQL，也可通过 -Dbench.mysql.url=... 指向已有的空库（见 {@link BenchmarkMysql}）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaperAssemblyBenchmark {
+
+    /**
+     * 与 ExamService 中单条SQL的最大行数一致
+     */
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    private static final long ADD_EXAM_ID = 900_000_001L;
+    private static final long UPDATE_EXAM_ID = 900_000_002L;
+
+    @Param({"50", "100", "200"})
+    public int questionCount;
+
+    private BenchmarkMysql mysql;
+    private List<ExamQuestionDO> additions;
+    private int updateRound;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mysql = BenchmarkMysql.start();
+        mysql.execute("CREATE TABLE IF NOT EXISTS exam_questions ("
+            + " id bigint NOT NULL AUTO_INCREMENT,"
+            + " exam_id bigint NOT NULL,"
+            + " question_id bigint NOT NULL,"
+            + " question_score int NOT NULL,"
+            + " sort_order int NULL DEFAULT 0,"
+            + " group_id tinyint NULL DEFAULT 1,"
+            + " PRIMARY KEY (id),"
+            + " UNIQUE INDEX uk_exam_question (exam_id, question_id),"
+            + " INDEX idx_exam_id (exam_id),"
+            + " INDEX idx_question_id (question_id),"
+            + " INDEX idx_sort (exam_id, sort_order),"
+            + " INDEX idx_group (exam_id, group_id))");
+        mysql.addMapper(ExamQuestionMapper.class, "mapper/ExamQuestionMapper.xml");
+        cleanUp();
+
+        additions = relations(ADD_EXAM_ID);
+        try (SqlSession session = mysql.sqlSessionFactory().openSession(false)) {
+            session.getMapper(ExamQuestionMapper.class).batchInsert(relations(UPDATE_EXAM_ID));
+            session.commit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cleanUp();
+        mysql.close();
+    }
+
+    /**
+     * 每次追加后删除本次写入的题目，下一次仍是向空试卷追加
+     */
+    @TearDown(Level.Invocation)
+    public void resetAdditions() {
+        mysql.execute("DELETE FROM exam_questions WHERE exam_id = " + ADD_EXAM_ID);
+    }
+
+    @Benchmark
+    public int addQuestionsPerRow() {
+        try (SqlSession session = mysql.sqlSessionFactory().openSession(false)) {
+            ExamQuestionMapper mapper = session.getMapper(ExamQuestionMapper.class);
+            int sortSeed = checkAdditions(mapper);
+            int totalScore = 0;
+            for (ExamQuestionDO relation : copies(additions, sortSeed)) {
+                mapper.insert(relation);
+                totalScore += relation.getQuestionScore();
+            }
+            session.commit();
+            return totalScore;
+        }
+    }
+
+    @Benchmark
+    public int addQuestionsBatch() {
+        try (SqlSession session = mysql.sqlSessionFactory().openSession(false)) {
+            ExamQuestionMapper mapper = session.getMapper(ExamQuestionMapper.class);
+            int sortSeed = checkAdditions(mapper);
+            List<ExamQuestionDO> relations = copies(additions, sortSeed);
+            int totalScore = 0;
+            for (ExamQuestionDO relation : relations) {
+                totalScore += relation.getQuestionScore();
+            }
+            for (int from = 0; from < relations.size(); from += WRITE_BATCH_SIZE) {
+                mapper.batchInsert(relations.subList(from, Math.min(from + WRITE_BATCH_SIZE, relations.size())));
+            }
+            session.commit();
+            return totalScore;
+        }
+    }
+
+    @Benchmark
+    public int updateExamPerRow() {
+        int score = nextScore();
+        try (SqlSession session = mysql.sqlSessionFactory().openSession(false)) {
+            ExamQuestionMapper mapper = session.getMapper(ExamQuestionMapper.class);
+            for (ExamQuestionDO relation : replace(loadPaper(mapper), score)) {
+                mapper.updateById(relation);
+            }
+            // 旧实现替换后重新查询整卷计算总分
+            int totalScore = loadPaper(mapper).stream().mapToInt(ExamQuestionDO::getQuestionScore).sum();
+            session.commit();
+            return totalScore;
+        }
+    }
+
+    @Benchmark
+    public int updateExamBatch() {
+        int score = nextScore();
+        try (SqlSession session = mysql.sqlSessionFactory().openSession(false)) {
+            ExamQuestionMapper mapper = session.getMapper(ExamQuestionMapper.class);
+            List<ExamQuestionDO> existing = loadPaper(mapper);
+            List<ExamQuestionDO> changed = replace(existing, score);
+            for (int from = 0; from < changed.size(); from += WRITE_BATCH_SIZE) {
+                mapper.batchUpdateById(changed.subList(from, Math.min(from + WRITE_BATCH_SIZE, changed.size())));
+            }
+            int totalScore = existing.stream().mapToInt(ExamQuestionDO::getQuestionScore).sum();
+            session.commit();
+            return totalScore;
+        }
+    }
+
+    /**
+     * 追加前的校验查询（两种实现相同）：请求内题目是否已在试卷中、当前题量作为 sort_order 起点
+     */
+    private int checkAdditions(ExamQuestionMapper mapper) {
+        List<Long> questionIds = additions.stream().map(ExamQuestionDO::getQuestionId).toList();
+        long exists = mapper.selectCount(new LambdaQueryWrapper<ExamQuestionDO>()
+            .eq(ExamQuestionDO::getExamId, ADD_EXAM_ID)
+            .in(ExamQuestionDO::getQuestionId, questionIds));
+        if (exists > 0) {
+            throw new IllegalStateException("追加试卷未清理: examId=" + ADD_EXAM_ID);
+        }
+        return mapper.selectCount(new LambdaQueryWrapper<ExamQuestionDO>()
+            .eq(ExamQuestionDO::getExamId, ADD_EXAM_ID)).intValue() + 1;
+    }
+
+    private List<ExamQuestionDO> loadPaper(ExamQuestionMapper mapper) {
+        return mapper.selectList(new LambdaQueryWrapper<ExamQuestionDO>()
+            .eq(ExamQuestionDO::getExamId, UPDATE_EXAM_ID));
+    }
+
+    /**
+     * 按 sort_order 替换全部题目的分值（题目ID与分组不变，避免触发唯一约束）
+     */
+    private List<ExamQuestionDO> replace(List<ExamQuestionDO> existing, int score) {
+        Map<Integer, ExamQuestionDO> bySortOrder = existing.stream()
+            .collect(Collectors.toMap(ExamQuestionDO::getSortOrder, Function.identity()));
+        List<ExamQuestionDO> changed = new ArrayList<>(questionCount);
+        for (int sortOrder = 1; sortOrder <= questionCount; sortOrder++) {
+            ExamQuestionDO relation = bySortOrder.get(sortOrder);
+            relation.setQuestionScore(score);
+            changed.add(relation);
+        }
+        return changed;
+    }
+
+    /**
+     * 每次替换交替使用不同分值，保证每行都真正发生更新
+     */
+    private int nextScore() {
+        return 2 + (updateRound++ & 1);
+    }
+
+    private List<ExamQuestionDO> relations(long examId) {
+        List<ExamQuestionDO> relations = new ArrayList<>(questionCount);
+        for (int i = 1; i <= questionCount; i++) {
+            ExamQuestionDO relation = new ExamQuestionDO();
+            relation.setExamId(examId);
+            relation.setQuestionId((long) i);
+            relation.setQuestionScore(2);
+            relation.setSortOrder(i);
+            relation.setGroupId(1);
+            relations.add(relation);
+        }
+        return relations;
+    }
+
+    /**
+     * 逐行 insert 会回填主键，每次调用使用新对象
+     */
+    private static List<ExamQuestionDO> copies(List<ExamQuestionDO> source, int sortSeed) {
+        List<ExamQuestionDO> relations = new ArrayList<>(source.size());
+        int idx = 0;
+        for (ExamQuestionDO item : source) {
+            ExamQuestionDO relation = new ExamQuestionDO();
+            relation.setExamId(item.getExamId());
+            relation.setQuestionId(item.getQuestionId());
+            relation.setQuestionScore(item.getQuestionScore());
+            relation.setGroupId(item.getGroupId());
+            relation.setSortOrder(sortSeed + idx++);
+            relations.add(relation);
+        }
+        return relations;
+    }
+
+    private void cleanUp() {
+        mysql.execute("DELETE FROM exam_questions WHERE exam_id IN (" + ADD_EXAM_ID + ", " + UPDATE_EXAM_ID + ")");
+    }
+}
@@ -0,0 +1,74 @@
+package com.exam.online.service;
+
+import com.exam.online.benchmark.BenchmarkRedis;
+import com.exam.online.config.RateLimitConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户级别限流三种 Redis 脚本（令牌桶 / GCRA / 滑动窗口）的吞吐对比，单位 ops/s。
+ * 与线上一致通过 RedisService#evalScript（EVALSHA）执行，key 与参数由 RateLimitAlgorithm 生成；
+ * users 个用户随机请求，规则为每秒 10 次、突发 10 次，放行与拒绝路径都会覆盖。
+ * <p>
+ * 默认用 Testcontainers 启动 Redis，也可通过 -Dbench.redis.host=... 指向已有实例（见 {@link BenchmarkRedis}）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class RateLimitAlgorithmBenchmark {
+
+    private static final String INTERFACE_TYPE = "save-answer";
+
+    @Param({"TOKEN_BUCKET", "GCRA", "SLIDING_WINDOW"})
+    public RateLimitAlgorithm algorithm;
+
+    @Param({"1000"})
+    public int users;
+
+    private BenchmarkRedis redis;
+    private RedisService redisService;
+    private RateLimitConfig.Rule rule;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redis = BenchmarkRedis.start();
+        redisService = redis.redisService();
+        redisService.registerScript(algorithm.getScript());
+        rule = new RateLimitConfig.Rule();
+        rule.setCapacity(10);
+        rule.setRefillRate(10);
+        rule.setInterval(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redis.close();
+    }
+
+    @Benchmark
+    public Long evaluate() {
+        long userId = ThreadLocalRandom.current().nextInt(users);
+        String key = "bench:rate_limit:" + INTERFACE_TYPE + ":user:" + userId;
+        long now = System.currentTimeMillis();
+        return redisService.evalScript(algorithm.getScript(), algorithm.keys(key, rule, now), algorithm.args(rule, now));
+    }
+}
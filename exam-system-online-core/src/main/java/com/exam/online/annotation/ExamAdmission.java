@@ -0,0 +1,24 @@
+package com.exam.online.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 考试级别准入控制注解（集群并发许可 + 单节点自适应并发上限）
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ExamAdmission {
+    
+    /**
+     * 操作类型（enter-exam, submit-exam），对应 exam.admission.rules 的 key
+     */
+    String operation();
+    
+    /**
+     * 考试ID参数名（默认为examId）
+     */
+    String examIdParam() default "examId";
+}
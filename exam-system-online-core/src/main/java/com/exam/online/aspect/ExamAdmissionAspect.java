@@ -0,0 +1,57 @@
+package com.exam.online.aspect;
+
+import com.exam.online.annotation.ExamAdmission;
+import com.exam.online.service.ExamAdmissionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 考试级别准入切面：在用户级别限流之后执行，获取准入许可后再执行业务方法
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(2)
+@RequiredArgsConstructor
+public class ExamAdmissionAspect {
+    
+    private final ExamAdmissionService examAdmissionService;
+    
+    /**
+     * 方法 -> 考试ID参数下标（-1 表示没有），首次调用时解析
+     */
+    private final Map<Method, Integer> examIdIndexes = new ConcurrentHashMap<>();
+    
+    @Around("@annotation(examAdmission)")
+    public Object around(ProceedingJoinPoint joinPoint, ExamAdmission examAdmission) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        int index = examIdIndexes.computeIfAbsent(method, m -> resolveIndex(m, examAdmission.examIdParam()));
+        Long examId = index >= 0 ? (Long) joinPoint.getArgs()[index] : null;
+        
+        try (ExamAdmissionService.Permit permit = examAdmissionService.acquire(examAdmission.operation(), examId)) {
+            return joinPoint.proceed();
+        }
+    }
+    
+    private int resolveIndex(Method method, String paramName) {
+        Parameter[] parameters = method.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            if (paramName.equals(parameters[i].getName()) && parameters[i].getType() == Long.class) {
+                return i;
+            }
+        }
+        log.warn("[准入切面] 方法参数中没有考试ID，仅按节点限制: method={}, examIdParam={}", method.getName(), paramName);
+        return -1;
+    }
+}
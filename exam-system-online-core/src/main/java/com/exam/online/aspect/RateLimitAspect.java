@@ -9,10 +9,17 @@ import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 限流切面：使用AOP在方法执行前进行限流检查
@@ -20,11 +27,19 @@ import java.lang.reflect.Parameter;
 @Slf4j
 @Aspect
 @Component
+@Order(1)
 @RequiredArgsConstructor
 public class RateLimitAspect {
     
+    private static final String STUDENT_ID_FIELD = "studentId";
+    
     private final UserRateLimitService userRateLimitService;
     
+    /**
+     * 方法 -> 用户ID提取器，首次调用时构建
+     */
+    private final Map<Method, UserIdExtractor> extractors = new ConcurrentHashMap<>();
+    
     @Around("@annotation(userRateLimit)")
     public Object around(ProceedingJoinPoint joinPoint, UserRateLimit userRateLimit) throws Throwable {
         // 提取用户ID
@@ -49,59 +64,81 @@ public class RateLimitAspect {
     }
     
     /**
-     * 从方法参数中提取用户ID
+     * 从方法参数中提取用户ID：按方法缓存提取器，每次请求只做一次数组下标访问和一次字段读取
      */
     private Long extractUserId(ProceedingJoinPoint joinPoint, String paramName) {
         try {
-            MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-            Method method = signature.getMethod();
-            Parameter[] parameters = method.getParameters();
-            Object[] args = joinPoint.getArgs();
-            
-            for (int i = 0; i < parameters.length; i++) {
-                Parameter parameter = parameters[i];
-                if (paramName.equals(parameter.getName())) {
-                    Object arg = args[i];
-                    if (arg instanceof Long) {
-                        return (Long) arg;
-                    } else if (arg != null) {
-                        // 尝试从对象中获取studentId字段
-                        try {
-                            java.lang.reflect.Field field = arg.getClass().getDeclaredField("studentId");
-                            field.setAccessible(true);
-                            Object value = field.get(arg);
-                            if (value instanceof Long) {
-                                return (Long) value;
-                            }
-                        } catch (Exception e) {
-                            // 忽略
-                        }
-                    }
-                }
+            Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+            UserIdExtractor extractor = extractors.computeIfAbsent(method, m -> buildExtractor(m, paramName));
+            return extractor.extract(joinPoint.getArgs());
+        } catch (Throwable e) {
+            log.warn("[限流切面] 提取用户ID失败: method={}", 
+                joinPoint.getSignature().getName(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * 按方法签名构建提取器：优先取名为 paramName 的参数（Long 直接返回，对象读取其 studentId 字段），
+     * 否则取第一个声明了 Long 类型 studentId 字段的参数；都没有时返回恒为null的提取器
+     */
+    static UserIdExtractor buildExtractor(Method method, String paramName) {
+        Parameter[] parameters = method.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            if (!paramName.equals(parameters[i].getName())) {
+                continue;
             }
-            
-            // 如果没找到指定参数名，尝试查找包含studentId的对象
-            for (Object arg : args) {
-                if (arg != null) {
-                    try {
-                        java.lang.reflect.Field field = arg.getClass().getDeclaredField("studentId");
-                        field.setAccessible(true);
-                        Object value = field.get(arg);
-                        if (value instanceof Long) {
-                            return (Long) value;
-                        }
-                    } catch (Exception e) {
-                        // 忽略
-                    }
-                }
+            Class<?> type = parameters[i].getType();
+            int index = i;
+            if (type == Long.class || type == long.class) {
+                return args -> (Long) args[index];
             }
-            
+            MethodHandle getter = studentIdGetter(type);
+            if (getter != null) {
+                return fieldExtractor(index, getter);
+            }
+        }
+        for (int i = 0; i < parameters.length; i++) {
+            MethodHandle getter = studentIdGetter(parameters[i].getType());
+            if (getter != null) {
+                return fieldExtractor(i, getter);
+            }
+        }
+        log.warn("[限流切面] 方法参数中没有可提取的用户ID: method={}, userIdParam={}", method.getName(), paramName);
+        return args -> null;
+    }
+    
+    private static UserIdExtractor fieldExtractor(int index, MethodHandle getter) {
+        return args -> {
+            Object arg = args[index];
+            return arg == null ? null : (Long) getter.invokeExact(arg);
+        };
+    }
+    
+    /**
+     * 类型上声明的 Long 类型 studentId 字段的 getter 句柄，签名统一为 (Object)Long
+     */
+    private static MethodHandle studentIdGetter(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.getName().startsWith("java.")) {
             return null;
-        } catch (Exception e) {
-            log.warn("[限流切面] 提取用户ID失败: method={}", 
-                joinPoint.getSignature().getName(), e);
+        }
+        try {
+            Field field = type.getDeclaredField(STUDENT_ID_FIELD);
+            if (field.getType() != Long.class) {
+                return null;
+            }
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            return lookup.unreflectGetter(field).asType(MethodType.methodType(Long.class, Object.class));
+        } catch (NoSuchFieldException | IllegalAccessException e) {
             return null;
         }
     }
+    
+    /**
+     * 按方法缓存的用户ID提取器
+     */
+    @FunctionalInterface
+    interface UserIdExtractor {
+        Long extract(Object[] args) throws Throwable;
+    }
 }
-
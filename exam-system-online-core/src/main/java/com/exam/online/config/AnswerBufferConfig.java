@@ -0,0 +1,56 @@
+package com.exam.online.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 答题缓冲配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "exam.answer-buffer")
+public class AnswerBufferConfig {
+
+    /**
+     * 分片数（按 examId+studentId 哈希，向上取整为2的幂）
+     */
+    private int shardCount = 64;
+
+    /**
+     * 合并窗口：最后一次修改后等待多久写入Redis和MQ
+     */
+    private Duration mergeWindow = Duration.ofSeconds(3);
+
+    /**
+     * 时间轮刻度
+     */
+    private Duration tickDuration = Duration.ofMillis(100);
+
+    /**
+     * 时间轮槽位数（向上取整为2的幂）
+     */
+    private int wheelSize = 512;
+
+    /**
+     * 刷新线程数
+     */
+    private int flushThreads = 4;
+
+    /**
+     * 单批最多刷新的答案数（一次Redis管道 + 一次MQ批量发送）
+     */
+    private int flushBatchSize = 200;
+
+    /**
+     * 刷新队列容量（按批次计），队列满时整批直接写入本地日志，时间轮线程不执行刷新
+     */
+    private int flushQueueCapacity = 1000;
+
+    /**
+     * 提交考试时等待该考生答案被MQ确认的最长时间
+     */
+    private Duration submitFlushTimeout = Duration.ofSeconds(3);
+}
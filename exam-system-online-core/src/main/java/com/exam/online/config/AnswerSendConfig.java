@@ -0,0 +1,75 @@
+package com.exam.online.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 答题消息发送配置（异步发送窗口 + 本地失败日志）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rocketmq.answer.send")
+public class AnswerSendConfig {
+
+    /**
+     * 在途（已异步发送、未收到Broker确认）消息数上限
+     */
+    private int maxInFlight = 2000;
+
+    /**
+     * 发送窗口已满时等待发送的批次数上限，刷新线程不等待许可，队列也满时直接写入本地日志
+     */
+    private int pendingCapacity = 100;
+
+    /**
+     * 单次发送超时
+     */
+    private Duration sendTimeout = Duration.ofSeconds(3);
+
+    /**
+     * 本地失败日志配置
+     */
+    private Journal journal = new Journal();
+
+    @Data
+    public static class Journal {
+        /**
+         * 日志目录
+         */
+        private String dir = "data/answer-journal";
+
+        /**
+         * 单个日志段文件大小（内存映射）
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * 已重放的段清零后留作空闲段复用的最大个数，超出的段删除（磁盘空间在映射被GC回收后释放）
+         */
+        private int spareSegments = 2;
+
+        /**
+         * 日志段数上限（不含空闲段），达到上限后追加失败，答案只保留在Redis中
+         */
+        private int maxSegments = 64;
+
+        /**
+         * 每次追加后是否强制刷盘
+         */
+        private boolean forceOnAppend = true;
+
+        /**
+         * 重放间隔
+         */
+        private Duration replayInterval = Duration.ofSeconds(5);
+
+        /**
+         * 单次重放批量大小
+         */
+        private int replayBatchSize = 100;
+    }
+}
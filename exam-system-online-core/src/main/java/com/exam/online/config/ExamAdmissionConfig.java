@@ -0,0 +1,76 @@
+package com.exam.online.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 考试级别准入控制配置（进入考试、提交考试的集群并发许可 + 单节点自适应并发上限）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "exam.admission")
+public class ExamAdmissionConfig {
+
+    /**
+     * 是否启用准入控制
+     */
+    private boolean enabled = true;
+
+    /**
+     * 集群许可租约时长，持有节点宕机时许可在租约到期后自动回收
+     */
+    private Duration leaseTimeout = Duration.ofSeconds(30);
+
+    /**
+     * 被拒绝时建议客户端重试的间隔（秒）
+     */
+    private int retryAfterSeconds = 1;
+
+    /**
+     * 按操作（enter-exam, submit-exam）配置的准入规则
+     */
+    private Map<String, Rule> rules = new HashMap<>();
+
+    @Data
+    public static class Rule {
+        /**
+         * 是否启用
+         */
+        private boolean enabled = true;
+
+        /**
+         * 每场考试的集群并发许可数，小于等于0表示不限制
+         */
+        private int clusterPermits = 200;
+
+        /**
+         * 单节点初始并发上限
+         */
+        private int initialLimit = 20;
+
+        /**
+         * 单节点并发上限下界
+         */
+        private int minLimit = 4;
+
+        /**
+         * 单节点并发上限上界
+         */
+        private int maxLimit = 200;
+
+        /**
+         * 单节点并发已满时最多排队等待多久，超时返回重试
+         */
+        private Duration maxQueueWait = Duration.ofMillis(200);
+
+        /**
+         * 单节点最多排队请求数，超出直接返回重试
+         */
+        private int maxQueueSize = 100;
+    }
+}
@@ -0,0 +1,41 @@
+package com.exam.online.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 考试开考前预热配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "exam.warm-up")
+public class ExamWarmUpConfig {
+
+    /**
+     * 是否开启预热
+     */
+    private boolean enabled = true;
+
+    /**
+     * 提前多久预热（开始时间前）
+     */
+    private Duration leadTime = Duration.ofMinutes(10);
+
+    /**
+     * 预热扫描间隔
+     */
+    private Duration interval = Duration.ofSeconds(30);
+
+    /**
+     * 学生名册分页加载大小
+     */
+    private int rosterBatchSize = 1000;
+
+    /**
+     * Redis中学生名册的过期时间
+     */
+    private Duration rosterTtl = Duration.ofHours(12);
+}
@@ -0,0 +1,31 @@
+package com.exam.online.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 考生会话缓存配置（本地 + Redis 两级）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "exam.participant-cache")
+public class ParticipantCacheConfig {
+
+    /**
+     * 本地缓存最大条目数
+     */
+    private int localMaxSize = 100_000;
+
+    /**
+     * 本地缓存过期时间
+     */
+    private Duration localTtl = Duration.ofMinutes(10);
+
+    /**
+     * 回源数据库后写入Redis的会话过期时间下限（进入考试与预热时按考试结束时间计算，只延长不缩短）
+     */
+    private Duration redisTtl = Duration.ofHours(6);
+}
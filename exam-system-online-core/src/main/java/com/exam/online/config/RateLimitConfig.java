@@ -30,6 +30,39 @@ public class RateLimitConfig {
      */
     private UserLevel userLevel = new UserLevel();
     
+    /**
+     * 本地令牌桶预过滤
+     */
+    private Local local = new Local();
+    
+    @Data
+    public static class Local {
+        /**
+         * 是否启用本地预过滤（本地桶放行后才访问Redis）
+         */
+        private boolean enabled = true;
+        
+        /**
+         * 集群节点数，集群预算按节点均分（本地桶容量与速率 = 规则值 * burstFactor / nodeCount）
+         */
+        private int nodeCount = 1;
+        
+        /**
+         * 本地份额的放大系数，用于吸收负载均衡不均
+         */
+        private double burstFactor = 1.0;
+        
+        /**
+         * 分段数（按userId哈希）
+         */
+        private int stripes = 16;
+        
+        /**
+         * 空闲多久的本地桶被清理（秒）
+         */
+        private int idleSeconds = 60;
+    }
+    
     @Data
     public static class UserLevel {
         /**
@@ -38,9 +71,9 @@ public class RateLimitConfig {
         private boolean enabled = true;
         
         /**
-         * 限流算法
+         * 限流算法（规则未指定时使用），为空时使用 defaultAlgorithm
          */
-        private String algorithm = "token-bucket";
+        private String algorithm;
         
         /**
          * 限流规则
@@ -55,18 +88,23 @@ public class RateLimitConfig {
          */
         private boolean enabled = true;
         
+        /**
+         * 限流算法：token-bucket / gcra / sliding-window，为空时使用 user-level.algorithm
+         */
+        private String algorithm;
+        
         /**
          * QPS（每秒请求数）
          */
         private int qps = 10;
         
         /**
-         * 桶容量（令牌桶算法）
+         * 桶容量（令牌桶、GCRA 的突发上限）
          */
         private int capacity = 10;
         
         /**
-         * 补充速率（令牌桶算法）
+         * 补充速率（令牌桶、GCRA 为每 interval 的补充数，滑动窗口为每 interval 的请求上限）
          */
         private int refillRate = 10;
         
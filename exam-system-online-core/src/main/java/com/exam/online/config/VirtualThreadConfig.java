@@ -0,0 +1,36 @@
+package com.exam.online.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 虚拟线程模式配置（Web请求线程和答题刷新线程）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "exam.virtual-threads")
+public class VirtualThreadConfig {
+
+    /**
+     * 是否启用虚拟线程模式（默认关闭）
+     */
+    private boolean enabled = false;
+
+    /**
+     * 是否通过JFR监听虚拟线程钉住（pinned）事件
+     */
+    private boolean pinnedDiagnostics = true;
+
+    /**
+     * 钉住时长超过该阈值才记录
+     */
+    private Duration pinnedThreshold = Duration.ofMillis(20);
+
+    /**
+     * 钉住告警日志输出的栈帧数
+     */
+    private int pinnedStackDepth = 8;
+}
@@ -0,0 +1,27 @@
+package com.exam.online.config;
+
+import com.exam.online.service.VirtualThreadMonitor;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程模式下Tomcat每个请求一个虚拟线程，请求阻塞在Redis/MySQL/休眠时不再占用平台线程
+ */
+@Configuration
+@ConditionalOnClass(ProtocolHandler.class)
+@ConditionalOnProperty(prefix = "exam.virtual-threads", name = "enabled", havingValue = "true")
+public class VirtualThreadWebConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(
+            VirtualThreadMonitor virtualThreadMonitor) {
+        return protocolHandler -> protocolHandler.setExecutor(
+            Executors.newThreadPerTaskExecutor(virtualThreadMonitor.newThreadFactory("tomcat-vt-")));
+    }
+}
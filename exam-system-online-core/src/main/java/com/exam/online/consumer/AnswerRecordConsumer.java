@@ -1,23 +1,45 @@
 package com.exam.online.consumer;
 
 import com.exam.online.dal.dataobject.AnswerRecordDO;
-import com.exam.online.dal.dataobject.ExamParticipantDO;
-import com.exam.online.dal.dataobject.ExamQuestionDO;
 import com.exam.online.dal.mapper.AnswerRecordMapper;
-import com.exam.online.dal.mapper.ExamParticipantMapper;
-import com.exam.online.dal.mapper.ExamQuestionMapper;
 import com.exam.online.dto.AnswerMessage;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.exam.online.service.ExamPaperCacheService;
+import com.exam.online.service.ExamParticipantService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.apache.rocketmq.spring.core.RocketMQPushConsumerLifecycleListener;
+import org.apache.rocketmq.spring.support.RocketMQMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
+/**
+ * 答题记录落库消费者。
+ * 批量模式下一次拉取多条消息，参与记录ID走缓存解析，整批用一条
+ * INSERT ... ON DUPLICATE KEY UPDATE 写入，按 timestamp 后写优先，重复投递幂等。
+ * 同一批内相同 (participantId, questionId) 只保留最新答案，并按该顺序写入，
+ * 使并发消费线程以相同顺序对唯一索引加锁，避免交叉死锁。
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -25,95 +47,152 @@ import java.time.LocalDateTime;
     topic = "${rocketmq.answer.topic:exam-answer-save}",
     consumerGroup = "${rocketmq.answer.consumer-group:exam-answer-consumer-group}"
 )
-public class AnswerRecordConsumer implements RocketMQListener<AnswerMessage> {
-    
+public class AnswerRecordConsumer implements RocketMQListener<AnswerMessage>, RocketMQPushConsumerLifecycleListener {
+
     private final AnswerRecordMapper answerRecordMapper;
-    private final ExamParticipantMapper examParticipantMapper;
-    private final ExamQuestionMapper examQuestionMapper;
-    
+    private final ExamParticipantService examParticipantService;
+    private final ExamPaperCacheService examPaperCacheService;
+    private final RocketMQMessageConverter rocketMQMessageConverter;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${rocketmq.answer.batch-consume.enabled:true}")
+    private boolean batchConsumeEnabled;
+
+    @Value("${rocketmq.answer.batch-consume.max-size:32}")
+    private int batchConsumeMaxSize;
+
+    /**
+     * 找不到参与记录的消息在作答后多久内稍后重试（进入考试的事务可能尚未提交），超过则丢弃
+     */
+    @Value("${rocketmq.answer.orphan-retry-window:5m}")
+    private Duration orphanRetryWindow;
+
+    private record RecordKey(Long participantId, Long questionId) implements Comparable<RecordKey> {
+        private static final Comparator<RecordKey> ORDER = Comparator
+            .comparing(RecordKey::participantId, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(RecordKey::questionId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+        @Override
+        public int compareTo(RecordKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
     @Override
-    @Transactional
     public void onMessage(AnswerMessage message) {
+        if (persist(List.of(message)) > 0) {
+            throw new IllegalStateException("未找到考试参与记录，稍后重试");
+        }
+    }
+
+    /**
+     * 开启批量模式时替换容器默认的逐条监听器
+     */
+    @Override
+    public void prepareStart(DefaultMQPushConsumer consumer) {
+        if (!batchConsumeEnabled) {
+            return;
+        }
+        int maxSize = Math.max(batchConsumeMaxSize, 1);
+        consumer.setConsumeMessageBatchMaxSize(maxSize);
+        consumer.setPullBatchSize(Math.max(maxSize, consumer.getPullBatchSize()));
+        consumer.setMessageListener((MessageListenerConcurrently) (messages, context) -> {
+            try {
+                List<AnswerMessage> answers = new ArrayList<>(messages.size());
+                for (MessageExt messageExt : messages) {
+                    answers.add(convert(messageExt));
+                }
+                if (persist(answers) > 0) {
+                    // 已写入的记录重试时幂等
+                    return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+                }
+                return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+            } catch (Exception e) {
+                // 整批稍后重试，upsert 幂等，重试不会重复累加
+                log.error("批量处理答题记录消息失败: size={}", messages.size(), e);
+                return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+            }
+        });
+        log.info("答题记录消费者启用批量模式: consumeMessageBatchMaxSize={}", maxSize);
+    }
+
+    /**
+     * 批量落库：按考试解析参与记录，同键合并为最新答案并按 (participantId, questionId) 排序后一次 upsert
+     * @return 找不到参与记录、需要稍后重试的消息数
+     */
+    public int persist(List<AnswerMessage> messages) {
         try {
-            log.info("收到答题记录消息: examId={}, studentId={}, sortOrder={}, questionId={}, answer={}",
-                message.getExamId(), message.getStudentId(), message.getSortOrder(),
-                message.getQuestionId(), message.getAnswer());
-            
-            // 1. 获取或创建participant记录
-            ExamParticipantDO participant = examParticipantMapper.selectOne(
-                new LambdaQueryWrapper<ExamParticipantDO>()
-                    .eq(ExamParticipantDO::getExamId, message.getExamId())
-                    .eq(ExamParticipantDO::getUserId, message.getStudentId())
-                    .orderByDesc(ExamParticipantDO::getCreatedAt)
-                    .last("LIMIT 1")
-            );
-            
-            if (participant == null) {
-                log.warn("未找到考试参与记录: examId={}, studentId={}", 
-                    message.getExamId(), message.getStudentId());
-                return;
+            Map<Long, Set<Long>> studentsByExam = new LinkedHashMap<>();
+            for (AnswerMessage message : messages) {
+                studentsByExam.computeIfAbsent(message.getExamId(), k -> new HashSet<>()).add(message.getStudentId());
             }
-            
-            // 2. 查询或创建答题记录
-            AnswerRecordDO answerRecord = answerRecordMapper.selectOne(
-                new LambdaQueryWrapper<AnswerRecordDO>()
-                    .eq(AnswerRecordDO::getParticipantId, participant.getId())
-                    .eq(AnswerRecordDO::getQuestionId, message.getQuestionId())
-            );
-            
-            LocalDateTime now = LocalDateTime.now();
-            
-            // 获取题目分数
-            ExamQuestionDO examQuestion = examQuestionMapper.selectOne(
-                new LambdaQueryWrapper<ExamQuestionDO>()
-                    .eq(ExamQuestionDO::getExamId, message.getExamId())
-                    .eq(ExamQuestionDO::getQuestionId, message.getQuestionId())
-                    .last("LIMIT 1")
-            );
-            
-            Integer questionScore = 0;
-            if (examQuestion != null && examQuestion.getQuestionScore() != null) {
-                questionScore = examQuestion.getQuestionScore();
+            Map<Long, Map<Long, Long>> participantIdsByExam = new LinkedHashMap<>();
+            studentsByExam.forEach((examId, studentIds) ->
+                participantIdsByExam.put(examId, examParticipantService.resolveParticipantIds(examId, studentIds)));
+
+            TreeMap<RecordKey, AnswerRecordDO> latest = new TreeMap<>();
+            int deferred = 0;
+            LocalDateTime retryAfter = LocalDateTime.now().minus(orphanRetryWindow);
+            for (AnswerMessage message : messages) {
+                Long participantId = participantIdsByExam.get(message.getExamId()).get(message.getStudentId());
+                if (participantId == null) {
+                    boolean retry = message.getTimestamp() != null && message.getTimestamp().isAfter(retryAfter);
+                    orphanCounter(retry ? "retry" : "dropped").increment();
+                    log.warn("未找到考试参与记录: examId={}, studentId={}, action={}",
+                        message.getExamId(), message.getStudentId(), retry ? "retry" : "dropped");
+                    if (retry) {
+                        deferred++;
+                    }
+                    continue;
+                }
+
+                AnswerRecordDO record = new AnswerRecordDO();
+                record.setParticipantId(participantId);
+                record.setExamId(message.getExamId());
+                record.setQuestionId(message.getQuestionId());
+                record.setUserAnswer(message.getAnswer());
+                // 获取题目分数（试卷编排缓存）
+                record.setQuestionScore(examPaperCacheService.getLayout(message.getExamId())
+                    .scoreOf(message.getQuestionId(), message.getSortOrder()));
+                record.setAnswerTime(message.getTimestamp());
+                latest.merge(new RecordKey(participantId, message.getQuestionId()), record,
+                    (existing, candidate) -> isNewer(candidate, existing) ? candidate : existing);
             }
-            
-            if (answerRecord == null) {
-                // 创建新记录
-                answerRecord = new AnswerRecordDO();
-                answerRecord.setParticipantId(participant.getId());
-                answerRecord.setExamId(message.getExamId());
-                answerRecord.setQuestionId(message.getQuestionId());
-                answerRecord.setUserAnswer(message.getAnswer());
-                answerRecord.setChangeTimes(1);
-                answerRecord.setIsCorrect(0);
-                answerRecord.setQuestionScore(questionScore);
-                answerRecord.setTrueScore(BigDecimal.ZERO);
-                answerRecord.setReviewStatus(0);
-                answerRecord.setCreatedTime(now);
-                answerRecord.setUpdatedTime(now);
-                answerRecordMapper.insert(answerRecord);
-            } else {
-                // 更新现有记录
-                answerRecord.setUserAnswer(message.getAnswer());
-                answerRecord.setChangeTimes(
-                    (answerRecord.getChangeTimes() == null ? 0 : answerRecord.getChangeTimes()) + 1
-                );
-                answerRecord.setUpdatedTime(now);
-                answerRecordMapper.updateById(answerRecord);
+            if (latest.isEmpty()) {
+                return deferred;
             }
-            
-            log.info("答题记录持久化成功: examId={}, studentId={}, participantId={}, questionId={}, changeTimes={}, userAnswer={}",
-                message.getExamId(),
-                message.getStudentId(),
-                participant.getId(),
-                message.getQuestionId(),
-                answerRecord.getChangeTimes(),
-                answerRecord.getUserAnswer());
-                
+
+            List<AnswerRecordDO> records = new ArrayList<>(latest.values());
+            answerRecordMapper.batchUpsert(records);
+            log.debug("答题记录批量持久化成功: messages={}, records={}", messages.size(), records.size());
+            return deferred;
         } catch (Exception e) {
-            log.error("处理答题记录消息失败: {}", message, e);
+            log.error("处理答题记录消息失败: size={}", messages.size(), e);
             // RocketMQ会自动重试，超过重试次数会进入死信队列
             throw e;
         }
     }
-}
 
+    /**
+     * 同一题在一批中多次出现时取作答时间更晚的一条，时间相同保留先到的（与库内后写优先规则一致）
+     */
+    private static boolean isNewer(AnswerRecordDO candidate, AnswerRecordDO existing) {
+        if (candidate.getAnswerTime() == null) {
+            return false;
+        }
+        return existing.getAnswerTime() == null || candidate.getAnswerTime().isAfter(existing.getAnswerTime());
+    }
+
+    private Counter orphanCounter(String action) {
+        return Counter.builder("exam.answer.consume.orphaned")
+            .description("找不到考试参与记录的答题消息数")
+            .tag("action", action)
+            .register(meterRegistry);
+    }
+
+    private AnswerMessage convert(MessageExt messageExt) {
+        String body = new String(messageExt.getBody(), StandardCharsets.UTF_8);
+        return (AnswerMessage) rocketMQMessageConverter.getMessageConverter()
+            .fromMessage(MessageBuilder.withPayload(body).build(), AnswerMessage.class);
+    }
+}
@@ -2,7 +2,9 @@ package com.exam.online.controller.admin;
 
 import com.exam.online.dto.Result;
 import com.exam.online.exception.RateLimitException;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -20,7 +22,8 @@ public class GlobalExceptionHandler {
      */
     @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
     @ExceptionHandler(RateLimitException.class)
-    public Result<Void> handleRateLimitException(RateLimitException ex) {
+    public Result<Void> handleRateLimitException(RateLimitException ex, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfter()));
         log.warn("[限流异常] 请求被限流: message={}, retryAfter={}", ex.getMessage(), ex.getRetryAfter());
         return Result.failure(429, ex.getMessage());
     }
@@ -1,19 +1,26 @@
 package com.exam.online.controller.admin.controller.exam;
 
+import com.exam.online.dto.CursorPageResponse;
 import com.exam.online.dto.ExamAddQuestionsRequest;
 import com.exam.online.dto.ExamCreateRequest;
 import com.exam.online.dto.ExamResponse;
 import com.exam.online.dto.ExamRandomGenerateRequest;
 import com.exam.online.dto.ExamRandomGenerateResponse;
 import com.exam.online.dto.ExamStatusUpdateRequest;
+import com.exam.online.dto.ExamSummaryResponse;
 import com.exam.online.dto.ExamUpdateRequest;
 import com.exam.online.dto.Result;
+import com.exam.online.service.ExamPaperCacheService;
 import com.exam.online.service.ExamService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -21,6 +28,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -39,8 +47,8 @@ public class ExamController {
      * 分页查询全部考试
      */
     @GetMapping("/list")
-    public Result<java.util.List<ExamResponse>> listAll(@RequestParam(value = "page", defaultValue = "1") @Min(1) int page,
-                                                        @RequestParam(value = "size", defaultValue = "20") @Min(1) int size) {
+    public Result<java.util.List<ExamSummaryResponse>> listAll(@RequestParam(value = "page", defaultValue = "1") @Min(1) int page,
+                                                               @RequestParam(value = "size", defaultValue = "20") @Min(1) int size) {
         log.info("分页查询考试列表 page={}, size={}", page, size);
         return Result.success(examService.listAll(page, size));
     }
@@ -54,6 +62,16 @@ public class ExamController {
         return Result.success(examService.getById(examId));
     }
 
+    /**
+     * 游标分页查询考试（不返回总数）
+     */
+    @GetMapping("/list/cursor")
+    public Result<CursorPageResponse<ExamSummaryResponse>> listByCursor(@RequestParam(value = "cursor", required = false) String cursor,
+                                                                        @RequestParam(value = "size", defaultValue = "20") @Min(1) int size) {
+        log.info("游标查询考试列表 cursor={}, size={}", cursor, size);
+        return Result.success(examService.listByCursor(cursor, size));
+    }
+
     /**
      * 创建试卷
      */
@@ -78,9 +96,29 @@ public class ExamController {
      * 根据考试ID查询试卷题目内容
      */
     @GetMapping("/{examId}/questions/detail")
-    public Result<ExamRandomGenerateResponse> getExamQuestions(@PathVariable("examId") Long examId) {
-        log.info("查询试卷题目详情，examId={}", examId);
-        return Result.success(examService.getExamQuestions(examId));
+    public ResponseEntity<byte[]> getExamQuestions(@PathVariable("examId") Long examId,
+                                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        log.debug("查询试卷题目详情，examId={}", examId);
+        ExamPaperCacheService.PaperView view = examService.getExamQuestionsView(examId);
+        if (view.etag() == null) {
+            // 试卷版本号读取失败，无法判断客户端副本是否最新，总是返回完整试卷
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .cacheControl(CacheControl.noStore())
+                    .body(view.body());
+        }
+        // 试卷版本未变时客户端直接复用本地副本
+        if (view.etag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(view.etag())
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(view.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(view.body());
     }
 
     /**
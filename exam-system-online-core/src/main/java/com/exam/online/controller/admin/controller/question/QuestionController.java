@@ -1,7 +1,9 @@
 package com.exam.online.controller.admin.controller.question;
 
+import com.exam.online.dto.CursorPageResponse;
 import com.exam.online.dto.QuestionCreateRequest;
 import com.exam.online.dto.QuestionResponse;
+import com.exam.online.dto.QuestionSummaryResponse;
 import com.exam.online.dto.QuestionUpdateRequest;
 import com.exam.online.dto.Result;
 import com.exam.online.service.QuestionService;
@@ -14,6 +16,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -37,23 +40,53 @@ public class QuestionController {
      * 按标签搜索题目（分页）
      */
     @GetMapping("/search-by-tag")
-    public Result<List<QuestionResponse>> searchByTag(@RequestParam("tag") @NotBlank String tag,
-                                              @RequestParam(value = "page", defaultValue = "1") @Min(1) int page,
-                                              @RequestParam(value = "size", defaultValue = "20") @Min(1) int size) {
+    public Result<List<QuestionSummaryResponse>> searchByTag(@RequestParam("tag") @NotBlank String tag,
+                                                             @RequestParam(value = "page", defaultValue = "1") @Min(1) int page,
+                                                             @RequestParam(value = "size", defaultValue = "20") @Min(1) int size) {
         log.info("按标签搜索题目 tag={}, page={}, size={}", tag, page, size);
         return Result.success(questionService.listByTag(tag, page, size));
     }
 
+    /**
+     * 按标签搜索题目（游标分页，不返回总数）
+     */
+    @GetMapping("/search-by-tag/cursor")
+    public Result<CursorPageResponse<QuestionSummaryResponse>> searchByTagCursor(@RequestParam("tag") @NotBlank String tag,
+                                                                                 @RequestParam(value = "cursor", required = false) String cursor,
+                                                                                 @RequestParam(value = "size", defaultValue = "20") @Min(1) int size) {
+        log.info("按标签游标查询题目 tag={}, cursor={}, size={}", tag, cursor, size);
+        return Result.success(questionService.listByTagCursor(tag, cursor, size));
+    }
+
     /**
      * 分页查询全部题目
      */
     @GetMapping("/list")
-    public Result<List<QuestionResponse>> listAll(@RequestParam(value = "page", defaultValue = "1") @Min(1) int page,
-                                                  @RequestParam(value = "size", defaultValue = "20") @Min(1) int size) {
+    public Result<List<QuestionSummaryResponse>> listAll(@RequestParam(value = "page", defaultValue = "1") @Min(1) int page,
+                                                         @RequestParam(value = "size", defaultValue = "20") @Min(1) int size) {
         log.info("分页查询全部题目 page={}, size={}", page, size);
         return Result.success(questionService.listAll(page, size));
     }
 
+    /**
+     * 游标分页查询全部题目（不返回总数）
+     */
+    @GetMapping("/list/cursor")
+    public Result<CursorPageResponse<QuestionSummaryResponse>> listByCursor(@RequestParam(value = "cursor", required = false) String cursor,
+                                                                            @RequestParam(value = "size", defaultValue = "20") @Min(1) int size) {
+        log.info("游标查询全部题目 cursor={}, size={}", cursor, size);
+        return Result.success(questionService.listByCursor(cursor, size));
+    }
+
+    /**
+     * 根据题目ID查询题目详情（完整内容、选项与答案）
+     */
+    @GetMapping("/{id}")
+    public Result<QuestionResponse> getById(@PathVariable("id") Long id) {
+        log.info("查询题目详情，id={}", id);
+        return Result.success(questionService.getById(id));
+    }
+
     /**
      * 创建题目
      */
@@ -1,27 +1,42 @@
 package com.exam.online.controller.admin.controller.student;
 
+import com.exam.online.annotation.ExamAdmission;
 import com.exam.online.annotation.UserRateLimit;
+import com.exam.online.config.AnswerBufferConfig;
 import com.exam.online.dto.ExamEnterRequest;
 import com.exam.online.dto.ExamEnterResponse;
+import com.exam.online.dto.ExamRandomGenerateResponse;
 import com.exam.online.dto.Result;
 import com.exam.online.dto.SaveAnswerRequest;
 import com.exam.online.dto.SubmitExamRequest;
 import com.exam.online.dal.dataobject.ExamParticipantDO;
 import com.exam.online.service.AnswerBufferService;
 import com.exam.online.service.DistributedLockService;
+import com.exam.online.service.ExamAnswerService;
 import com.exam.online.service.ExamParticipantService;
+import com.exam.online.service.PaperVariantService;
+import com.exam.online.service.ParticipantSessionCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 @Slf4j
 @RestController
 @RequestMapping("/api/student/exams")
@@ -30,12 +45,16 @@ public class StudentExamController {
     
     private final ExamParticipantService examParticipantService;
     private final AnswerBufferService answerBufferService;
+    private final PaperVariantService paperVariantService;
     private final DistributedLockService distributedLockService;
+    private final AnswerBufferConfig answerBufferConfig;
+    private final MeterRegistry meterRegistry;
     
     /**
-     * 进入考试（用户级别限流：每个学生每秒最多2次）
+     * 进入考试（用户级别限流：每个学生每秒最多2次；考试级别准入控制）
      */
     @UserRateLimit(interfaceType = "enter-exam")
+    @ExamAdmission(operation = "enter-exam")
     @PostMapping("/{examId}/enter")
     public Result<ExamEnterResponse> enterExam(
             @PathVariable("examId") Long examId,
@@ -52,6 +71,19 @@ public class StudentExamController {
         return Result.success(new ExamEnterResponse(token, "进入考试成功", participant.getId()));
     }
     
+    /**
+     * 获取考生本人的试卷：开启试卷变体时题序（组内）与单选/多选选项顺序按考生打乱，
+     * 保存答案时使用这里返回的题号和选项字母
+     */
+    @GetMapping("/{examId}/paper")
+    public Result<ExamRandomGenerateResponse> getPaper(
+            @PathVariable("examId") Long examId,
+            @RequestParam("studentId") Long studentId) {
+        
+        log.debug("获取考生试卷 examId={}, studentId={}", examId, studentId);
+        return Result.success(paperVariantService.getPaper(examId, studentId));
+    }
+    
     /**
      * 保存答题记录（带3秒缓冲，用户级别限流：每个学生每秒最多10次）
      */
@@ -74,9 +106,10 @@ public class StudentExamController {
     }
     
     /**
-     * 提交考试（使用分布式锁优化，用户级别限流：每个学生每秒最多1次）
+     * 提交考试（使用分布式锁优化，用户级别限流：每个学生每秒最多1次；考试级别准入控制）
      */
     @UserRateLimit(interfaceType = "submit-exam")
+    @ExamAdmission(operation = "submit-exam")
     @PostMapping("/{examId}/submit")
     public Result<Void> submitExam(
             @PathVariable("examId") Long examId,
@@ -91,9 +124,9 @@ public class StudentExamController {
             // 获取锁失败，说明有其他请求正在提交
             log.warn("获取提交考试锁失败: examId={}, studentId={}", examId, request.getStudentId());
             // 查询当前状态
-            com.exam.online.dal.dataobject.ExamParticipantDO participant = 
-                examParticipantService.getParticipant(examId, request.getStudentId());
-            if (participant != null && participant.getStatus() != null && participant.getStatus() == 2) {
+            ParticipantSessionCache.Session session =
+                examParticipantService.getSession(examId, request.getStudentId());
+            if (session != null && session.status() != null && session.status() == 2) {
                 return Result.success("考试已提交");
             } else {
                 return Result.failure("提交中，请勿重复提交");
@@ -105,26 +138,24 @@ public class StudentExamController {
         long lockStartTime = System.currentTimeMillis();
         try {
             // 1. 检查是否已提交（幂等检查）
-            com.exam.online.dal.dataobject.ExamParticipantDO participant = 
-                examParticipantService.getParticipant(examId, request.getStudentId());
-            if (participant != null && participant.getStatus() != null && participant.getStatus() == 2) {
+            ParticipantSessionCache.Session session =
+                examParticipantService.getSession(examId, request.getStudentId());
+            if (session != null && session.status() != null && session.status() == 2) {
                 log.info("考试已提交，幂等返回: examId={}, studentId={}", examId, request.getStudentId());
                 return Result.success("考试已提交");
             }
             
-            // 2. 强制刷新所有缓冲的答题记录
-            answerBufferService.flushAll(examId, request.getStudentId());
-            log.info("已刷新所有缓冲答题记录: examId={}, studentId={}", examId, request.getStudentId());
-            
-            // 3. 等待一小段时间确保MQ消息发送完成（实际生产环境可以用更好的方式）
-            try {
-                Thread.sleep(500); // 等待500ms
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            // 2. 强制刷新所有缓冲的答题记录，等待MQ确认（带超时的屏障）
+            long flushStart = System.nanoTime();
+            String flushOutcome = awaitFlush(examId, request.getStudentId());
+            recordSubmitPhase("flush", flushOutcome, flushStart);
+            log.info("已刷新所有缓冲答题记录: examId={}, studentId={}, outcome={}",
+                examId, request.getStudentId(), flushOutcome);
             
-            // 4. 更新提交状态
+            // 3. 更新提交状态
+            long dbStart = System.nanoTime();
             examParticipantService.submitExam(examId, request.getStudentId());
+            recordSubmitPhase("db", "success", dbStart);
             
             log.info("考试提交成功: examId={}, studentId={}", examId, request.getStudentId());
             return Result.success("考试提交成功");
@@ -134,6 +165,42 @@ public class StudentExamController {
         }
     }
     
+    /**
+     * 等待该考生答案持久化：acked 为全部被MQ确认，journaled 为部分写入本地日志等待重放；
+     * 超时或发送失败时不阻塞提交（Redis中仍有答案可供补偿），只记录结果
+     */
+    private String awaitFlush(Long examId, Long studentId) {
+        try {
+            ExamAnswerService.SendOutcome outcome = answerBufferService.flushAll(examId, studentId)
+                .get(answerBufferConfig.getSubmitFlushTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            if (outcome == ExamAnswerService.SendOutcome.JOURNALED) {
+                log.warn("提交前部分答题记录未被MQ确认，已写入本地日志等待重放: examId={}, studentId={}",
+                    examId, studentId);
+            }
+            return outcome.name().toLowerCase(Locale.ROOT);
+        } catch (TimeoutException e) {
+            log.warn("等待答题记录MQ确认超时: examId={}, studentId={}, timeout={}",
+                examId, studentId, answerBufferConfig.getSubmitFlushTimeout());
+            return "timeout";
+        } catch (ExecutionException e) {
+            log.error("提交前刷新答题记录失败: examId={}, studentId={}", examId, studentId, e.getCause());
+            return "failed";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        }
+    }
+    
+    private void recordSubmitPhase(String phase, String outcome, long startNanos) {
+        Timer.builder("exam.submit.latency")
+            .description("提交考试各阶段耗时")
+            .tag("phase", phase)
+            .tag("outcome", outcome)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry)
+            .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+    
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler(IllegalArgumentException.class)
     public Result<Void> handleIllegalArgumentException(IllegalArgumentException ex) {
@@ -18,6 +18,7 @@ public class AnswerRecordDO {
     private Long questionId;
     private String userAnswer;
     private Integer changeTimes;
+    private LocalDateTime answerTime;
     private String correctAnswer;
     private Integer isCorrect;
     private Integer questionScore;
@@ -20,6 +20,7 @@ public class ExamParticipantDO {
     private LocalDateTime submitTime;
     private Integer status;
     private String accessToken;
+    private Long paperSeed;
     private String connectionId;
     private Integer isConnected;
     private LocalDateTime disconnectTime;
@@ -0,0 +1,19 @@
+package com.exam.online.dal.dataobject;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@TableName("questions_tags")
+public class QuestionTagDO {
+    @TableId(type = IdType.AUTO)
+    private Long tagId;
+    private String tagName;
+    private Integer isDeleted;
+    private LocalDateTime createTime;
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,17 @@
+package com.exam.online.dal.dataobject;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+@Data
+@TableName("question_tag_relations")
+public class QuestionTagRelationDO {
+    private Long tagId;
+    private Long questionId;
+    /**
+     * 题目类型（仅加载倒排索引时由关联查询填充）
+     */
+    @TableField(exist = false)
+    private Integer questionCategory;
+}
@@ -3,8 +3,16 @@ package com.exam.online.dal.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.exam.online.dal.dataobject.AnswerRecordDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface AnswerRecordMapper extends BaseMapper<AnswerRecordDO> {
-}
 
+    /**
+     * 多行 INSERT ... ON DUPLICATE KEY UPDATE（依赖 uk_participant_question），
+     * 仅当 answerTime 比库中更新时才覆盖答案，重复投递和乱序消息不会改写较新的答案
+     */
+    int batchUpsert(@Param("records") List<AnswerRecordDO> records);
+}
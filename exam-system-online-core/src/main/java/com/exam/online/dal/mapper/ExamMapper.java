@@ -3,8 +3,32 @@ package com.exam.online.dal.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.exam.online.dal.dataobject.ExamDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface ExamMapper extends BaseMapper<ExamDO> {
-}
 
+    /**
+     * 按ID升序查询未删除考试的列表摘要（examDescription 为截取后的预览），不执行 COUNT
+     * @param previewLength 描述预览字符数
+     * @param afterId 游标，非空时只查询 id 大于该值的考试
+     * @param offset 偏移量，为空时不偏移
+     * @param limit 最多返回条数
+     */
+    List<ExamDO> selectSummaries(@Param("previewLength") int previewLength,
+                                 @Param("afterId") Long afterId,
+                                 @Param("offset") Long offset,
+                                 @Param("limit") int limit);
+
+    /**
+     * 试卷版本号自增（在修改试卷的事务内调用），作为试卷详情缓存版本号的持久来源
+     */
+    int incrementPaperVersion(@Param("examId") Long examId);
+
+    /**
+     * 查询试卷版本号，考试不存在时返回null
+     */
+    Long selectPaperVersion(@Param("examId") Long examId);
+}
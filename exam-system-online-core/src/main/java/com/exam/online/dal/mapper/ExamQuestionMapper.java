@@ -3,8 +3,20 @@ package com.exam.online.dal.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.exam.online.dal.dataobject.ExamQuestionDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface ExamQuestionMapper extends BaseMapper<ExamQuestionDO> {
-}
 
+    /**
+     * 多行 INSERT 批量写入试卷题目关联（不回填主键）
+     */
+    int batchInsert(@Param("relations") List<ExamQuestionDO> relations);
+
+    /**
+     * 按主键批量更新题目ID、分值和分组（CASE 多行更新），调用方需保证三列都已填充
+     */
+    int batchUpdateById(@Param("relations") List<ExamQuestionDO> relations);
+}
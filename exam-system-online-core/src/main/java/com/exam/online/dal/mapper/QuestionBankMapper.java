@@ -3,8 +3,25 @@ package com.exam.online.dal.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.exam.online.dal.dataobject.QuestionBankDO;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 @Mapper
 public interface QuestionBankMapper extends BaseMapper<QuestionBankDO> {
-}
 
+    /**
+     * 按ID升序查询未删除题目的列表摘要（id、题型、标签，questionContent 为截取后的预览），不执行 COUNT
+     * @param previewLength 内容预览字符数
+     * @param afterId 游标，非空时只查询 id 大于该值的题目
+     * @param ids 非空时只查询这些题目
+     * @param offset 偏移量，为空时不偏移
+     * @param limit 最多返回条数
+     */
+    List<QuestionBankDO> selectSummaries(@Param("previewLength") int previewLength,
+                                         @Param("afterId") Long afterId,
+                                         @Param("ids") Collection<Long> ids,
+                                         @Param("offset") Long offset,
+                                         @Param("limit") int limit);
+}
@@ -0,0 +1,17 @@
+package com.exam.online.dal.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.exam.online.dal.dataobject.QuestionTagDO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+
+@Mapper
+public interface QuestionTagMapper extends BaseMapper<QuestionTagDO> {
+
+    /**
+     * 批量写入标签名，已存在的标签（uk_tag_name）忽略，并发创建同名标签不会失败
+     */
+    int insertIgnore(@Param("tagNames") Collection<String> tagNames);
+}
@@ -0,0 +1,25 @@
+package com.exam.online.dal.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.exam.online.dal.dataobject.QuestionTagRelationDO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface QuestionTagRelationMapper extends BaseMapper<QuestionTagRelationDO> {
+
+    /**
+     * 多行 INSERT 写入某道题目的标签关联
+     */
+    int batchInsert(@Param("questionId") Long questionId, @Param("tagIds") Collection<Long> tagIds);
+
+    /**
+     * 按 (tag_id, question_id) 主键顺序分页读取未删除题目的关联及题型，用于构建倒排索引
+     */
+    List<QuestionTagRelationDO> selectIndexPage(@Param("afterTagId") long afterTagId,
+                                                @Param("afterQuestionId") long afterQuestionId,
+                                                @Param("limit") int limit);
+}
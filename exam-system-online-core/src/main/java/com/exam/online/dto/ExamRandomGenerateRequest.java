@@ -20,6 +20,11 @@ public class ExamRandomGenerateRequest {
     @Valid
     private List<QuestionTypeConfig> typeConfigs;
 
+    /**
+     * 随机种子，可为空（为空时随机生成并在响应中返回）；题库与题型配置不变时相同种子抽出相同试卷
+     */
+    private Long seed;
+
     /**
      * 题型配置
      */
@@ -1,5 +1,6 @@
 package com.exam.online.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -26,6 +27,12 @@ public class ExamRandomGenerateResponse {
      */
     private Integer totalScore;
 
+    /**
+     * 随机组卷使用的种子（仅随机组卷返回），可用于复现试卷
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long seed;
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -0,0 +1,27 @@
+package com.exam.online.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 考试列表摘要（完整描述通过详情接口获取）
+ */
+@Data
+@AllArgsConstructor
+public class ExamSummaryResponse {
+    private Long id;
+    private String examName;
+    /**
+     * 考试描述预览（前 exam.listing.preview-length 个字符）
+     */
+    private String descriptionPreview;
+    private Integer examType;
+    private Integer status;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private Integer duration;
+    private Integer totalScore;
+    private Integer questionCount;
+}
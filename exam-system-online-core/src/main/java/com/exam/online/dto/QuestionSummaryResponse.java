@@ -0,0 +1,19 @@
+package com.exam.online.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 题目列表摘要（完整内容、选项与答案通过详情接口获取）
+ */
+@Data
+@AllArgsConstructor
+public class QuestionSummaryResponse {
+    private Long id;
+    private Integer questionCategory;
+    /**
+     * 题目内容预览（前 exam.listing.preview-length 个字符）
+     */
+    private String contentPreview;
+    private String questionTags;
+}
@@ -0,0 +1,136 @@
+package com.exam.online.service;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单节点自适应并发上限（Vegas 算法）：以观测到的最小耗时为无排队基准，
+ * 估算排队数 queue = limit * (1 - minRtt / rtt)，排队少时逐步放大上限，排队多时收缩，
+ * 使请求在数据库连接池排队之前就在入口处等待或被拒绝。
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * 每隔多少个样本重置一次最小耗时基准，避免长期沿用过期的低值
+     */
+    private static final int MIN_RTT_RESET_SAMPLES = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private long minRttNanos = Long.MAX_VALUE;
+    private int samples;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueueSize) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.maxQueueSize = Math.max(maxQueueSize, 0);
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+    }
+
+    /**
+     * 获取执行许可，并发已满时排队等待最多 timeoutNanos
+     * @return false 表示排队已满或等待超时
+     */
+    public boolean tryAcquire(long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+            if (waiting >= maxQueueSize || timeoutNanos <= 0) {
+                return false;
+            }
+            waiting++;
+            try {
+                long remaining = timeoutNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                inFlight++;
+                return true;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放许可并提交耗时样本
+     * @param rttNanos 请求耗时，小于0表示不计入样本（如未实际执行）
+     */
+    public void release(long rttNanos) {
+        lock.lock();
+        try {
+            int observedInFlight = inFlight;
+            inFlight--;
+            if (rttNanos > 0) {
+                update(rttNanos, observedInFlight);
+            }
+            // 上限可能已放大，唤醒全部等待者重新检查
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(long rttNanos, int observedInFlight) {
+        if (++samples >= MIN_RTT_RESET_SAMPLES) {
+            samples = 0;
+            minRttNanos = rttNanos;
+        } else if (rttNanos < minRttNanos) {
+            minRttNanos = rttNanos;
+        }
+        double log = Math.max(Math.log10(limit), 1);
+        double queue = limit * (1 - (double) minRttNanos / rttNanos);
+        double newLimit = limit;
+        if (queue <= 3 * log) {
+            // 只有并发确实接近上限时才放大，空闲时不无限增长
+            if (observedInFlight * 2 >= limit) {
+                newLimit = limit + log;
+            }
+        } else if (queue >= 6 * log) {
+            newLimit = limit - log;
+        }
+        limit = Math.min(Math.max(newLimit, minLimit), maxLimit);
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,118 +1,503 @@
 package com.exam.online.service;
 
+import com.exam.online.config.AnswerBufferConfig;
+import com.exam.online.dto.AnswerMessage;
+import com.exam.online.service.ExamAnswerService.SendOutcome;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * 答题缓冲服务：实现3秒合并窗口
+ * 答题缓冲服务：按 (examId, studentId) 分片加锁，由单线程哈希时间轮驱动合并窗口。
+ * 同一题在窗口内多次修改只更新内存中的答案和最后写入时间，不重新排定时任务；
+ * 时间轮到期时再检查最后写入时间，未到期则顺延到对应槽位。
+ * 到期答案按批次（达到批大小或本刻度结束）交给 {@link ExamAnswerService#saveAnswersToRedisAndMQ}。
+ * 每个批次带一个完成句柄，分片内按考生记录尚未确认的批次，供 {@link #flushAll} 作为提交屏障。
  */
 @Slf4j
 @Service
 public class AnswerBufferService {
-    
-    private static class AnswerCache {
+
+    /**
+     * 缓冲中的单题答案（字段由所在分片的锁保护，flushed/lastWriteMillis 供时间轮线程无锁预检）
+     */
+    private static final class PendingAnswer {
+        final Long examId;
+        final Long studentId;
+        final Integer sortOrder;
         String answer;
-        Long examId;
-        Long studentId;
-        Integer sortOrder;
-    }
-    
-    private final Map<String, AnswerCache> buffer = new ConcurrentHashMap<>();
-    private final Map<String, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
-    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(10);
-    
+        volatile long lastWriteMillis;
+        volatile boolean flushed;
+
+        PendingAnswer(Long examId, Long studentId, Integer sortOrder) {
+            this.examId = examId;
+            this.studentId = studentId;
+            this.sortOrder = sortOrder;
+        }
+    }
+
+    private record StudentKey(Long examId, Long studentId) {
+    }
+
+    private static final class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<StudentKey, Map<Integer, PendingAnswer>> students = new HashMap<>();
+        /**
+         * 已出缓冲但MQ尚未确认的批次
+         */
+        final Map<StudentKey, List<CompletableFuture<SendOutcome>>> inFlight = new HashMap<>();
+    }
+
     private final ExamAnswerService examAnswerService;
-    
-    public AnswerBufferService(ExamAnswerService examAnswerService) {
+    private final PaperVariantService paperVariantService;
+    private final MeterRegistry meterRegistry;
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final long mergeWindowMillis;
+    private final long tickMillis;
+    private final int flushBatchSize;
+    private final ArrayDeque<PendingAnswer>[] wheel;
+    private final int wheelMask;
+    private final ConcurrentLinkedQueue<PendingAnswer> newcomers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
+    private final ThreadPoolExecutor flushExecutor;
+
+    private Thread wheelThread;
+    private volatile boolean running;
+    private long wheelStartMillis;
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public AnswerBufferService(ExamAnswerService examAnswerService,
+                               AnswerBufferConfig config,
+                               MeterRegistry meterRegistry,
+                               VirtualThreadMonitor virtualThreadMonitor,
+                               PaperVariantService paperVariantService) {
         this.examAnswerService = examAnswerService;
+        this.paperVariantService = paperVariantService;
+        this.meterRegistry = meterRegistry;
+
+        int shardCount = powerOfTwo(config.getShardCount());
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+        this.shardMask = shardCount - 1;
+
+        this.mergeWindowMillis = Math.max(config.getMergeWindow().toMillis(), 0);
+        this.tickMillis = Math.max(config.getTickDuration().toMillis(), 1);
+        this.flushBatchSize = Math.max(config.getFlushBatchSize(), 1);
+        int wheelSize = powerOfTwo(config.getWheelSize());
+        this.wheel = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.wheelMask = wheelSize - 1;
+
+        AtomicInteger threadSeq = new AtomicInteger(0);
+        int flushThreads = Math.max(config.getFlushThreads(), 1);
+        // 虚拟线程模式下刷新线程阻塞在Redis管道时让出载体线程，并发仍受 flushThreads 和队列容量限制
+        ThreadFactory threadFactory = virtualThreadMonitor.isEnabled()
+            ? virtualThreadMonitor.newThreadFactory("answer-flush-")
+            : r -> {
+                Thread t = new Thread(r, "answer-flush-" + threadSeq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+        this.flushExecutor = new ThreadPoolExecutor(
+            flushThreads, flushThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(config.getFlushQueueCapacity(), 1)),
+            threadFactory,
+            // 队列满时不由提交方（时间轮线程或提交请求线程）执行刷新，整批直接写入本地日志
+            (task, executor) -> ((FlushTask) task).reject()
+        );
+    }
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("exam.answer.buffer.pending", pendingCount, AtomicInteger::get)
+            .description("缓冲中待刷新的答案数")
+            .register(meterRegistry);
+        Gauge.builder("exam.answer.buffer.flush.queue", flushExecutor, e -> e.getQueue().size())
+            .description("等待写入Redis和MQ的刷新批次数")
+            .register(meterRegistry);
+        Gauge.builder("exam.answer.buffer.shards", shards, s -> s.length)
+            .description("缓冲分片数")
+            .register(meterRegistry);
+        Gauge.builder("exam.answer.buffer.window", this, s -> s.mergeWindowMillis)
+            .description("合并窗口")
+            .baseUnit("milliseconds")
+            .register(meterRegistry);
+
+        running = true;
+        wheelStartMillis = System.currentTimeMillis();
+        wheelThread = new Thread(this::runWheel, "answer-buffer-wheel");
+        wheelThread.setDaemon(true);
+        wheelThread.start();
+        log.info("答题缓冲已启动: shards={}, mergeWindow={}ms, tick={}ms, wheelSize={}",
+            shards.length, mergeWindowMillis, tickMillis, wheel.length);
     }
-    
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (wheelThread != null) {
+            wheelThread.interrupt();
+            try {
+                wheelThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 停机前把剩余缓冲全部落到Redis和MQ（或本地日志），并等待发送结果
+        List<CompletableFuture<SendOutcome>> drainFutures = new ArrayList<>();
+        for (Shard shard : shards) {
+            List<PendingAnswer> drained = new ArrayList<>();
+            shard.lock.lock();
+            try {
+                for (Map<Integer, PendingAnswer> answers : shard.students.values()) {
+                    for (PendingAnswer entry : answers.values()) {
+                        entry.flushed = true;
+                        drained.add(entry);
+                    }
+                }
+                shard.students.clear();
+            } finally {
+                shard.lock.unlock();
+            }
+            pendingCount.addAndGet(-drained.size());
+            for (int from = 0; from < drained.size(); from += flushBatchSize) {
+                drainFutures.add(flushBatch(drained.subList(from, Math.min(from + flushBatchSize, drained.size()))));
+            }
+        }
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            CompletableFuture.allOf(drainFutures.toArray(new CompletableFuture[0]))
+                .handle((v, e) -> null)
+                .get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("停机时等待答题记录发送超时", e);
+        }
+    }
+
+    /**
+     * 缓冲答题记录，合并窗口到期后自动写入Redis和MQ
+     * @param displaySortOrder 考生看到的题号，带变体种子的考生先映射回原始题号和原始选项字母
+     */
+    public void bufferAnswer(Long examId, Long studentId, Integer displaySortOrder, String displayAnswer) {
+        PaperVariantService.CanonicalAnswer canonical =
+            paperVariantService.toCanonical(examId, studentId, displaySortOrder, displayAnswer);
+        Integer sortOrder = canonical.sortOrder();
+        String answer = canonical.answer();
+        long now = System.currentTimeMillis();
+        StudentKey studentKey = new StudentKey(examId, studentId);
+        Shard shard = shardFor(studentKey);
+        PendingAnswer created = null;
+
+        shard.lock.lock();
+        try {
+            Map<Integer, PendingAnswer> answers = shard.students.computeIfAbsent(studentKey, k -> new HashMap<>());
+            PendingAnswer entry = answers.get(sortOrder);
+            if (entry == null) {
+                entry = new PendingAnswer(examId, studentId, sortOrder);
+                answers.put(sortOrder, entry);
+                created = entry;
+            }
+            // 已在时间轮中的答案只需刷新最后写入时间，到期时由时间轮顺延
+            entry.answer = answer;
+            entry.lastWriteMillis = now;
+        } finally {
+            shard.lock.unlock();
+        }
+
+        if (created != null) {
+            pendingCount.incrementAndGet();
+            newcomers.offer(created);
+        }
+    }
+
     /**
-     * 缓冲答题记录，3秒后自动写入Redis和MQ
+     * 立即刷新该考生所有缓冲的答题记录
+     * @return 完成句柄：该考生缓冲中的答案以及此前已出缓冲的批次全部持久化后完成，
+     *         全部被MQ确认时为 ACKED，任一批次写入本地日志时为 JOURNALED，任一批次失败则异常完成
      */
-    public void bufferAnswer(Long examId, Long studentId, Integer sortOrder, String answer) {
-        String key = buildKey(examId, studentId, sortOrder);
-        
-        // 更新缓存
-        AnswerCache cache = new AnswerCache();
-        cache.examId = examId;
-        cache.studentId = studentId;
-        cache.sortOrder = sortOrder;
-        cache.answer = answer;
-        buffer.put(key, cache);
-        
-        // 取消旧的定时任务
-        ScheduledFuture<?> oldTask = scheduledTasks.remove(key);
-        if (oldTask != null) {
-            oldTask.cancel(false);
-        }
-        
-        // 创建新的3秒延迟任务
-        ScheduledFuture<?> future = executor.schedule(() -> {
+    public CompletableFuture<SendOutcome> flushAll(Long examId, Long studentId) {
+        StudentKey studentKey = new StudentKey(examId, studentId);
+        Shard shard = shardFor(studentKey);
+        Map<Integer, PendingAnswer> answers;
+        List<CompletableFuture<SendOutcome>> barrier = new ArrayList<>();
+
+        shard.lock.lock();
+        try {
+            List<CompletableFuture<SendOutcome>> inFlight = shard.inFlight.get(studentKey);
+            if (inFlight != null) {
+                barrier.addAll(inFlight);
+            }
+            answers = shard.students.remove(studentKey);
+            if (answers != null) {
+                answers.values().forEach(entry -> entry.flushed = true);
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+
+        if (answers != null && !answers.isEmpty()) {
+            // 已出队的条目由时间轮线程丢弃，这里整批提交到刷新线程
+            pendingCount.addAndGet(-answers.size());
+            CompletableFuture<SendOutcome> own = new CompletableFuture<>();
+            submitBatch(new ArrayList<>(answers.values()), own);
+            barrier.add(own);
+        }
+        if (barrier.isEmpty()) {
+            return CompletableFuture.completedFuture(SendOutcome.ACKED);
+        }
+        return CompletableFuture.allOf(barrier.toArray(new CompletableFuture[0]))
+            .thenApply(v -> barrier.stream().anyMatch(f -> f.join() == SendOutcome.JOURNALED)
+                ? SendOutcome.JOURNALED
+                : SendOutcome.ACKED);
+    }
+
+    /**
+     * 当前缓冲中待刷新的答案数
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    private void runWheel() {
+        while (running) {
+            long deadline = wheelStartMillis + (tick + 1) * tickMillis;
+            long sleepMillis = deadline - System.currentTimeMillis();
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    // stop() 通过中断唤醒时间轮线程
+                    if (!running) {
+                        return;
+                    }
+                }
+            }
             try {
-                flushAnswer(key);
+                transferNewcomers();
+                expireBucket(wheel[(int) (tick & wheelMask)], System.currentTimeMillis());
             } catch (Exception e) {
-                log.error("刷新答题记录失败: key={}", key, e);
+                log.error("答题缓冲时间轮处理异常: tick={}", tick, e);
+            }
+            tick++;
+        }
+    }
+
+    private void transferNewcomers() {
+        PendingAnswer entry;
+        while ((entry = newcomers.poll()) != null) {
+            if (!entry.flushed) {
+                place(entry, entry.lastWriteMillis + mergeWindowMillis);
+            }
+        }
+    }
+
+    private void expireBucket(ArrayDeque<PendingAnswer> bucket, long now) {
+        List<PendingAnswer> batch = new ArrayList<>();
+        CompletableFuture<SendOutcome> batchFuture = new CompletableFuture<>();
+        int size = bucket.size();
+        for (int i = 0; i < size; i++) {
+            PendingAnswer entry = bucket.poll();
+            if (entry == null || entry.flushed) {
+                continue;
+            }
+            long dueMillis = entry.lastWriteMillis + mergeWindowMillis;
+            if (dueMillis > now) {
+                place(entry, dueMillis);
+                continue;
+            }
+
+            Shard shard = shardFor(new StudentKey(entry.examId, entry.studentId));
+            boolean detached = false;
+            shard.lock.lock();
+            try {
+                // 持锁复查，预检之后可能又被修改或已被 flushAll 取走
+                if (!entry.flushed) {
+                    dueMillis = entry.lastWriteMillis + mergeWindowMillis;
+                    if (dueMillis <= now) {
+                        detach(shard, entry);
+                        trackInFlight(shard, new StudentKey(entry.examId, entry.studentId), batchFuture);
+                        detached = true;
+                    }
+                }
             } finally {
-                scheduledTasks.remove(key);
+                shard.lock.unlock();
+            }
+
+            if (detached) {
+                pendingCount.decrementAndGet();
+                batch.add(entry);
+                if (batch.size() >= flushBatchSize) {
+                    submitBatch(batch, batchFuture);
+                    batch = new ArrayList<>();
+                    batchFuture = new CompletableFuture<>();
+                }
+            } else if (!entry.flushed) {
+                place(entry, dueMillis);
             }
-        }, 3, TimeUnit.SECONDS);
-        
-        scheduledTasks.put(key, future);
+        }
+        if (!batch.isEmpty()) {
+            submitBatch(batch, batchFuture);
+        }
+    }
+
+    /**
+     * 刷新任务：正常由刷新线程执行，刷新队列已满或已停机时由拒绝策略整批写入本地日志
+     */
+    private final class FlushTask implements Runnable {
+        final List<PendingAnswer> batch;
+        final CompletableFuture<SendOutcome> batchFuture;
+
+        FlushTask(List<PendingAnswer> batch, CompletableFuture<SendOutcome> batchFuture) {
+            this.batch = batch;
+            this.batchFuture = batchFuture;
+        }
+
+        @Override
+        public void run() {
+            complete(flushBatch(batch));
+        }
+
+        void reject() {
+            complete(examAnswerService.journalAnswers(toMessages(batch), "答题刷新队列已满"));
+        }
+
+        private void complete(CompletableFuture<SendOutcome> result) {
+            result.whenComplete((v, e) -> {
+                if (e != null) {
+                    batchFuture.completeExceptionally(e);
+                } else {
+                    batchFuture.complete(v);
+                }
+            });
+        }
     }
-    
+
     /**
-     * 立即刷新指定key的答题记录
+     * 提交批次到刷新线程，批次完成后完成句柄并移除在途登记
      */
-    public void flushAnswer(String key) {
-        AnswerCache cache = buffer.remove(key);
-        if (cache != null) {
-            examAnswerService.saveAnswerToRedisAndMQ(
-                cache.examId,
-                cache.studentId,
-                cache.sortOrder,
-                cache.answer
-            );
-        }
-    }
-    
+    private void submitBatch(List<PendingAnswer> batch, CompletableFuture<SendOutcome> batchFuture) {
+        batchFuture.whenComplete((v, e) -> releaseInFlight(batch, batchFuture));
+        try {
+            flushExecutor.execute(new FlushTask(batch, batchFuture));
+        } catch (Exception e) {
+            batchFuture.completeExceptionally(e);
+        }
+    }
+
     /**
-     * 立即刷新所有缓冲的答题记录
+     * 登记在途批次（持有分片锁时调用）
      */
-    public void flushAll(Long examId, Long studentId) {
-        String prefix = examId + ":" + studentId + ":";
-        buffer.entrySet().removeIf(entry -> {
-            if (entry.getKey().startsWith(prefix)) {
-                AnswerCache cache = entry.getValue();
-                examAnswerService.saveAnswerToRedisAndMQ(
-                    cache.examId,
-                    cache.studentId,
-                    cache.sortOrder,
-                    cache.answer
-                );
-                return true;
+    private void trackInFlight(Shard shard, StudentKey studentKey, CompletableFuture<SendOutcome> batchFuture) {
+        List<CompletableFuture<SendOutcome>> futures = shard.inFlight.computeIfAbsent(studentKey, k -> new ArrayList<>(1));
+        if (futures.isEmpty() || futures.get(futures.size() - 1) != batchFuture) {
+            futures.add(batchFuture);
+        }
+    }
+
+    private void releaseInFlight(List<PendingAnswer> batch, CompletableFuture<SendOutcome> batchFuture) {
+        Set<StudentKey> studentKeys = new HashSet<>();
+        for (PendingAnswer entry : batch) {
+            studentKeys.add(new StudentKey(entry.examId, entry.studentId));
+        }
+        for (StudentKey studentKey : studentKeys) {
+            Shard shard = shardFor(studentKey);
+            shard.lock.lock();
+            try {
+                List<CompletableFuture<SendOutcome>> futures = shard.inFlight.get(studentKey);
+                if (futures != null) {
+                    futures.remove(batchFuture);
+                    if (futures.isEmpty()) {
+                        shard.inFlight.remove(studentKey);
+                    }
+                }
+            } finally {
+                shard.lock.unlock();
             }
-            return false;
-        });
-        
-        // 取消所有相关的定时任务
-        scheduledTasks.entrySet().removeIf(entry -> {
-            if (entry.getKey().startsWith(prefix)) {
-                entry.getValue().cancel(false);
-                return true;
+        }
+    }
+
+    /**
+     * 放入到期时间对应的槽位（仅时间轮线程调用）
+     */
+    private void place(PendingAnswer entry, long dueMillis) {
+        long dueTick = Math.max((dueMillis - wheelStartMillis + tickMillis - 1) / tickMillis, tick + 1);
+        wheel[(int) (dueTick & wheelMask)].offer(entry);
+    }
+
+    private void detach(Shard shard, PendingAnswer entry) {
+        StudentKey studentKey = new StudentKey(entry.examId, entry.studentId);
+        Map<Integer, PendingAnswer> answers = shard.students.get(studentKey);
+        if (answers != null) {
+            answers.remove(entry.sortOrder);
+            if (answers.isEmpty()) {
+                shard.students.remove(studentKey);
             }
-            return false;
-        });
+        }
+        entry.flushed = true;
     }
-    
-    private String buildKey(Long examId, Long studentId, Integer sortOrder) {
-        return examId + ":" + studentId + ":" + sortOrder;
+
+    private CompletableFuture<SendOutcome> flushBatch(List<PendingAnswer> entries) {
+        List<AnswerMessage> messages = toMessages(entries);
+        try {
+            return examAnswerService.saveAnswersToRedisAndMQ(messages);
+        } catch (Exception e) {
+            // 条目已移出缓冲，本地日志是唯一的持久副本
+            log.error("批量刷新答题记录失败，整批写入本地日志: size={}", messages.size(), e);
+            return examAnswerService.journalAnswers(messages, "批量刷新答题记录失败: " + e);
+        }
     }
-}
 
+    private static List<AnswerMessage> toMessages(List<PendingAnswer> entries) {
+        List<AnswerMessage> messages = new ArrayList<>(entries.size());
+        for (PendingAnswer entry : entries) {
+            // 以最后一次修改时间作为答案时间，而不是刷新时间
+            LocalDateTime writeTime = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(entry.lastWriteMillis), ZoneId.systemDefault());
+            messages.add(new AnswerMessage(
+                entry.examId, entry.studentId, entry.sortOrder, null, entry.answer, writeTime));
+        }
+        return messages;
+    }
+
+    private Shard shardFor(StudentKey studentKey) {
+        int h = studentKey.hashCode();
+        return shards[(h ^ (h >>> 16)) & shardMask];
+    }
+
+    private static int powerOfTwo(int value) {
+        int n = Math.max(value, 1);
+        return n == 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+}
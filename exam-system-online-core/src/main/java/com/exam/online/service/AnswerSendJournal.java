@@ -0,0 +1,411 @@
+package com.exam.online.service;
+
+import com.exam.online.config.AnswerSendConfig;
+import com.exam.online.dto.AnswerMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 答题消息本地失败日志：MQ 发送失败的消息追加写入内存映射的日志段文件，Broker 恢复后按写入顺序重放。
+ * 记录格式为 [长度][CRC32][JSON]，长度最后写入，长度为0表示段内数据结束，断电产生的半条记录由 CRC 识别。
+ * 重放进度保存在 checkpoint 文件（段序号 + 段内偏移）。
+ * 已完整重放的段清零后改名为空闲段，新建段时重命名复用其文件和映射；空闲段已满时删除，
+ * JDK 没有显式解除映射的接口，删除文件的磁盘空间要等映射被 GC 回收后才释放，因此同时限制段数上限。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AnswerSendJournal {
+
+    private static final String SEGMENT_PREFIX = "answer-journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SPARE_PREFIX = "answer-journal.spare-";
+    private static final int ZERO_CHUNK_BYTES = 64 * 1024;
+    private static final String CHECKPOINT_FILE = "answer-journal.checkpoint";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int CHECKPOINT_BYTES = 12;
+
+    private final AnswerSendConfig answerSendConfig;
+    private final ObjectMapper objectMapper;
+
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    /**
+     * 已清零、等待复用的空闲段
+     */
+    private final ArrayDeque<Segment> spares = new ArrayDeque<>();
+    private final AtomicLong pendingCount = new AtomicLong(0);
+    /**
+     * 保护段与读写位置；使用 ReentrantLock 而非 synchronized，刷盘等待时不钉住虚拟线程的载体线程
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private Path dir;
+    private int segmentSize;
+    private int spareSegments;
+    private int maxSegments;
+    private boolean forceOnAppend;
+    private Segment writeSegment;
+    private MappedByteBuffer checkpoint;
+    private long readSeq;
+    private int readPos;
+
+    private static final class Segment {
+        final long seq;
+        final Path path;
+        final MappedByteBuffer buffer;
+        int writePos;
+
+        Segment(long seq, Path path, MappedByteBuffer buffer) {
+            this.seq = seq;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * 一次读取的结果，重放成功后通过 {@link #commit} 推进读取位置
+     */
+    public record JournalBatch(List<AnswerMessage> messages, int records, long endSeq, int endPos) {
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        lock.lock();
+        try {
+            doOpen();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void doOpen() throws IOException {
+        AnswerSendConfig.Journal config = answerSendConfig.getJournal();
+        this.dir = Paths.get(config.getDir());
+        this.segmentSize = (int) Math.min(Math.max(config.getSegmentSize().toBytes(), 4096), Integer.MAX_VALUE);
+        this.spareSegments = Math.max(config.getSpareSegments(), 0);
+        this.maxSegments = Math.max(config.getMaxSegments(), 2);
+        this.forceOnAppend = config.isForceOnAppend();
+        Files.createDirectories(dir);
+
+        checkpoint = map(dir.resolve(CHECKPOINT_FILE), CHECKPOINT_BYTES);
+        readSeq = checkpoint.getLong(0);
+        readPos = checkpoint.getInt(8);
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : files.toList()) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(SPARE_PREFIX)) {
+                    // 上次运行留下的空闲段：尚未映射，直接删除即可释放空间，断电后其内容也未必已清零
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    long seq = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    if (seq < readSeq) {
+                        // 已完整重放但删除前进程退出的段
+                        Files.deleteIfExists(path);
+                        continue;
+                    }
+                    Segment segment = new Segment(seq, path, map(path, segmentSize));
+                    segment.writePos = recoverWritePos(segment);
+                    segments.put(seq, segment);
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            writeSegment = createSegment(readSeq);
+        } else {
+            // 重启后总是写入新段，避免在可能残留半条记录的旧段尾部继续追加
+            writeSegment = createSegment(segments.lastKey() + 1);
+            if (readSeq < segments.firstKey()) {
+                readSeq = segments.firstKey();
+                readPos = 0;
+            }
+        }
+        pendingCount.set(countPending());
+        log.info("答题消息本地日志已打开: dir={}, segments={}, pending={}",
+            dir.toAbsolutePath(), segments.size(), pendingCount.get());
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.lock();
+        try {
+            if (writeSegment != null) {
+                writeSegment.buffer.force();
+            }
+            if (checkpoint != null) {
+                checkpoint.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 追加一批发送失败的消息，返回后已写入映射文件（forceOnAppend 时已刷盘）
+     */
+    public void append(List<AnswerMessage> messages) {
+        List<byte[]> payloads = new ArrayList<>(messages.size());
+        for (AnswerMessage message : messages) {
+            try {
+                payloads.add(objectMapper.writeValueAsBytes(message));
+            } catch (IOException e) {
+                throw new UncheckedIOException("序列化答题消息失败", e);
+            }
+        }
+
+        lock.lock();
+        try {
+            checkCapacity(payloads);
+            for (byte[] payload : payloads) {
+                int recordBytes = RECORD_HEADER_BYTES + payload.length;
+                if (writeSegment.writePos + recordBytes > segmentSize) {
+                    writeSegment.buffer.force();
+                    writeSegment = createSegment(writeSegment.seq + 1);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                MappedByteBuffer buffer = writeSegment.buffer;
+                int pos = writeSegment.writePos;
+                buffer.put(pos + RECORD_HEADER_BYTES, payload);
+                buffer.putInt(pos + 4, (int) crc.getValue());
+                // 长度最后写入，作为记录完整的标志
+                buffer.putInt(pos, payload.length);
+                writeSegment.writePos = pos + recordBytes;
+            }
+            if (forceOnAppend) {
+                writeSegment.buffer.force();
+            }
+            pendingCount.addAndGet(payloads.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写入前按整批校验：单条不超过段大小、所需新段不超过段数上限，避免整批只写入一部分
+     */
+    private void checkCapacity(List<byte[]> payloads) {
+        int pos = writeSegment.writePos;
+        int newSegments = 0;
+        for (byte[] payload : payloads) {
+            int recordBytes = RECORD_HEADER_BYTES + payload.length;
+            if (recordBytes > segmentSize) {
+                throw new IllegalArgumentException("答题消息超过日志段大小: " + payload.length);
+            }
+            if (pos + recordBytes > segmentSize) {
+                newSegments++;
+                pos = 0;
+            }
+            pos += recordBytes;
+        }
+        if (segments.size() + newSegments > maxSegments) {
+            throw new IllegalStateException("答题消息本地日志段数已达上限: " + maxSegments);
+        }
+    }
+
+    /**
+     * 从当前读取位置按顺序读取最多 maxRecords 条，不推进读取位置；没有待重放记录时返回 null
+     */
+    public JournalBatch read(int maxRecords) {
+        lock.lock();
+        try {
+            long seq = readSeq;
+            int pos = readPos;
+            int records = 0;
+            List<AnswerMessage> messages = new ArrayList<>();
+            while (records < maxRecords) {
+                Segment segment = segments.get(seq);
+                if (segment == null) {
+                    break;
+                }
+                int length = pos + RECORD_HEADER_BYTES <= segmentSize ? segment.buffer.getInt(pos) : 0;
+                if (length <= 0 || pos + RECORD_HEADER_BYTES + length > segmentSize) {
+                    if (segment == writeSegment) {
+                        break;
+                    }
+                    seq = segments.higherKey(seq);
+                    pos = 0;
+                    continue;
+                }
+                byte[] payload = new byte[length];
+                segment.buffer.get(pos + RECORD_HEADER_BYTES, payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != segment.buffer.getInt(pos + 4)) {
+                    // 半条记录只可能出现在段尾，跳到下一段
+                    log.warn("答题消息日志记录校验失败，跳过段内剩余数据: segment={}, pos={}", segment.path, pos);
+                    if (segment == writeSegment) {
+                        break;
+                    }
+                    seq = segments.higherKey(seq);
+                    pos = 0;
+                    continue;
+                }
+                try {
+                    messages.add(objectMapper.readValue(payload, AnswerMessage.class));
+                } catch (IOException e) {
+                    log.error("答题消息日志记录解析失败，跳过: segment={}, pos={}", segment.path, pos, e);
+                }
+                records++;
+                pos += RECORD_HEADER_BYTES + length;
+            }
+            if (seq == readSeq && pos == readPos) {
+                return null;
+            }
+            return new JournalBatch(messages, records, seq, pos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 重放成功后推进读取位置，并删除已完整重放的段
+     */
+    public void commit(JournalBatch batch) {
+        lock.lock();
+        try {
+            readSeq = batch.endSeq();
+            readPos = batch.endPos();
+            checkpoint.putLong(0, readSeq);
+            checkpoint.putInt(8, readPos);
+            checkpoint.force();
+            if (readSeq == writeSegment.seq && readPos == writeSegment.writePos) {
+                // 已读到写入位置：校验失败被跳过的记录不计入 records，在此归零
+                pendingCount.set(0);
+            } else {
+                pendingCount.addAndGet(-batch.records());
+            }
+
+            while (!segments.isEmpty() && segments.firstKey() < readSeq) {
+                recycle(segments.pollFirstEntry().getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 待重放的记录数
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    public boolean hasPending() {
+        return pendingCount.get() > 0;
+    }
+
+    private Segment createSegment(long seq) {
+        Path path = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+        try {
+            Segment spare = spares.pollFirst();
+            Segment segment;
+            if (spare != null) {
+                // 改名不影响已建立的映射，复用空闲段的文件和内存
+                Files.move(spare.path, path);
+                segment = new Segment(seq, path, spare.buffer);
+            } else {
+                segment = new Segment(seq, path, map(path, segmentSize));
+            }
+            segments.put(seq, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建答题消息日志段失败: " + path, e);
+        }
+    }
+
+    /**
+     * 已完整重放的段：空闲段未满时清零后改名留用，否则删除
+     */
+    private void recycle(Segment consumed) {
+        if (spares.size() < spareSegments) {
+            Path sparePath = dir.resolve(SPARE_PREFIX + consumed.seq + SEGMENT_SUFFIX);
+            try {
+                // 清零整段：复用后读取和重启恢复都以长度为0作为段结束，不能残留旧记录
+                byte[] zeros = new byte[ZERO_CHUNK_BYTES];
+                for (int pos = 0; pos < segmentSize; pos += ZERO_CHUNK_BYTES) {
+                    consumed.buffer.put(pos, zeros, 0, Math.min(ZERO_CHUNK_BYTES, segmentSize - pos));
+                }
+                Files.move(consumed.path, sparePath);
+                spares.addLast(new Segment(-1, sparePath, consumed.buffer));
+                return;
+            } catch (IOException e) {
+                log.warn("保留空闲答题消息日志段失败，改为删除: {}", consumed.path, e);
+            }
+        }
+        try {
+            Files.deleteIfExists(consumed.path);
+        } catch (IOException e) {
+            log.warn("删除已重放的答题消息日志段失败: {}", consumed.path, e);
+        }
+    }
+
+    /**
+     * 扫描段内完整记录，遇到校验失败的半条记录时把其长度清零作为段结束标志
+     */
+    private int recoverWritePos(Segment segment) {
+        int pos = 0;
+        while (pos + RECORD_HEADER_BYTES <= segmentSize) {
+            int length = segment.buffer.getInt(pos);
+            if (length <= 0) {
+                break;
+            }
+            if (pos + RECORD_HEADER_BYTES + length > segmentSize || !checksumMatches(segment, pos, length)) {
+                log.warn("答题消息日志段尾存在不完整记录，已截断: segment={}, pos={}", segment.path, pos);
+                segment.buffer.putInt(pos, 0);
+                break;
+            }
+            pos += RECORD_HEADER_BYTES + length;
+        }
+        return pos;
+    }
+
+    private boolean checksumMatches(Segment segment, int pos, int length) {
+        byte[] payload = new byte[length];
+        segment.buffer.get(pos + RECORD_HEADER_BYTES, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == segment.buffer.getInt(pos + 4);
+    }
+
+    private long countPending() {
+        long count = 0;
+        for (Segment segment : segments.tailMap(readSeq, true).values()) {
+            int pos = segment.seq == readSeq ? readPos : 0;
+            while (pos < segment.writePos) {
+                pos += RECORD_HEADER_BYTES + segment.buffer.getInt(pos);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
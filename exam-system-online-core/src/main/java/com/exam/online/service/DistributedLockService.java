@@ -1,33 +1,65 @@
 package com.exam.online.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 分布式锁服务（带监控和日志）
+ * 分布式锁服务（带监控和日志）。
+ * 两级锁：先在本节点按锁key登记持有线程，同一节点上的并发请求（如学生连点）在进程内直接失败，
+ * 只有本地胜出的请求才访问Redisson；释放时先释放Redisson锁再移除本地登记。
+ * 获取耗时和持有时间按锁类型记录为带分位数的 Micrometer Timer，竞争次数按考试计数，逐次获取/释放只输出DEBUG日志。
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class DistributedLockService {
     
+    private static final String ENTER_EXAM = "enter_exam";
+    private static final String SUBMIT_EXAM = "submit_exam";
+    
     private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
     
-    // 监控统计：进入考试锁
-    private final AtomicLong enterExamLockSuccessCount = new AtomicLong(0);
-    private final AtomicLong enterExamLockFailureCount = new AtomicLong(0);
-    private final AtomicLong enterExamLockTotalHoldTime = new AtomicLong(0);
+    /**
+     * 本地锁层：锁key -> 持有线程（ConcurrentHashMap 按桶加锁，不同考生互不影响）
+     */
+    private final Map<String, Thread> localOwners = new ConcurrentHashMap<>();
     
-    // 监控统计：提交考试锁
-    private final AtomicLong submitExamLockSuccessCount = new AtomicLong(0);
-    private final AtomicLong submitExamLockFailureCount = new AtomicLong(0);
-    private final AtomicLong submitExamLockTotalHoldTime = new AtomicLong(0);
+    /**
+     * 获取锁失败时按 1/N 采样查询锁状态（isLocked/剩余TTL）用于诊断，0 表示不采样
+     */
+    @Value("${exam.lock.diagnostic-sample-rate:100}")
+    private int diagnosticSampleRate;
+    
+    private LockMeters enterExamMeters;
+    private LockMeters submitExamMeters;
+    
+    /**
+     * 单个锁类型的指标
+     */
+    private record LockMeters(String type, Timer acquired, Timer rejected, Timer failed, Timer hold,
+                              Duration holdWarnThreshold) {
+    }
+    
+    @PostConstruct
+    public void init() {
+        enterExamMeters = createMeters(ENTER_EXAM, Duration.ofSeconds(5));
+        submitExamMeters = createMeters(SUBMIT_EXAM, Duration.ofSeconds(3));
+    }
     
     /**
      * 获取进入考试的分布式锁
@@ -49,51 +81,7 @@ public class DistributedLockService {
      * @return 是否获取成功
      */
     public boolean tryLockEnterExam(Long examId, Long studentId, long timeoutSeconds) {
-        String lockKey = "exam:enter:lock:" + examId + ":" + studentId;
-        long startTime = System.currentTimeMillis();
-        RLock lock = getEnterExamLock(examId, studentId);
-        
-        try {
-            // 检查锁是否已被其他线程持有
-            boolean isLocked = lock.isLocked();
-            if (isLocked) {
-                log.info("[锁监控] 进入考试锁已被持有: examId={}, studentId={}, lockKey={}, holderThread={}", 
-                    examId, studentId, lockKey, lock.isHeldByCurrentThread() ? "current" : "other");
-            }
-            
-            // 不等待，立即返回；锁超时时间30秒
-            boolean acquired = lock.tryLock(0, timeoutSeconds, TimeUnit.SECONDS);
-            long acquireTime = System.currentTimeMillis() - startTime;
-            
-            if (acquired) {
-                enterExamLockSuccessCount.incrementAndGet();
-                log.info("[锁监控] 获取进入考试锁成功: examId={}, studentId={}, lockKey={}, acquireTime={}ms, timeout={}s, " +
-                    "totalSuccess={}, totalFailure={}", 
-                    examId, studentId, lockKey, acquireTime, timeoutSeconds,
-                    enterExamLockSuccessCount.get(), enterExamLockFailureCount.get());
-            } else {
-                enterExamLockFailureCount.incrementAndGet();
-                double failureRate = calculateFailureRate(enterExamLockSuccessCount.get(), enterExamLockFailureCount.get());
-                log.warn("[锁监控] 获取进入考试锁失败: examId={}, studentId={}, lockKey={}, acquireTime={}ms, " +
-                    "isLocked={}, totalSuccess={}, totalFailure={}, failureRate={}%", 
-                    examId, studentId, lockKey, acquireTime, isLocked,
-                    enterExamLockSuccessCount.get(), enterExamLockFailureCount.get(), String.format("%.2f", failureRate));
-            }
-            return acquired;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            enterExamLockFailureCount.incrementAndGet();
-            long acquireTime = System.currentTimeMillis() - startTime;
-            log.error("[锁监控] 获取进入考试锁被中断: examId={}, studentId={}, lockKey={}, acquireTime={}ms", 
-                examId, studentId, lockKey, acquireTime, e);
-            return false;
-        } catch (Exception e) {
-            enterExamLockFailureCount.incrementAndGet();
-            long acquireTime = System.currentTimeMillis() - startTime;
-            log.error("[锁监控] 获取进入考试锁异常: examId={}, studentId={}, lockKey={}, acquireTime={}ms", 
-                examId, studentId, lockKey, acquireTime, e);
-            return false;
-        }
+        return tryLock(enterExamMeters, getEnterExamLock(examId, studentId), examId, studentId, timeoutSeconds);
     }
     
     /**
@@ -102,35 +90,7 @@ public class DistributedLockService {
      * @param lockStartTime 锁获取时间（用于计算持有时间）
      */
     public void unlockEnterExam(RLock lock, Long lockStartTime) {
-        if (lock == null) {
-            log.warn("[锁监控] 释放进入考试锁失败: lock为null");
-            return;
-        }
-        
-        if (!lock.isHeldByCurrentThread()) {
-            log.warn("[锁监控] 释放进入考试锁失败: 当前线程未持有锁, thread={}", Thread.currentThread().getName());
-            return;
-        }
-        
-        long holdTime = lockStartTime != null ? System.currentTimeMillis() - lockStartTime : 0;
-        
-        try {
-            lock.unlock();
-            enterExamLockTotalHoldTime.addAndGet(holdTime);
-            long avgHoldTime = enterExamLockSuccessCount.get() > 0 
-                ? enterExamLockTotalHoldTime.get() / enterExamLockSuccessCount.get() 
-                : 0;
-            
-            log.info("[锁监控] 释放进入考试锁成功: holdTime={}ms, avgHoldTime={}ms, totalSuccess={}", 
-                holdTime, avgHoldTime, enterExamLockSuccessCount.get());
-            
-            // 如果持有时间过长，记录警告
-            if (holdTime > 5000) {
-                log.warn("[锁监控] 进入考试锁持有时间过长: holdTime={}ms, 可能影响性能", holdTime);
-            }
-        } catch (Exception e) {
-            log.error("[锁监控] 释放进入考试锁失败: holdTime={}ms", holdTime, e);
-        }
+        unlock(enterExamMeters, lock, lockStartTime);
     }
     
     /**
@@ -160,123 +120,182 @@ public class DistributedLockService {
      * @return 是否获取成功
      */
     public boolean tryLockSubmitExam(Long examId, Long studentId, long timeoutSeconds) {
-        String lockKey = "exam:submit:lock:" + examId + ":" + studentId;
-        long startTime = System.currentTimeMillis();
-        RLock lock = getSubmitExamLock(examId, studentId);
+        return tryLock(submitExamMeters, getSubmitExamLock(examId, studentId), examId, studentId, timeoutSeconds);
+    }
+    
+    /**
+     * 释放提交考试的锁（带监控）
+     * @param lock 锁对象
+     * @param lockStartTime 锁获取时间（用于计算持有时间）
+     */
+    public void unlockSubmitExam(RLock lock, Long lockStartTime) {
+        unlock(submitExamMeters, lock, lockStartTime);
+    }
+    
+    /**
+     * 释放提交考试的锁（兼容旧方法，不记录持有时间）
+     */
+    public void unlockSubmitExam(RLock lock) {
+        unlockSubmitExam(lock, null);
+    }
+    
+    private boolean tryLock(LockMeters meters, RLock lock, Long examId, Long studentId, long timeoutSeconds) {
+        String lockKey = lock.getName();
+        long startNanos = System.nanoTime();
+        
+        // 本地锁层：同一节点已有请求持有该锁时直接失败，不访问Redis
+        if (!acquireLocal(lockKey)) {
+            meters.rejected().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            contentionCounter(meters, examId, "local").increment();
+            log.debug("[锁监控] 获取锁失败（本节点已持有）: type={}, examId={}, studentId={}, lockKey={}",
+                meters.type(), examId, studentId, lockKey);
+            return false;
+        }
         
         try {
-            // 检查锁是否已被其他线程持有
-            boolean isLocked = lock.isLocked();
-            if (isLocked) {
-                log.info("[锁监控] 提交考试锁已被持有: examId={}, studentId={}, lockKey={}, holderThread={}", 
-                    examId, studentId, lockKey, lock.isHeldByCurrentThread() ? "current" : "other");
-            }
-            
-            // 不等待，立即返回；锁超时时间10秒
+            // 不等待，立即返回
             boolean acquired = lock.tryLock(0, timeoutSeconds, TimeUnit.SECONDS);
-            long acquireTime = System.currentTimeMillis() - startTime;
-            
+            long acquireNanos = System.nanoTime() - startNanos;
             if (acquired) {
-                submitExamLockSuccessCount.incrementAndGet();
-                log.info("[锁监控] 获取提交考试锁成功: examId={}, studentId={}, lockKey={}, acquireTime={}ms, timeout={}s, " +
-                    "totalSuccess={}, totalFailure={}", 
-                    examId, studentId, lockKey, acquireTime, timeoutSeconds,
-                    submitExamLockSuccessCount.get(), submitExamLockFailureCount.get());
+                meters.acquired().record(acquireNanos, TimeUnit.NANOSECONDS);
+                log.debug("[锁监控] 获取锁成功: type={}, examId={}, studentId={}, lockKey={}, acquireTime={}ms, timeout={}s",
+                    meters.type(), examId, studentId, lockKey, TimeUnit.NANOSECONDS.toMillis(acquireNanos), timeoutSeconds);
             } else {
-                submitExamLockFailureCount.incrementAndGet();
-                double failureRate = calculateFailureRate(submitExamLockSuccessCount.get(), submitExamLockFailureCount.get());
-                log.warn("[锁监控] 获取提交考试锁失败: examId={}, studentId={}, lockKey={}, acquireTime={}ms, " +
-                    "isLocked={}, totalSuccess={}, totalFailure={}, failureRate={}%", 
-                    examId, studentId, lockKey, acquireTime, isLocked,
-                    submitExamLockSuccessCount.get(), submitExamLockFailureCount.get(), String.format("%.2f", failureRate));
+                releaseLocal(lockKey);
+                meters.rejected().record(acquireNanos, TimeUnit.NANOSECONDS);
+                contentionCounter(meters, examId, "redis").increment();
+                log.debug("[锁监控] 获取锁失败: type={}, examId={}, studentId={}, lockKey={}, acquireTime={}ms",
+                    meters.type(), examId, studentId, lockKey, TimeUnit.NANOSECONDS.toMillis(acquireNanos));
+                sampleDiagnostics(lock);
             }
             return acquired;
         } catch (InterruptedException e) {
+            releaseLocal(lockKey);
             Thread.currentThread().interrupt();
-            submitExamLockFailureCount.incrementAndGet();
-            long acquireTime = System.currentTimeMillis() - startTime;
-            log.error("[锁监控] 获取提交考试锁被中断: examId={}, studentId={}, lockKey={}, acquireTime={}ms", 
-                examId, studentId, lockKey, acquireTime, e);
+            meters.failed().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            log.error("[锁监控] 获取锁被中断: type={}, examId={}, studentId={}, lockKey={}",
+                meters.type(), examId, studentId, lockKey, e);
             return false;
         } catch (Exception e) {
-            submitExamLockFailureCount.incrementAndGet();
-            long acquireTime = System.currentTimeMillis() - startTime;
-            log.error("[锁监控] 获取提交考试锁异常: examId={}, studentId={}, lockKey={}, acquireTime={}ms", 
-                examId, studentId, lockKey, acquireTime, e);
+            releaseLocal(lockKey);
+            meters.failed().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            log.error("[锁监控] 获取锁异常: type={}, examId={}, studentId={}, lockKey={}",
+                meters.type(), examId, studentId, lockKey, e);
             return false;
         }
     }
     
-    /**
-     * 释放提交考试的锁（带监控）
-     * @param lock 锁对象
-     * @param lockStartTime 锁获取时间（用于计算持有时间）
-     */
-    public void unlockSubmitExam(RLock lock, Long lockStartTime) {
+    private void unlock(LockMeters meters, RLock lock, Long lockStartTime) {
         if (lock == null) {
-            log.warn("[锁监控] 释放提交考试锁失败: lock为null");
+            log.warn("[锁监控] 释放锁失败: type={}, lock为null", meters.type());
             return;
         }
         
-        if (!lock.isHeldByCurrentThread()) {
-            log.warn("[锁监控] 释放提交考试锁失败: 当前线程未持有锁, thread={}", Thread.currentThread().getName());
+        // 以本地登记判断持有者，不再调用 isHeldByCurrentThread 访问Redis
+        if (!isHeldLocally(lock.getName())) {
+            log.warn("[锁监控] 释放锁失败: type={}, 当前线程未持有锁, thread={}", meters.type(), Thread.currentThread().getName());
             return;
         }
         
-        long holdTime = lockStartTime != null ? System.currentTimeMillis() - lockStartTime : 0;
-        
+        long holdMillis = lockStartTime != null ? System.currentTimeMillis() - lockStartTime : 0;
         try {
             lock.unlock();
-            submitExamLockTotalHoldTime.addAndGet(holdTime);
-            long avgHoldTime = submitExamLockSuccessCount.get() > 0 
-                ? submitExamLockTotalHoldTime.get() / submitExamLockSuccessCount.get() 
-                : 0;
-            
-            log.info("[锁监控] 释放提交考试锁成功: holdTime={}ms, avgHoldTime={}ms, totalSuccess={}", 
-                holdTime, avgHoldTime, submitExamLockSuccessCount.get());
+            if (lockStartTime != null) {
+                meters.hold().record(holdMillis, TimeUnit.MILLISECONDS);
+            }
+            log.debug("[锁监控] 释放锁成功: type={}, lockKey={}, holdTime={}ms", meters.type(), lock.getName(), holdMillis);
             
             // 如果持有时间过长，记录警告
-            if (holdTime > 3000) {
-                log.warn("[锁监控] 提交考试锁持有时间过长: holdTime={}ms, 可能影响性能", holdTime);
+            if (holdMillis > meters.holdWarnThreshold().toMillis()) {
+                log.warn("[锁监控] 锁持有时间过长: type={}, lockKey={}, holdTime={}ms, 可能影响性能",
+                    meters.type(), lock.getName(), holdMillis);
             }
         } catch (Exception e) {
-            log.error("[锁监控] 释放提交考试锁失败: holdTime={}ms", holdTime, e);
+            log.error("[锁监控] 释放锁失败: type={}, holdTime={}ms", meters.type(), holdMillis, e);
+        } finally {
+            releaseLocal(lock.getName());
         }
     }
     
+    private LockMeters createMeters(String type, Duration holdWarnThreshold) {
+        return new LockMeters(type,
+            acquireTimer(type, "acquired"),
+            acquireTimer(type, "rejected"),
+            acquireTimer(type, "error"),
+            Timer.builder("exam.lock.hold.time")
+                .description("分布式锁持有时间")
+                .tag("type", type)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry),
+            holdWarnThreshold);
+    }
+    
+    private Timer acquireTimer(String type, String result) {
+        return Timer.builder("exam.lock.acquire.time")
+            .description("分布式锁获取耗时")
+            .tag("type", type)
+            .tag("result", result)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+    
     /**
-     * 释放提交考试的锁（兼容旧方法，不记录持有时间）
+     * 锁竞争计数（layer=local 本节点竞争，layer=redis 跨节点竞争）
      */
-    public void unlockSubmitExam(RLock lock) {
-        unlockSubmitExam(lock, null);
+    private Counter contentionCounter(LockMeters meters, Long examId, String layer) {
+        return Counter.builder("exam.lock.contention")
+            .description("分布式锁竞争次数")
+            .tag("type", meters.type())
+            .tag("examId", String.valueOf(examId))
+            .tag("layer", layer)
+            .register(meterRegistry);
+    }
+    
+    /**
+     * 本地锁层登记当前线程，已被本节点持有时返回false（本地层不可重入，调用方不会嵌套获取同一把锁）
+     */
+    private boolean acquireLocal(String lockKey) {
+        return localOwners.putIfAbsent(lockKey, Thread.currentThread()) == null;
+    }
+    
+    private void releaseLocal(String lockKey) {
+        localOwners.remove(lockKey, Thread.currentThread());
+    }
+    
+    private boolean isHeldLocally(String lockKey) {
+        return localOwners.get(lockKey) == Thread.currentThread();
     }
     
     /**
-     * 计算失败率
+     * 获取失败时采样查询锁状态，诊断查询不在每次请求的关键路径上
      */
-    private double calculateFailureRate(long success, long failure) {
-        long total = success + failure;
-        if (total == 0) {
-            return 0.0;
+    private void sampleDiagnostics(RLock lock) {
+        if (diagnosticSampleRate <= 0 || ThreadLocalRandom.current().nextInt(diagnosticSampleRate) != 0) {
+            return;
+        }
+        try {
+            log.info("[锁监控] 锁竞争采样: lockKey={}, isLocked={}, remainTimeToLiveMs={}",
+                lock.getName(), lock.isLocked(), lock.remainTimeToLive());
+        } catch (Exception e) {
+            log.debug("[锁监控] 锁竞争采样失败: lockKey={}", lock.getName(), e);
         }
-        return (failure * 100.0) / total;
     }
     
     /**
-     * 获取锁监控统计信息（可用于监控系统）
+     * 获取锁监控统计信息（由 Micrometer 计时器汇总，可用于监控系统）
      */
     public LockStatistics getLockStatistics() {
         return new LockStatistics(
-            enterExamLockSuccessCount.get(),
-            enterExamLockFailureCount.get(),
-            enterExamLockSuccessCount.get() > 0 
-                ? enterExamLockTotalHoldTime.get() / enterExamLockSuccessCount.get() 
-                : 0,
-            submitExamLockSuccessCount.get(),
-            submitExamLockFailureCount.get(),
-            submitExamLockSuccessCount.get() > 0 
-                ? submitExamLockTotalHoldTime.get() / submitExamLockSuccessCount.get() 
-                : 0
+            enterExamMeters.acquired().count(),
+            enterExamMeters.rejected().count() + enterExamMeters.failed().count(),
+            (long) enterExamMeters.hold().mean(TimeUnit.MILLISECONDS),
+            submitExamMeters.acquired().count(),
+            submitExamMeters.rejected().count() + submitExamMeters.failed().count(),
+            (long) submitExamMeters.hold().mean(TimeUnit.MILLISECONDS),
+            (long) enterExamMeters.hold().max(TimeUnit.MILLISECONDS),
+            (long) submitExamMeters.hold().max(TimeUnit.MILLISECONDS)
         );
     }
     
@@ -290,15 +309,20 @@ public class DistributedLockService {
         private final long submitExamSuccess;
         private final long submitExamFailure;
         private final long submitExamAvgHoldTime;
+        private final long enterExamMaxHoldTime;
+        private final long submitExamMaxHoldTime;
         
         public LockStatistics(long enterExamSuccess, long enterExamFailure, long enterExamAvgHoldTime,
-                            long submitExamSuccess, long submitExamFailure, long submitExamAvgHoldTime) {
+                            long submitExamSuccess, long submitExamFailure, long submitExamAvgHoldTime,
+                            long enterExamMaxHoldTime, long submitExamMaxHoldTime) {
             this.enterExamSuccess = enterExamSuccess;
             this.enterExamFailure = enterExamFailure;
             this.enterExamAvgHoldTime = enterExamAvgHoldTime;
             this.submitExamSuccess = submitExamSuccess;
             this.submitExamFailure = submitExamFailure;
             this.submitExamAvgHoldTime = submitExamAvgHoldTime;
+            this.enterExamMaxHoldTime = enterExamMaxHoldTime;
+            this.submitExamMaxHoldTime = submitExamMaxHoldTime;
         }
         
         public long getEnterExamSuccess() { return enterExamSuccess; }
@@ -307,6 +331,8 @@ public class DistributedLockService {
         public long getSubmitExamSuccess() { return submitExamSuccess; }
         public long getSubmitExamFailure() { return submitExamFailure; }
         public long getSubmitExamAvgHoldTime() { return submitExamAvgHoldTime; }
+        public long getEnterExamMaxHoldTime() { return enterExamMaxHoldTime; }
+        public long getSubmitExamMaxHoldTime() { return submitExamMaxHoldTime; }
         
         public double getEnterExamFailureRate() {
             long total = enterExamSuccess + enterExamFailure;
@@ -319,4 +345,3 @@ public class DistributedLockService {
         }
     }
 }
-
@@ -0,0 +1,183 @@
+package com.exam.online.service;
+
+import com.exam.online.config.ExamAdmissionConfig;
+import com.exam.online.exception.RateLimitException;
+import com.exam.online.util.RedisKeyUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 考试级别准入控制：开考/交卷时大量不同考生同时请求，按用户限流无法拦截。
+ * 先经过单节点自适应并发上限（满时短暂排队），再获取该场考试的集群并发许可（Redis zset 租约），
+ * 任一层拒绝都返回 429 + Retry-After，而不是让请求堆积到数据库连接池。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExamAdmissionService {
+
+    /**
+     * 集群许可获取脚本：KEYS[1]=许可zset；ARGV[1]=当前毫秒，ARGV[2]=租约毫秒，ARGV[3]=许可数，ARGV[4]=许可ID。
+     * 先清理过期租约，未满时写入许可并续期zset，返回 1 获取成功、0 已满。
+     */
+    private static final RedisService.LuaScript<Long> ACQUIRE_SCRIPT = RedisService.LuaScript.of("exam-admission-acquire",
+        "local now = tonumber(ARGV[1])\n" +
+        "local lease = tonumber(ARGV[2])\n" +
+        "redis.call('zremrangebyscore', KEYS[1], '-inf', now - lease)\n" +
+        "if redis.call('zcard', KEYS[1]) >= tonumber(ARGV[3]) then\n" +
+        "    return 0\n" +
+        "end\n" +
+        "redis.call('zadd', KEYS[1], now, ARGV[4])\n" +
+        "redis.call('pexpire', KEYS[1], lease)\n" +
+        "return 1",
+        Long.class);
+
+    private final RedisService redisService;
+    private final ExamAdmissionConfig examAdmissionConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    /**
+     * operation -> 准入决策计数器，与单节点限制器一起在启动时注册
+     */
+    private final Map<String, DecisionCounters> decisionCounters = new ConcurrentHashMap<>();
+
+    /**
+     * 准入决策计数（layer=node/cluster，result=allowed/rejected）
+     */
+    private record DecisionCounters(Counter nodeAllowed, Counter nodeRejected,
+                                    Counter clusterAllowed, Counter clusterRejected) {
+    }
+
+    /**
+     * 准入许可，业务执行完成后关闭以归还许可并提交耗时样本
+     */
+    public final class Permit implements AutoCloseable {
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final String key;
+        private final String member;
+        private final long startNanos = System.nanoTime();
+
+        private Permit(AdaptiveConcurrencyLimiter limiter, String key, String member) {
+            this.limiter = limiter;
+            this.key = key;
+            this.member = member;
+        }
+
+        @Override
+        public void close() {
+            if (limiter != null) {
+                limiter.release(System.nanoTime() - startNanos);
+            }
+            if (member != null) {
+                redisService.rawZSetRemove(key, member);
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!examAdmissionConfig.isEnabled()) {
+            return;
+        }
+        examAdmissionConfig.getRules().forEach((operation, rule) -> {
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+                rule.getInitialLimit(), rule.getMinLimit(), rule.getMaxLimit(), rule.getMaxQueueSize());
+            limiters.put(operation, limiter);
+            decisionCounters.put(operation, new DecisionCounters(
+                decisionCounter(operation, "node", "allowed"),
+                decisionCounter(operation, "node", "rejected"),
+                decisionCounter(operation, "cluster", "allowed"),
+                decisionCounter(operation, "cluster", "rejected")));
+            Gauge.builder("exam.admission.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("单节点自适应并发上限")
+                .tag("operation", operation)
+                .register(meterRegistry);
+            Gauge.builder("exam.admission.in.flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("单节点正在执行的准入请求数")
+                .tag("operation", operation)
+                .register(meterRegistry);
+            Gauge.builder("exam.admission.waiting", limiter, AdaptiveConcurrencyLimiter::getWaiting)
+                .description("单节点排队等待的准入请求数")
+                .tag("operation", operation)
+                .register(meterRegistry);
+        });
+        if (examAdmissionConfig.getRules().values().stream().anyMatch(rule -> rule.getClusterPermits() > 0)) {
+            redisService.registerScript(ACQUIRE_SCRIPT);
+        }
+    }
+
+    /**
+     * 获取准入许可
+     * @throws RateLimitException 单节点排队超时或该场考试集群许可已满
+     */
+    public Permit acquire(String operation, Long examId) {
+        ExamAdmissionConfig.Rule rule = examAdmissionConfig.getRules().get(operation);
+        AdaptiveConcurrencyLimiter limiter = limiters.get(operation);
+        DecisionCounters counters = decisionCounters.get(operation);
+        if (!examAdmissionConfig.isEnabled() || rule == null || !rule.isEnabled() || limiter == null || counters == null) {
+            return new Permit(null, null, null);
+        }
+
+        boolean acquired;
+        try {
+            acquired = limiter.tryAcquire(rule.getMaxQueueWait().toNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            counters.nodeRejected().increment();
+            log.warn("[准入控制] 节点并发已满: operation={}, examId={}, limit={}, waiting={}",
+                operation, examId, limiter.getLimit(), limiter.getWaiting());
+            throw new RateLimitException("当前考试人数较多，请稍后重试", examAdmissionConfig.getRetryAfterSeconds());
+        }
+        counters.nodeAllowed().increment();
+
+        if (rule.getClusterPermits() <= 0 || examId == null) {
+            return new Permit(limiter, null, null);
+        }
+        String key = RedisKeyUtil.getExamAdmissionKey(operation, examId);
+        String member = UUID.randomUUID().toString();
+        Long result;
+        try {
+            result = redisService.evalScript(ACQUIRE_SCRIPT, List.of(key), List.of(
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(examAdmissionConfig.getLeaseTimeout().toMillis()),
+                String.valueOf(rule.getClusterPermits()),
+                member));
+        } catch (Exception e) {
+            // Redis故障时只保留单节点并发上限（fail-open）
+            log.error("[准入控制] 获取集群许可异常，降级为仅节点限制: operation={}, examId={}", operation, examId, e);
+            return new Permit(limiter, null, null);
+        }
+        if (result != null && result == 0) {
+            limiter.release(-1);
+            counters.clusterRejected().increment();
+            log.warn("[准入控制] 考试集群许可已满: operation={}, examId={}, permits={}",
+                operation, examId, rule.getClusterPermits());
+            throw new RateLimitException("当前考试人数较多，请稍后重试", examAdmissionConfig.getRetryAfterSeconds());
+        }
+        counters.clusterAllowed().increment();
+        return new Permit(limiter, key, member);
+    }
+
+    private Counter decisionCounter(String operation, String layer, String result) {
+        return Counter.builder("exam.admission.decisions")
+            .description("考试级别准入决策次数")
+            .tag("operation", operation)
+            .tag("layer", layer)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+}
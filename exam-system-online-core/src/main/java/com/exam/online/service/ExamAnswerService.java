@@ -1,16 +1,37 @@
 package com.exam.online.service;
 
-import com.exam.online.dal.dataobject.ExamQuestionDO;
-import com.exam.online.dal.mapper.ExamQuestionMapper;
+import com.exam.online.config.AnswerSendConfig;
 import com.exam.online.dto.AnswerMessage;
 import com.exam.online.util.RedisKeyUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Slf4j
 @Service
@@ -19,74 +40,356 @@ public class ExamAnswerService {
     
     private final RedisService redisService;
     private final RocketMQTemplate rocketMQTemplate;
-    private final ExamQuestionMapper examQuestionMapper;
+    private final ExamPaperCacheService examPaperCacheService;
+    private final AnswerSendJournal answerSendJournal;
+    private final AnswerSendConfig answerSendConfig;
+    private final MeterRegistry meterRegistry;
+    
+    /**
+     * 答题消息的持久化结果
+     */
+    public enum SendOutcome {
+        /**
+         * 已被Broker确认
+         */
+        ACKED,
+        /**
+         * 未发送到Broker，已写入本地日志等待重放
+         */
+        JOURNALED
+    }
+    
+    /**
+     * 答题缓存TTL（毫秒），每次写入按考生整体续期
+     */
+    private static final long ANSWER_CACHE_TTL_MILLIS = 60000;
     
     @Value("${rocketmq.answer.topic:exam-answer-save}")
     private String answerTopic;
     
     /**
-     * 保存答题记录到Redis和MQ
+     * 是否兼容读取旧格式（exam:ans:{examId}:{studentId}:{sortOrder}）的答题缓存
      */
-    public void saveAnswerToRedisAndMQ(Long examId, Long studentId, Integer sortOrder, String answer) {
-        // 1. 保存到Redis，TTL=60秒，每次更新自动刷新
-        String answerKey = RedisKeyUtil.getAnswerKey(examId, studentId, sortOrder);
-        redisService.setWithMilliseconds(answerKey, answer, 60000); // 60秒
-        
-        // 2. 查询questionId
-        ExamQuestionDO examQuestion = examQuestionMapper.selectOne(
-            new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<ExamQuestionDO>()
-                .eq(ExamQuestionDO::getExamId, examId)
-                .eq(ExamQuestionDO::getSortOrder, sortOrder)
-                .last("LIMIT 1")
-        );
+    @Value("${exam.answer-cache.legacy-read-enabled:true}")
+    private boolean legacyReadEnabled;
+    
+    /**
+     * 在途消息窗口：异步发送前按消息数获取许可（不等待），Broker确认或失败回调时归还
+     */
+    private Semaphore inFlightPermits;
+    private int maxInFlight;
+    /**
+     * 窗口已满时等待发送的批次，由发送回调归还许可后取出发送；队列也满时直接写入本地日志
+     */
+    private ArrayBlockingQueue<PendingSend> pendingSends;
+    /**
+     * 保证只有一个线程从 pendingSends 队头取批次
+     */
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private Counter journaledCounter;
+    
+    private record PendingSend(List<Message<AnswerMessage>> messages, int permits, CompletableFuture<SendOutcome> future) {
+    }
+    
+    @PostConstruct
+    public void init() {
+        maxInFlight = Math.max(answerSendConfig.getMaxInFlight(), 1);
+        inFlightPermits = new Semaphore(maxInFlight);
+        pendingSends = new ArrayBlockingQueue<>(Math.max(answerSendConfig.getPendingCapacity(), 1));
+        Gauge.builder("exam.answer.send.inflight", inFlightPermits, p -> maxInFlight - p.availablePermits())
+            .description("已异步发送、等待Broker确认的答题消息数")
+            .register(meterRegistry);
+        Gauge.builder("exam.answer.send.pending", pendingSends, ArrayBlockingQueue::size)
+            .description("发送窗口已满、等待发送的答题消息批次数")
+            .register(meterRegistry);
+        Gauge.builder("exam.answer.journal.pending", answerSendJournal, AnswerSendJournal::getPendingCount)
+            .description("本地日志中等待重放的答题消息数")
+            .register(meterRegistry);
+        journaledCounter = Counter.builder("exam.answer.journal.appended")
+            .description("发送失败写入本地日志的答题消息数")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * 停机前等待在途消息确认，未确认的由失败回调写入本地日志；仍在等待队列中的批次直接写入本地日志
+     */
+    @PreDestroy
+    public void awaitInFlight() {
+        try {
+            if (inFlightPermits.tryAcquire(maxInFlight, answerSendConfig.getSendTimeout().toMillis() * 2, TimeUnit.MILLISECONDS)) {
+                inFlightPermits.release(maxInFlight);
+            } else {
+                log.warn("停机时仍有答题消息未确认: inFlight={}", maxInFlight - inFlightPermits.availablePermits());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingSend> remaining = new ArrayList<>();
+        drainLock.lock();
+        try {
+            pendingSends.drainTo(remaining);
+        } finally {
+            drainLock.unlock();
+        }
+        remaining.forEach(send -> journal(send.messages(), send.future(), new IllegalStateException("服务停机")));
+    }
+    
+    /**
+     * 批量保存答题记录：Redis 管道写入一次往返，questionId 取自试卷编排缓存，RocketMQ 整批一次异步发送
+     * @param answers 待保存的答案（questionId 可为空，由本方法补齐；timestamp 为空时取当前时间）
+     * @return 持久化句柄：整批被Broker确认时以 ACKED 完成，发送失败后写入本地日志时以 JOURNALED 完成，两者都失败时异常完成
+     */
+    public CompletableFuture<SendOutcome> saveAnswersToRedisAndMQ(List<AnswerMessage> answers) {
+        if (answers == null || answers.isEmpty()) {
+            return CompletableFuture.completedFuture(SendOutcome.ACKED);
+        }
         
-        if (examQuestion == null) {
-            log.warn("未找到题目: examId={}, sortOrder={}", examId, sortOrder);
-            return;
+        // 1. 按考生分组写入答题hash（field为题目序号），管道一次往返，TTL=60秒按考生整体续期
+        Map<String, Map<String, String>> hashValues = new LinkedHashMap<>();
+        for (AnswerMessage answer : answers) {
+            hashValues.computeIfAbsent(
+                    RedisKeyUtil.getAnswerHashKey(answer.getExamId(), answer.getStudentId()),
+                    k -> new LinkedHashMap<>())
+                .put(String.valueOf(answer.getSortOrder()), answer.getAnswer());
+        }
+        try {
+            redisService.pipelineHashPutAll(hashValues, ANSWER_CACHE_TTL_MILLIS);
+        } catch (Exception e) {
+            // Redis只是近期答案的热缓存，写失败时降级继续发MQ，保证落库
+            log.error("批量写入答题缓存失败，降级直接发送MQ: size={}", answers.size(), e);
         }
         
-        // 3. 发送到RocketMQ
-        AnswerMessage message = new AnswerMessage();
-        message.setExamId(examId);
-        message.setStudentId(studentId);
-        message.setSortOrder(sortOrder);
-        message.setQuestionId(examQuestion.getQuestionId());
-        message.setAnswer(answer);
-        message.setTimestamp(LocalDateTime.now());
+        // 2. 从试卷编排缓存补齐questionId，组装批量消息；编排缓存未命中且数据库不可用时整批写入本地日志，重放时再补齐
+        List<AnswerMessage> resolved;
+        try {
+            resolved = resolveQuestionIds(answers);
+        } catch (Exception e) {
+            log.error("补齐题目ID失败，整批写入本地日志: size={}", answers.size(), e);
+            return journalAnswers(answers, "补齐题目ID失败: " + e);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Message<AnswerMessage>> messages = new ArrayList<>(resolved.size());
+        for (AnswerMessage answer : resolved) {
+            if (answer.getTimestamp() == null) {
+                answer.setTimestamp(now);
+            }
+            messages.add(MessageBuilder.withPayload(answer).build());
+        }
+        if (messages.isEmpty()) {
+            return CompletableFuture.completedFuture(SendOutcome.ACKED);
+        }
         
+        // 3. 不等待地获取在途窗口许可：拿到即整批异步发送，窗口满时进入等待队列，队列也满时直接写入本地日志
+        CompletableFuture<SendOutcome> future = new CompletableFuture<>();
+        PendingSend send = new PendingSend(messages, Math.min(messages.size(), maxInFlight), future);
+        if (pendingSends.isEmpty() && inFlightPermits.tryAcquire(send.permits())) {
+            send(send);
+        } else if (pendingSends.offer(send)) {
+            // 入队前在途批次可能已全部确认，没有回调再来取队列，入队后自行尝试一次
+            drainPendingSends();
+        } else {
+            journal(messages, future, new IllegalStateException("答题消息发送窗口和等待队列已满"));
+        }
+        return future;
+    }
+    
+    /**
+     * 发送未能进入MQ发送流程的答案（如刷新队列已满），不写Redis，直接写入本地日志；
+     * questionId 可为空，重放时再从试卷编排补齐
+     * @return 写入本地日志后以 JOURNALED 完成，写入失败时异常完成
+     */
+    public CompletableFuture<SendOutcome> journalAnswers(List<AnswerMessage> answers, String reason) {
+        CompletableFuture<SendOutcome> future = new CompletableFuture<>();
+        List<Message<AnswerMessage>> messages = new ArrayList<>(answers.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (AnswerMessage answer : answers) {
+            if (answer.getTimestamp() == null) {
+                answer.setTimestamp(now);
+            }
+            messages.add(MessageBuilder.withPayload(answer).build());
+        }
+        journal(messages, future, new IllegalStateException(reason));
+        return future;
+    }
+    
+    /**
+     * 已持有许可的批次异步发送到RocketMQ，回调归还许可后继续发送等待队列中的批次
+     */
+    private void send(PendingSend send) {
         try {
-            rocketMQTemplate.convertAndSend(answerTopic, message);
-            log.debug("答题记录已发送到MQ: examId={}, studentId={}, sortOrder={}", examId, studentId, sortOrder);
+            rocketMQTemplate.asyncSend(answerTopic, send.messages(), new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    inFlightPermits.release(send.permits());
+                    log.debug("答题记录已批量发送到MQ: size={}", send.messages().size());
+                    send.future().complete(SendOutcome.ACKED);
+                    drainPendingSends();
+                }
+                
+                @Override
+                public void onException(Throwable e) {
+                    inFlightPermits.release(send.permits());
+                    journal(send.messages(), send.future(), e);
+                    drainPendingSends();
+                }
+            }, answerSendConfig.getSendTimeout().toMillis());
         } catch (Exception e) {
-            log.error("发送答题记录到MQ失败: examId={}, studentId={}, sortOrder={}", examId, studentId, sortOrder, e);
-            // 这里可以选择重试或者记录到失败队列
+            inFlightPermits.release(send.permits());
+            journal(send.messages(), send.future(), e);
+            drainPendingSends();
         }
     }
     
     /**
-     * 从Redis获取所有答题记录
+     * 按入队顺序取出拿得到许可的等待批次并发送，队头拿不到许可时停止
      */
-    public java.util.Map<Integer, String> getAllAnswers(Long examId, Long studentId) {
-        String pattern = RedisKeyUtil.getAnswerPattern(examId, studentId);
-        java.util.Set<String> keys = redisService.keys(pattern);
-        
-        java.util.Map<Integer, String> answers = new java.util.HashMap<>();
-        for (String key : keys) {
-            // 解析sortOrder
-            String[] parts = key.split(":");
-            if (parts.length >= 4) {
+    private void drainPendingSends() {
+        List<PendingSend> ready = new ArrayList<>();
+        drainLock.lock();
+        try {
+            PendingSend next;
+            while ((next = pendingSends.peek()) != null && inFlightPermits.tryAcquire(next.permits())) {
+                ready.add(pendingSends.poll());
+            }
+        } finally {
+            drainLock.unlock();
+        }
+        ready.forEach(this::send);
+    }
+    
+    /**
+     * 从试卷编排缓存补齐缺失的 questionId，试卷中不存在的题目序号丢弃
+     * @return 已补齐 questionId 的答案
+     */
+    private List<AnswerMessage> resolveQuestionIds(List<AnswerMessage> answers) {
+        List<AnswerMessage> resolved = new ArrayList<>(answers.size());
+        for (AnswerMessage answer : answers) {
+            if (answer.getQuestionId() == null) {
+                Long questionId = examPaperCacheService.getLayout(answer.getExamId())
+                    .questionIdAt(answer.getSortOrder());
+                if (questionId == null) {
+                    log.warn("未找到题目: examId={}, sortOrder={}", answer.getExamId(), answer.getSortOrder());
+                    continue;
+                }
+                answer.setQuestionId(questionId);
+            }
+            resolved.add(answer);
+        }
+        return resolved;
+    }
+    
+    /**
+     * 发送失败的消息写入本地日志，等待Broker恢复后重放
+     */
+    private void journal(List<Message<AnswerMessage>> messages, CompletableFuture<SendOutcome> future, Throwable cause) {
+        List<AnswerMessage> payloads = new ArrayList<>(messages.size());
+        messages.forEach(message -> payloads.add(message.getPayload()));
+        try {
+            answerSendJournal.append(payloads);
+            journaledCounter.increment(payloads.size());
+            log.warn("批量发送答题记录到MQ失败，已写入本地日志等待重放: size={}, cause={}", payloads.size(), cause.toString());
+            future.complete(SendOutcome.JOURNALED);
+        } catch (Exception e) {
+            // 本地日志也写入失败时答案只保留在Redis中
+            log.error("批量发送答题记录到MQ失败且写入本地日志失败: size={}", payloads.size(), e);
+            future.completeExceptionally(cause);
+        }
+    }
+    
+    /**
+     * 按写入顺序重放本地日志中的消息；发送失败则保留进度，下个周期重试。
+     * 与实时发送之间的先后由落库侧按 answer_time 后写优先保证，不要求全局有序。
+     */
+    @Scheduled(
+            fixedDelayString = "#{T(org.springframework.boot.convert.DurationStyle).detectAndParse('${rocketmq.answer.send.journal.replay-interval:5s}').toMillis()}"
+    )
+    public void replayJournal() {
+        int batchSize = Math.max(answerSendConfig.getJournal().getReplayBatchSize(), 1);
+        while (answerSendJournal.hasPending()) {
+            AnswerSendJournal.JournalBatch batch = answerSendJournal.read(batchSize);
+            if (batch == null) {
+                return;
+            }
+            List<AnswerMessage> resolved;
+            try {
+                // 未经过发送流程直接写入日志的答案没有 questionId，重放前补齐
+                resolved = resolveQuestionIds(batch.messages());
+            } catch (Exception e) {
+                log.warn("重放本地日志时补齐题目ID失败，稍后重试: pending={}, cause={}",
+                    answerSendJournal.getPendingCount(), e.toString());
+                return;
+            }
+            if (!resolved.isEmpty()) {
+                List<Message<AnswerMessage>> messages = new ArrayList<>(resolved.size());
+                resolved.forEach(message -> messages.add(MessageBuilder.withPayload(message).build()));
                 try {
-                    Integer sortOrder = Integer.parseInt(parts[3]);
-                    String answer = redisService.get(key);
-                    if (answer != null) {
-                        answers.put(sortOrder, answer);
-                    }
-                } catch (NumberFormatException e) {
-                    log.warn("解析sortOrder失败: key={}", key);
+                    rocketMQTemplate.syncSend(answerTopic, messages, answerSendConfig.getSendTimeout().toMillis());
+                } catch (Exception e) {
+                    log.warn("重放本地日志中的答题记录失败，稍后重试: pending={}, cause={}",
+                        answerSendJournal.getPendingCount(), e.toString());
+                    return;
                 }
             }
+            answerSendJournal.commit(batch);
+            log.info("已重放本地日志中的答题记录: size={}, pending={}",
+                resolved.size(), answerSendJournal.getPendingCount());
+        }
+    }
+    
+    /**
+     * 从Redis获取所有答题记录：一次HGETALL读取考生答题hash；
+     * 开启兼容读时，对hash中缺失的题目序号按试卷编排用MGET补读旧格式key，并迁移到hash
+     */
+    public Map<Integer, String> getAllAnswers(Long examId, Long studentId) {
+        String hashKey = RedisKeyUtil.getAnswerHashKey(examId, studentId);
+        Map<Integer, String> answers = new HashMap<>();
+        redisService.hashGetAll(hashKey).forEach((field, answer) -> {
+            try {
+                answers.put(Integer.parseInt(field), answer);
+            } catch (NumberFormatException e) {
+                log.warn("解析sortOrder失败: key={}, field={}", hashKey, field);
+            }
+        });
+        if (legacyReadEnabled) {
+            migrateLegacyAnswers(examId, studentId, hashKey, answers);
         }
         return answers;
     }
+    
+    /**
+     * 兼容旧格式（每题一个key）：只按试卷编排中的题目序号精确读取，不再使用KEYS扫描
+     */
+    private void migrateLegacyAnswers(Long examId, Long studentId, String hashKey, Map<Integer, String> answers) {
+        ExamPaperCacheService.PaperLayout layout = examPaperCacheService.getLayout(examId);
+        List<Integer> sortOrders = new ArrayList<>();
+        List<String> legacyKeys = new ArrayList<>();
+        for (int sortOrder = 0; sortOrder <= layout.getMaxSortOrder(); sortOrder++) {
+            if (layout.questionIdAt(sortOrder) != null && !answers.containsKey(sortOrder)) {
+                sortOrders.add(sortOrder);
+                legacyKeys.add(RedisKeyUtil.getLegacyAnswerKey(examId, studentId, sortOrder));
+            }
+        }
+        if (legacyKeys.isEmpty()) {
+            return;
+        }
+        
+        List<String> legacyValues = redisService.multiGet(legacyKeys);
+        Set<String> migratedKeys = new HashSet<>();
+        for (int i = 0; i < legacyKeys.size(); i++) {
+            String answer = legacyValues.get(i);
+            if (answer == null) {
+                continue;
+            }
+            Integer sortOrder = sortOrders.get(i);
+            // HSETNX：hash中已有新写入的答案时不被旧值覆盖
+            redisService.hashPutIfAbsent(hashKey, String.valueOf(sortOrder), answer);
+            answers.putIfAbsent(sortOrder, answer);
+            migratedKeys.add(legacyKeys.get(i));
+        }
+        if (!migratedKeys.isEmpty()) {
+            redisService.expireMilliseconds(hashKey, ANSWER_CACHE_TTL_MILLIS);
+            redisService.delete(migratedKeys);
+            log.info("迁移旧格式答题缓存: examId={}, studentId={}, count={}", examId, studentId, migratedKeys.size());
+        }
+    }
 }
-
@@ -0,0 +1,421 @@
+package com.exam.online.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.exam.online.dal.dataobject.ExamQuestionDO;
+import com.exam.online.dal.mapper.ExamMapper;
+import com.exam.online.dal.mapper.ExamQuestionMapper;
+import com.exam.online.dto.ExamRandomGenerateResponse;
+import com.exam.online.dto.Result;
+import com.exam.online.util.RedisKeyUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * 试卷编排缓存：按考试缓存 sortOrder -> questionId/分值 的数组，
+ * 考试进行中答题写入与落库消费都从这里取，不再逐条查询 exam_questions。
+ * 同时缓存按版本预编码的试卷详情JSON（Redis + 本地），开考时大量考生打开试卷只读缓存字节。
+ * 试卷变更后在事务提交时自增版本号并失效，并通过 Redis 广播让其它节点同步失效。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExamPaperCacheService {
+
+    private static final String INVALIDATE_TOPIC = "exam:paper:invalidate";
+
+    private static final Duration VIEW_TTL = Duration.ofDays(1);
+
+    /**
+     * 失效戳分槽数（2的幂），按考试ID散列到槽位；不同考试落入同一槽只会多放弃一次回填
+     */
+    private static final int STAMP_SLOTS = 1024;
+
+    /**
+     * 版本号只增不减：KEYS[1]=版本号key；ARGV[1]=数据库中的版本号。当前值缺失或更小时写入，返回写入后的版本号
+     */
+    private static final RedisService.LuaScript<Long> RAISE_VERSION_SCRIPT = RedisService.LuaScript.of("paper-version-raise",
+        "local current = redis.call('get', KEYS[1])\n" +
+        "local target = tonumber(ARGV[1])\n" +
+        "if (not current) or tonumber(current) < target then\n" +
+        "    redis.call('set', KEYS[1], ARGV[1])\n" +
+        "    return target\n" +
+        "end\n" +
+        "return tonumber(current)",
+        Long.class);
+
+    private final ExamQuestionMapper examQuestionMapper;
+    private final ExamMapper examMapper;
+    private final RedissonClient redissonClient;
+    private final RedisService redisService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 本地试卷详情距上次与Redis版本号核对超过该间隔时重新核对，兜底丢失的失效广播
+     */
+    @Value("${exam.paper-cache.revalidate-interval:5s}")
+    private Duration revalidateInterval;
+
+    /**
+     * 本地试卷编排最多缓存的考试数
+     */
+    @Value("${exam.paper-cache.max-layouts:4096}")
+    private int maxLayouts;
+
+    /**
+     * 本地试卷详情最多缓存的考试数（每份包含完整响应JSON，上限小于编排）
+     */
+    @Value("${exam.paper-cache.max-views:256}")
+    private int maxViews;
+
+    private final Map<Long, PaperLayout> layouts = new ConcurrentHashMap<>();
+    private final Map<Long, PaperView> views = new ConcurrentHashMap<>();
+    /**
+     * 按考试的失效戳：失效时先自增再移除本地条目，回填时在 compute 内核对加载前的戳，
+     * 只放弃本考试加载期间发生过失效的回填，其它考试的失效互不影响
+     */
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_SLOTS);
+    private RTopic invalidateTopic;
+
+    @PostConstruct
+    public void subscribe() {
+        invalidateTopic = redissonClient.getTopic(INVALIDATE_TOPIC, LongCodec.INSTANCE);
+        invalidateTopic.addListener(Long.class, (channel, examId) -> evictLocal(examId));
+    }
+
+    /**
+     * 获取试卷编排，本地未命中时从数据库加载一次
+     */
+    public PaperLayout getLayout(Long examId) {
+        PaperLayout layout = layouts.get(examId);
+        if (layout != null) {
+            return layout;
+        }
+        long loadStamp = stampOf(examId);
+        layout = load(examId);
+        // 加载期间发生过失效则不回填，避免把旧编排写回缓存
+        PaperLayout loaded = layout;
+        if (layouts.size() >= maxLayouts) {
+            evictOverflow(layouts, maxLayouts);
+        }
+        layouts.compute(examId, (id, existing) ->
+            existing != null || stampOf(id) != loadStamp ? existing : loaded);
+        return layout;
+    }
+
+    /**
+     * 预编码的试卷详情
+     * @param version 试卷版本号
+     * @param etag 基于版本号的强ETag，版本号读取失败时为null（不参与协商缓存）
+     * @param body 序列化后的响应JSON（Result 包装）
+     * @param paper 原始题序的试卷对象，只读，供按考生生成变体试卷
+     * @param checkedAtMillis 最近一次与Redis版本号核对的时间
+     */
+    public record PaperView(long version, String etag, byte[] body, ExamRandomGenerateResponse paper, long checkedAtMillis) {
+
+        PaperView checkedAt(long millis) {
+            return new PaperView(version, etag, body, paper, millis);
+        }
+    }
+
+    /**
+     * 获取当前版本的试卷详情：本地 -> Redis（按版本号） -> loader 构建后写回两级缓存
+     * @param loader 构建试卷对象，仅在两级缓存都未命中时调用
+     */
+    public PaperView getPaperView(Long examId, Supplier<ExamRandomGenerateResponse> loader) {
+        long now = System.currentTimeMillis();
+        PaperView view = views.get(examId);
+        if (view != null && now - view.checkedAtMillis() < revalidateInterval.toMillis()) {
+            return view;
+        }
+
+        long loadStamp = stampOf(examId);
+        Long version = currentVersion(examId);
+        if (view != null && version != null && view.version() == version) {
+            view = view.checkedAt(now);
+            views.replace(examId, view);
+            return view;
+        }
+
+        byte[] body = version == null ? null : readView(examId, version);
+        ExamRandomGenerateResponse paper = body == null ? null : decode(examId, body);
+        if (paper == null) {
+            paper = loader.get();
+            try {
+                body = objectMapper.writeValueAsBytes(Result.success(paper));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("序列化试卷详情失败: examId=" + examId, e);
+            }
+            if (version != null) {
+                writeView(examId, version, body);
+            }
+        }
+        // 读不到版本号时无法确认客户端副本是否最新，不生成ETag
+        String etag = version == null ? null : "\"paper-" + examId + "-" + version + "\"";
+        view = new PaperView(version == null ? -1 : version, etag, body, paper, now);
+        // Redis不可用时不回填本地，避免失效后长期返回旧试卷；加载期间发生过失效同样不回填
+        if (version != null) {
+            PaperView loaded = view;
+            if (views.size() >= maxViews) {
+                evictOverflow(views, maxViews);
+            }
+            views.compute(examId, (id, existing) -> stampOf(id) == loadStamp ? loaded : existing);
+        }
+        return view;
+    }
+
+    /**
+     * 预热试卷编排（考试开始时调用）
+     */
+    public void warmUp(Long examId) {
+        evictLocal(examId);
+        getLayout(examId);
+    }
+
+    /**
+     * 试卷变更后失效缓存：在调用方事务内自增数据库中的试卷版本号；
+     * 失效与广播处于事务中时在提交后执行，避免其它线程在提交前读回旧数据
+     */
+    public void invalidate(Long examId) {
+        examMapper.incrementPaperVersion(examId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishInvalidate(examId);
+                }
+            });
+        } else {
+            publishInvalidate(examId);
+        }
+    }
+
+    private void publishInvalidate(Long examId) {
+        try {
+            Long version = examMapper.selectPaperVersion(examId);
+            raiseVersion(examId, version == null ? 0 : version);
+        } catch (Exception e) {
+            log.error("同步试卷版本号失败: examId={}", examId, e);
+        }
+        evictLocal(examId);
+        try {
+            invalidateTopic.publish(examId);
+        } catch (Exception e) {
+            log.error("广播试卷缓存失效失败: examId={}", examId, e);
+        }
+    }
+
+    /**
+     * 考试结束后释放本地缓存（只清理本节点，不自增版本号）
+     */
+    public void release(Long examId) {
+        layouts.remove(examId);
+        views.remove(examId);
+    }
+
+    private void evictLocal(Long examId) {
+        stamps.incrementAndGet(stampSlot(examId));
+        layouts.remove(examId);
+        views.remove(examId);
+    }
+
+    private long stampOf(Long examId) {
+        return stamps.get(stampSlot(examId));
+    }
+
+    private static int stampSlot(Long examId) {
+        return Long.hashCode(examId) & (STAMP_SLOTS - 1);
+    }
+
+    /**
+     * 容量满时按迭代顺序淘汰约十分之一
+     */
+    private static void evictOverflow(Map<Long, ?> cache, int maxSize) {
+        int toRemove = Math.max(maxSize / 10, 1);
+        Iterator<Long> iterator = cache.keySet().iterator();
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 读取Redis中的试卷版本号；key 不存在（过期或被清空）时以数据库中的版本号回填，版本号不会回退；
+     * 读取失败返回null
+     */
+    private Long currentVersion(Long examId) {
+        try {
+            String value = redisService.rawGet(RedisKeyUtil.getPaperVersionKey(examId));
+            if (value != null) {
+                return Long.parseLong(value);
+            }
+            Long version = examMapper.selectPaperVersion(examId);
+            return raiseVersion(examId, version == null ? 0 : version);
+        } catch (Exception e) {
+            log.warn("读取试卷版本号失败，直接构建试卷详情: examId={}", examId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 将Redis中的版本号提升到不小于给定值，并发回填与失效同步时以较大者为准
+     */
+    private Long raiseVersion(Long examId, long version) {
+        return redisService.evalScript(RAISE_VERSION_SCRIPT,
+            List.of(RedisKeyUtil.getPaperVersionKey(examId)), List.of(String.valueOf(version)));
+    }
+
+    private byte[] readView(Long examId, long version) {
+        try {
+            String json = redisService.rawGet(RedisKeyUtil.getPaperViewKey(examId, version));
+            return json == null ? null : json.getBytes(StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            log.warn("读取试卷详情缓存失败: examId={}, version={}", examId, version, e);
+            return null;
+        }
+    }
+
+    /**
+     * 从缓存的响应JSON还原试卷对象，格式不兼容时返回null由调用方重新构建
+     */
+    private ExamRandomGenerateResponse decode(Long examId, byte[] body) {
+        try {
+            return objectMapper.treeToValue(objectMapper.readTree(body).get("data"), ExamRandomGenerateResponse.class);
+        } catch (Exception e) {
+            log.warn("解析试卷详情缓存失败，重新构建: examId={}", examId, e);
+            return null;
+        }
+    }
+
+    private void writeView(Long examId, long version, byte[] body) {
+        try {
+            redisService.rawSet(RedisKeyUtil.getPaperViewKey(examId, version),
+                new String(body, StandardCharsets.UTF_8), VIEW_TTL.toMillis());
+        } catch (Exception e) {
+            log.warn("写入试卷详情缓存失败: examId={}, version={}", examId, version, e);
+        }
+    }
+
+    private PaperLayout load(Long examId) {
+        List<ExamQuestionDO> relations = examQuestionMapper.selectList(
+            new LambdaQueryWrapper<ExamQuestionDO>()
+                .select(ExamQuestionDO::getSortOrder, ExamQuestionDO::getQuestionId,
+                    ExamQuestionDO::getQuestionScore, ExamQuestionDO::getGroupId)
+                .eq(ExamQuestionDO::getExamId, examId)
+        );
+        PaperLayout layout = PaperLayout.of(relations);
+        log.info("加载试卷编排: examId={}, questionCount={}", examId, layout.getQuestionCount());
+        return layout;
+    }
+
+    /**
+     * 试卷编排：下标为 sortOrder，questionIds[i] == 0 表示该序号没有题目
+     */
+    public static final class PaperLayout {
+        private final long[] questionIds;
+        private final int[] scores;
+        private final int[] groupIds;
+        private final int questionCount;
+
+        private PaperLayout(long[] questionIds, int[] scores, int[] groupIds, int questionCount) {
+            this.questionIds = questionIds;
+            this.scores = scores;
+            this.groupIds = groupIds;
+            this.questionCount = questionCount;
+        }
+
+        static PaperLayout of(List<ExamQuestionDO> relations) {
+            int maxSortOrder = 0;
+            for (ExamQuestionDO relation : relations) {
+                if (relation.getSortOrder() != null) {
+                    maxSortOrder = Math.max(maxSortOrder, relation.getSortOrder());
+                }
+            }
+            long[] questionIds = new long[maxSortOrder + 1];
+            int[] scores = new int[maxSortOrder + 1];
+            int[] groupIds = new int[maxSortOrder + 1];
+            int count = 0;
+            for (ExamQuestionDO relation : relations) {
+                Integer sortOrder = relation.getSortOrder();
+                if (sortOrder == null || sortOrder < 0 || relation.getQuestionId() == null
+                        || questionIds[sortOrder] != 0) {
+                    continue;
+                }
+                questionIds[sortOrder] = relation.getQuestionId();
+                scores[sortOrder] = relation.getQuestionScore() == null ? 0 : relation.getQuestionScore();
+                groupIds[sortOrder] = relation.getGroupId() == null ? 0 : relation.getGroupId();
+                count++;
+            }
+            return new PaperLayout(questionIds, scores, groupIds, count);
+        }
+
+        /**
+         * 根据题目序号获取题目ID，不存在返回null
+         */
+        public Long questionIdAt(Integer sortOrder) {
+            if (sortOrder == null || sortOrder < 0 || sortOrder >= questionIds.length || questionIds[sortOrder] == 0) {
+                return null;
+            }
+            return questionIds[sortOrder];
+        }
+
+        /**
+         * 根据题目序号获取分值，不存在返回0
+         */
+        public int scoreAt(Integer sortOrder) {
+            return questionIdAt(sortOrder) == null ? 0 : scores[sortOrder];
+        }
+
+        /**
+         * 根据题目ID获取分值；sortOrder 作为下标提示命中时 O(1)，否则线性查找
+         */
+        public int scoreOf(Long questionId, Integer sortOrderHint) {
+            if (questionId == null) {
+                return 0;
+            }
+            Long hinted = questionIdAt(sortOrderHint);
+            if (hinted != null && hinted.longValue() == questionId) {
+                return scores[sortOrderHint];
+            }
+            for (int i = 0; i < questionIds.length; i++) {
+                if (questionIds[i] == questionId) {
+                    return scores[i];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * 根据题目序号获取组别，不存在返回0
+         */
+        public int groupIdAt(Integer sortOrder) {
+            return questionIdAt(sortOrder) == null ? 0 : groupIds[sortOrder];
+        }
+
+        public int getQuestionCount() {
+            return questionCount;
+        }
+
+        public int getMaxSortOrder() {
+            return questionIds.length - 1;
+        }
+    }
+}
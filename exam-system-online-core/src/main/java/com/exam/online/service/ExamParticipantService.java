@@ -1,19 +1,30 @@
 package com.exam.online.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.exam.online.dal.dataobject.ExamDO;
 import com.exam.online.dal.dataobject.ExamParticipantDO;
 import com.exam.online.dal.dataobject.SystemUserDO;
-import com.exam.online.dal.mapper.ExamMapper;
 import com.exam.online.dal.mapper.ExamParticipantMapper;
 import com.exam.online.dal.mapper.SystemUserMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Slf4j
 @Service
@@ -21,16 +32,87 @@ import java.util.UUID;
 public class ExamParticipantService {
     
     private final ExamParticipantMapper examParticipantMapper;
-    private final ExamMapper examMapper;
     private final SystemUserMapper systemUserMapper;
     private final RedisService redisService;
     private final DistributedLockService distributedLockService;
+    private final ParticipantSessionCache participantSessionCache;
+    private final ExamWarmUpService examWarmUpService;
+    
+    private static final String ADMISSION_MODE_LUA = "lua";
+    private static final long TOKEN_TTL_BUFFER_SECONDS = 30 * 60;
+    private static final long ADMIT_OK = 1;
+    private static final long ADMIT_ALREADY_ENTERED = 0;
+    private static final long ADMIT_NOT_STARTED = -1;
+    private static final long ADMIT_ENDED = -2;
+    private static final long ADMIT_EXAM_NOT_CACHED = -3;
+    
+    /**
+     * 进入考试准入脚本：
+     * KEYS[1]=考试时间窗口hash，KEYS[2]=考试token key；ARGV[1]=当前毫秒，ARGV[2]=新token，ARGV[3]=token在考试结束后的保留秒数。
+     * 返回 {状态码, token, ttl秒}：1 写入新token，0 已存在token（返回现有token），-1 未开始，-2 已结束，-3 考试未缓存，-4 考试已删除。
+     * token按JSON字符串写入，与RedisTemplate读取的格式一致。
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisService.LuaScript<List> ENTER_ADMISSION_SCRIPT = RedisService.LuaScript.of("enter-admission",
+        "local existing = redis.call('get', KEYS[2])\n" +
+        "if existing then\n" +
+        "    return {0, existing, redis.call('ttl', KEYS[2])}\n" +
+        "end\n" +
+        "if redis.call('exists', KEYS[1]) == 0 then\n" +
+        "    return {-3, '', 0}\n" +
+        "end\n" +
+        "local window = redis.call('hmget', KEYS[1], 'startTime', 'endTime', 'deleted')\n" +
+        "if window[3] == '1' then\n" +
+        "    return {-4, '', 0}\n" +
+        "end\n" +
+        "local now = tonumber(ARGV[1])\n" +
+        "local startTime = tonumber(window[1])\n" +
+        "local endTime = tonumber(window[2])\n" +
+        "if startTime and now < startTime then\n" +
+        "    return {-1, '', 0}\n" +
+        "end\n" +
+        "if endTime and now > endTime then\n" +
+        "    return {-2, '', 0}\n" +
+        "end\n" +
+        "local ttl = tonumber(ARGV[3])\n" +
+        "if endTime then\n" +
+        "    ttl = math.floor((endTime - now) / 1000) + tonumber(ARGV[3])\n" +
+        "end\n" +
+        "redis.call('set', KEYS[2], '\"' .. ARGV[2] .. '\"', 'EX', ttl)\n" +
+        "return {1, ARGV[2], ttl}",
+        List.class);
+    
+    /**
+     * 进入考试准入模式：lua（单脚本原子准入，默认）或 redisson（分布式锁，保留用于对比）
+     */
+    @Value("${exam.enter.admission-mode:lua}")
+    private String admissionMode;
+    
+    /**
+     * 是否为新进入的考生生成试卷变体种子（题序与选项顺序按考生打乱）
+     */
+    @Value("${exam.paper-variant.enabled:false}")
+    private boolean paperVariantEnabled;
+    
+    /**
+     * 启动时预加载准入脚本
+     */
+    @PostConstruct
+    public void loadScripts() {
+        if (ADMISSION_MODE_LUA.equalsIgnoreCase(admissionMode)) {
+            redisService.registerScript(ENTER_ADMISSION_SCRIPT);
+        }
+    }
     
     /**
-     * 学生进入考试（使用分布式锁优化）
+     * 学生进入考试：默认Lua脚本原子准入；admission-mode=redisson 时使用分布式锁 + SETNX
      */
     @Transactional
     public ExamParticipantDO enterExam(Long examId, Long studentId) {
+        if (ADMISSION_MODE_LUA.equalsIgnoreCase(admissionMode)) {
+            return enterExamWithScript(examId, studentId);
+        }
+        
         // 快速检查：如果Redis已有token，直接拒绝重入（无需加锁）
         String tokenKeyFast = com.exam.online.util.RedisKeyUtil.getExamTokenKey(examId, studentId);
         String existingTokenFast = redisService.get(tokenKeyFast);
@@ -39,14 +121,8 @@ public class ExamParticipantService {
             throw new IllegalArgumentException("您已进入考试，不允许重复进入");
         }
 
-        // 进入锁前先校验身份，非学生直接拒绝，减少锁竞争
-        SystemUserDO preCheckUser = systemUserMapper.selectById(studentId);
-        if (preCheckUser == null || preCheckUser.getIsDeleted() != null && preCheckUser.getIsDeleted() == 1) {
-            throw new IllegalArgumentException("用户不存在");
-        }
-        if (preCheckUser.getUserRole() == null || preCheckUser.getUserRole() != 1) {
-            throw new IllegalArgumentException("只有学生可以进入考试");
-        }
+        // 进入锁前先校验身份（优先预热的学生名册），非学生直接拒绝，减少锁竞争
+        validateStudent(studentId);
 
         // 获取分布式锁
         boolean lockAcquired = distributedLockService.tryLockEnterExam(examId, studentId, 30);
@@ -64,14 +140,11 @@ public class ExamParticipantService {
             String tokenKey = com.exam.online.util.RedisKeyUtil.getExamTokenKey(examId, studentId);
             String existingToken = redisService.get(tokenKey);
             if (existingToken != null) {
-                // 查询参与记录并返回
-                ExamParticipantDO participant = examParticipantMapper.selectOne(
-                    new LambdaQueryWrapper<ExamParticipantDO>()
-                        .eq(ExamParticipantDO::getExamId, examId)
-                        .eq(ExamParticipantDO::getUserId, studentId)
-                        .orderByDesc(ExamParticipantDO::getCreatedAt)
-                        .last("LIMIT 1")
-                );
+                // 查询参与记录并返回（优先会话缓存）
+                ParticipantSessionCache.Session session = participantSessionCache.get(examId, studentId);
+                ExamParticipantDO participant = session != null
+                    ? toParticipant(examId, studentId, session)
+                    : getParticipant(examId, studentId);
                 if (participant != null) {
                     log.info("从现有记录返回token: examId={}, studentId={}", examId, studentId);
                     return participant;
@@ -93,17 +166,8 @@ public class ExamParticipantService {
                 throw new IllegalArgumentException("您已进入考试，不允许重复进入");
             }
             
-            // 1. 校验学生身份
-            SystemUserDO user = systemUserMapper.selectById(studentId);
-            if (user == null || user.getIsDeleted() != null && user.getIsDeleted() == 1) {
-                throw new IllegalArgumentException("用户不存在");
-            }
-            if (user.getUserRole() == null || user.getUserRole() != 1) {
-                throw new IllegalArgumentException("只有学生可以进入考试");
-            }
-            
-            // 2. 校验考试状态
-            ExamDO exam = examMapper.selectById(examId);
+            // 1. 校验考试状态（优先预热的考试信息）
+            ExamDO exam = examWarmUpService.getExam(examId);
             if (exam == null || (exam.getIsDelete() != null && exam.getIsDelete() == 1)) {
                 throw new IllegalArgumentException("考试不存在或已被删除");
             }
@@ -138,77 +202,214 @@ public class ExamParticipantService {
             }
             log.info("考试token写入Redis成功: examId={}, studentId={}, key={}", examId, studentId, tokenKey);
             
-            // 5. 创建或更新参与记录
-            ExamParticipantDO participant = examParticipantMapper.selectOne(
-                new LambdaQueryWrapper<ExamParticipantDO>()
-                    .eq(ExamParticipantDO::getExamId, examId)
-                    .eq(ExamParticipantDO::getUserId, studentId)
-                    .orderByDesc(ExamParticipantDO::getCreatedAt)
-                    .last("LIMIT 1")
-            );
-            
-            if (participant == null) {
-                participant = new ExamParticipantDO();
-                participant.setExamId(examId);
-                participant.setUserId(studentId);
-                participant.setAttempt(1);
-                participant.setJoinTime(now);
-                participant.setStartTime(now);
-                participant.setStatus(1); // 进行中
-                participant.setAccessToken(token);
-                participant.setIsConnected(1);
-                participant.setCreatedAt(now);
-                participant.setUpdatedAt(now);
-                examParticipantMapper.insert(participant);
-            } else {
-                // 如果已存在，更新token和状态
-                participant.setAccessToken(token);
-                participant.setJoinTime(now);
-                participant.setStartTime(now);
-                participant.setStatus(1);
-                participant.setIsConnected(1);
-                participant.setUpdatedAt(now);
-                examParticipantMapper.updateById(participant);
-            }
-            
-            return participant;
+            // 3. 创建或更新参与记录
+            return upsertParticipant(examId, studentId, token, now, ttlSeconds);
         } finally {
             // 释放分布式锁（记录持有时间）
             distributedLockService.unlockEnterExam(lock, lockStartTime);
         }
     }
     
+    /**
+     * Lua准入模式：一个脚本原子完成重复进入检查、考试时间窗口校验和token写入，无需分布式锁
+     */
+    private ExamParticipantDO enterExamWithScript(Long examId, Long studentId) {
+        validateStudent(studentId);
+        
+        String tokenKey = com.exam.online.util.RedisKeyUtil.getExamTokenKey(examId, studentId);
+        String token = UUID.randomUUID().toString().replace("-", "");
+        List<Object> result = admit(examId, tokenKey, token);
+        long code = ((Number) result.get(0)).longValue();
+        if (code == ADMIT_EXAM_NOT_CACHED) {
+            // 考试时间窗口未缓存：加载后写入Redis再执行一次
+            ExamDO exam = examWarmUpService.getExam(examId);
+            if (exam == null || (exam.getIsDelete() != null && exam.getIsDelete() == 1)) {
+                throw new IllegalArgumentException("考试不存在或已被删除");
+            }
+            examWarmUpService.cacheExamWindow(exam);
+            result = admit(examId, tokenKey, token);
+            code = ((Number) result.get(0)).longValue();
+        }
+        
+        if (code == ADMIT_ALREADY_ENTERED) {
+            log.warn("重复进入考试被拒绝: examId={}, studentId={}, key={}", examId, studentId, tokenKey);
+            throw new IllegalArgumentException("您已进入考试，不允许重复进入");
+        }
+        if (code == ADMIT_NOT_STARTED) {
+            throw new IllegalArgumentException("考试尚未开始");
+        }
+        if (code == ADMIT_ENDED) {
+            throw new IllegalArgumentException("考试已结束");
+        }
+        if (code != ADMIT_OK) {
+            throw new IllegalArgumentException("考试不存在或已被删除");
+        }
+        long ttlSeconds = Long.parseLong(String.valueOf(result.get(2)));
+        log.info("考试token写入Redis成功: examId={}, studentId={}, key={}, ttlSeconds={}", examId, studentId, tokenKey, ttlSeconds);
+        
+        revokeTokenOnRollback(examId, studentId, tokenKey);
+        return upsertParticipant(examId, studentId, token, LocalDateTime.now(), ttlSeconds);
+    }
+    
+    /**
+     * 事务回滚（包括提交时才失败的死锁、断连）后撤销脚本写入的token，允许学生重试进入
+     */
+    private void revokeTokenOnRollback(Long examId, Long studentId, String tokenKey) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                try {
+                    redisService.delete(tokenKey);
+                    log.warn("进入考试事务回滚，已撤销token: examId={}, studentId={}", examId, studentId);
+                } catch (Exception e) {
+                    log.error("进入考试事务回滚后撤销token失败: examId={}, studentId={}, key={}", examId, studentId, tokenKey, e);
+                }
+            }
+        });
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<Object> admit(Long examId, String tokenKey, String token) {
+        return redisService.evalScript(ENTER_ADMISSION_SCRIPT,
+            List.of(com.exam.online.util.RedisKeyUtil.getExamInfoKey(examId), tokenKey),
+            List.of(String.valueOf(System.currentTimeMillis()), token, String.valueOf(TOKEN_TTL_BUFFER_SECONDS)));
+    }
+    
+    /**
+     * 创建或更新参与记录：会话缓存命中按主键更新；考试已预热且缓存未命中说明尚无记录，直接插入
+     */
+    private ExamParticipantDO upsertParticipant(Long examId, Long studentId, String token,
+                                                LocalDateTime now, long ttlSeconds) {
+        ParticipantSessionCache.Session session = participantSessionCache.get(examId, studentId);
+        boolean warmed = examWarmUpService.isWarmed(examId);
+        examWarmUpService.recordLookup("participant", session != null || warmed);
+        
+        ExamParticipantDO participant;
+        if (session != null) {
+            participant = toParticipant(examId, studentId, session);
+            refreshParticipant(participant, token, now);
+        } else if (warmed) {
+            try {
+                participant = insertParticipant(examId, studentId, token, now);
+            } catch (DuplicateKeyException e) {
+                // 缓存丢失时由唯一索引 uk_exam_user_attempt 兜底，回退为查询后更新
+                log.warn("参与记录已存在，回退为更新: examId={}, studentId={}", examId, studentId);
+                participant = getParticipant(examId, studentId);
+                refreshParticipant(participant, token, now);
+            }
+        } else {
+            participant = getParticipant(examId, studentId);
+            if (participant == null) {
+                participant = insertParticipant(examId, studentId, token, now);
+            } else {
+                refreshParticipant(participant, token, now);
+            }
+        }
+        participantSessionCache.put(examId, studentId,
+            new ParticipantSessionCache.Session(participant.getId(), participant.getStatus(), token, participant.getPaperSeed()),
+            ttlSeconds * 1000);
+        return participant;
+    }
+    
+    private ExamParticipantDO insertParticipant(Long examId, Long studentId, String token, LocalDateTime now) {
+        ExamParticipantDO participant = new ExamParticipantDO();
+        participant.setExamId(examId);
+        participant.setUserId(studentId);
+        participant.setAttempt(1);
+        participant.setJoinTime(now);
+        participant.setStartTime(now);
+        participant.setStatus(1); // 进行中
+        participant.setAccessToken(token);
+        // 变体种子只在首次进入时生成，重新进入沿用原种子，保证题序不变
+        participant.setPaperSeed(paperVariantEnabled ? ThreadLocalRandom.current().nextLong() : null);
+        participant.setIsConnected(1);
+        participant.setCreatedAt(now);
+        participant.setUpdatedAt(now);
+        examParticipantMapper.insert(participant);
+        return participant;
+    }
+    
+    /**
+     * 已存在的参与记录：更新token和状态（按主键，仅更新非空字段）
+     */
+    private void refreshParticipant(ExamParticipantDO participant, String token, LocalDateTime now) {
+        participant.setAccessToken(token);
+        participant.setJoinTime(now);
+        participant.setStartTime(now);
+        participant.setStatus(1);
+        participant.setIsConnected(1);
+        participant.setUpdatedAt(now);
+        examParticipantMapper.updateById(participant);
+    }
+    
+    /**
+     * 校验学生身份：预热名册命中直接通过，否则查询数据库
+     */
+    private void validateStudent(Long studentId) {
+        if (examWarmUpService.isKnownStudent(studentId)) {
+            return;
+        }
+        SystemUserDO user = systemUserMapper.selectById(studentId);
+        if (user == null || user.getIsDeleted() != null && user.getIsDeleted() == 1) {
+            throw new IllegalArgumentException("用户不存在");
+        }
+        if (user.getUserRole() == null || user.getUserRole() != 1) {
+            throw new IllegalArgumentException("只有学生可以进入考试");
+        }
+        examWarmUpService.rememberStudent(studentId);
+    }
+    
     /**
      * 提交考试（内部方法，不加锁，由Controller层保证锁）
      */
     @Transactional
     public void submitExam(Long examId, Long studentId) {
-        ExamParticipantDO participant = examParticipantMapper.selectOne(
-            new LambdaQueryWrapper<ExamParticipantDO>()
-                .eq(ExamParticipantDO::getExamId, examId)
-                .eq(ExamParticipantDO::getUserId, studentId)
-                .orderByDesc(ExamParticipantDO::getCreatedAt)
-                .last("LIMIT 1")
-        );
+        ParticipantSessionCache.Session session = getSession(examId, studentId);
         
-        if (participant == null) {
+        if (session == null) {
             throw new IllegalArgumentException("未找到考试参与记录");
         }
         
-        if (participant.getStatus() != null && participant.getStatus() == 2) {
+        if (session.status() != null && session.status() == 2) {
             // 已提交，幂等处理
             log.info("考试已提交，幂等返回: examId={}, studentId={}", examId, studentId);
             return;
         }
         
-        participant.setStatus(2); // 已提交
-        participant.setSubmitTime(LocalDateTime.now());
-        participant.setUpdatedAt(LocalDateTime.now());
-        examParticipantMapper.updateById(participant);
+        // 按主键更新，状态条件保证重复提交不会覆盖提交时间
+        LocalDateTime now = LocalDateTime.now();
+        examParticipantMapper.update(null, new LambdaUpdateWrapper<ExamParticipantDO>()
+            .set(ExamParticipantDO::getStatus, 2) // 已提交
+            .set(ExamParticipantDO::getSubmitTime, now)
+            .set(ExamParticipantDO::getUpdatedAt, now)
+            .eq(ExamParticipantDO::getId, session.participantId())
+            .and(w -> w.isNull(ExamParticipantDO::getStatus).or().ne(ExamParticipantDO::getStatus, 2)));
+        participantSessionCache.markSubmitted(examId, studentId,
+            new ParticipantSessionCache.Session(session.participantId(), 2, session.token(), session.paperSeed()));
         
         log.info("考试提交成功: examId={}, studentId={}", examId, studentId);
     }
     
+    /**
+     * 获取考生会话（参与记录ID、状态、token）：优先两级缓存，未命中回源数据库并回填
+     */
+    public ParticipantSessionCache.Session getSession(Long examId, Long studentId) {
+        ParticipantSessionCache.Session session = participantSessionCache.get(examId, studentId);
+        if (session != null) {
+            return session;
+        }
+        ExamParticipantDO participant = getParticipant(examId, studentId);
+        if (participant == null) {
+            return null;
+        }
+        session = toSession(participant);
+        participantSessionCache.putAll(examId, Map.of(studentId, session));
+        return session;
+    }
+    
     /**
      * 根据examId和studentId获取参与记录
      */
@@ -221,5 +422,59 @@ public class ExamParticipantService {
                 .last("LIMIT 1")
         );
     }
+    
+    /**
+     * 批量解析参与记录ID：优先两级会话缓存，未命中的学生按考试一次查询并回填
+     * @return studentId -> participantId，未找到参与记录的学生不在结果中
+     */
+    public Map<Long, Long> resolveParticipantIds(Long examId, Collection<Long> studentIds) {
+        Map<Long, Long> result = new HashMap<>();
+        Map<Long, ParticipantSessionCache.Session> cached = participantSessionCache.getAll(examId, studentIds);
+        List<Long> misses = new ArrayList<>();
+        for (Long studentId : studentIds) {
+            ParticipantSessionCache.Session session = cached.get(studentId);
+            if (session != null) {
+                result.put(studentId, session.participantId());
+            } else {
+                misses.add(studentId);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+        
+        List<ExamParticipantDO> participants = examParticipantMapper.selectList(
+            new LambdaQueryWrapper<ExamParticipantDO>()
+                .select(ExamParticipantDO::getId, ExamParticipantDO::getUserId,
+                    ExamParticipantDO::getStatus, ExamParticipantDO::getAccessToken, ExamParticipantDO::getPaperSeed)
+                .eq(ExamParticipantDO::getExamId, examId)
+                .in(ExamParticipantDO::getUserId, misses)
+                .orderByDesc(ExamParticipantDO::getCreatedAt)
+        );
+        Map<Long, ParticipantSessionCache.Session> loaded = new HashMap<>();
+        for (ExamParticipantDO participant : participants) {
+            // 按创建时间倒序，取每个学生最新的一条
+            if (result.putIfAbsent(participant.getUserId(), participant.getId()) == null) {
+                loaded.put(participant.getUserId(), toSession(participant));
+            }
+        }
+        participantSessionCache.putAll(examId, loaded);
+        return result;
+    }
+    
+    private ParticipantSessionCache.Session toSession(ExamParticipantDO participant) {
+        return new ParticipantSessionCache.Session(
+            participant.getId(), participant.getStatus(), participant.getAccessToken(), participant.getPaperSeed());
+    }
+    
+    private ExamParticipantDO toParticipant(Long examId, Long studentId, ParticipantSessionCache.Session session) {
+        ExamParticipantDO participant = new ExamParticipantDO();
+        participant.setId(session.participantId());
+        participant.setExamId(examId);
+        participant.setUserId(studentId);
+        participant.setStatus(session.status());
+        participant.setAccessToken(session.token());
+        participant.setPaperSeed(session.paperSeed());
+        return participant;
+    }
 }
-
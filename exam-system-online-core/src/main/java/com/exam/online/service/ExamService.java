@@ -1,33 +1,40 @@
 package com.exam.online.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.exam.online.dal.dataobject.ExamDO;
 import com.exam.online.dal.dataobject.ExamQuestionDO;
 import com.exam.online.dal.dataobject.QuestionBankDO;
 import com.exam.online.dal.mapper.ExamMapper;
 import com.exam.online.dal.mapper.ExamQuestionMapper;
 import com.exam.online.dal.mapper.QuestionBankMapper;
+import com.exam.online.dto.CursorPageResponse;
 import com.exam.online.dto.ExamAddQuestionsRequest;
 import com.exam.online.dto.ExamCreateRequest;
 import com.exam.online.dto.ExamResponse;
+import com.exam.online.dto.ExamSummaryResponse;
 import com.exam.online.dto.ExamQuestionItemRequest;
 import com.exam.online.dto.ExamRandomGenerateRequest;
 import com.exam.online.dto.ExamRandomGenerateResponse;
 import com.exam.online.dto.ExamStatusUpdateRequest;
 import com.exam.online.dto.ExamUpdateRequest;
+import com.exam.online.util.CursorUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 @Service
@@ -37,32 +44,49 @@ public class ExamService {
     private final ExamMapper examMapper;
     private final ExamQuestionMapper examQuestionMapper;
     private final QuestionBankMapper questionBankMapper;
+    private final ExamPaperCacheService examPaperCacheService;
+    private final ExamWarmUpService examWarmUpService;
+    private final QuestionTagService questionTagService;
     private static final long MAX_PAGE_SIZE = 100L;
 
-    public List<ExamResponse> listAll(int page, int pageSize) {
+    /**
+     * 列表摘要中描述预览的字符数
+     */
+    @Value("${exam.listing.preview-length:100}")
+    private int previewLength;
+    /**
+     * 试卷题目批量写入时单条SQL的最大行数
+     */
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    /**
+     * 分页查询考试摘要：描述只取预览，不执行 COUNT
+     */
+    public List<ExamSummaryResponse> listAll(int page, int pageSize) {
         int safePage = Math.max(page, 1);
         long safeSize = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
 
-        LambdaQueryWrapper<ExamDO> wrapper = new LambdaQueryWrapper<ExamDO>()
-                .eq(ExamDO::getIsDelete, 0)
-                .orderByAsc(ExamDO::getId);
-
-        Page<ExamDO> pageResult = examMapper.selectPage(new Page<>(safePage, safeSize), wrapper);
-
-        return pageResult.getRecords().stream()
-                .map(e -> new ExamResponse(
-                        e.getId(),
-                        e.getExamName(),
-                        e.getExamDescription(),
-                        e.getExamType(),
-                        e.getStatus(),
-                        e.getStartTime(),
-                        e.getEndTime(),
-                        e.getDuration()
-                ))
+        return examMapper.selectSummaries(previewLength(), null, (safePage - 1) * safeSize, (int) safeSize)
+                .stream()
+                .map(this::toSummary)
                 .toList();
     }
 
+    /**
+     * 按ID游标分页查询考试摘要：WHERE id > 游标 ORDER BY id LIMIT size+1，不做 COUNT
+     */
+    public CursorPageResponse<ExamSummaryResponse> listByCursor(String cursor, int pageSize) {
+        long lastId = CursorUtil.decode(cursor);
+        int safeSize = (int) Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
+
+        List<ExamDO> rows = examMapper.selectSummaries(previewLength(), lastId, null, safeSize + 1);
+
+        boolean hasMore = rows.size() > safeSize;
+        List<ExamDO> page = hasMore ? rows.subList(0, safeSize) : rows;
+        String nextCursor = hasMore ? CursorUtil.encode(page.get(page.size() - 1).getId()) : null;
+        return new CursorPageResponse<>(page.stream().map(this::toSummary).toList(), nextCursor);
+    }
+
     /**
      * 根据考试ID查询单个考试详情
      */
@@ -129,14 +153,32 @@ public class ExamService {
         if (exam == null || (exam.getIsDelete() != null && exam.getIsDelete() == 1)) {
             throw new IllegalArgumentException("考试不存在或已被删除");
         }
+        return buildExamQuestions(examId);
+    }
+
+    /**
+     * 获取预编码的试卷题目详情（响应体为 Result 包装后的JSON），按试卷版本号缓存，
+     * 试卷编排或题目内容变更后版本号自增
+     */
+    public ExamPaperCacheService.PaperView getExamQuestionsView(Long examId) {
+        if (examId == null || examId <= 0) {
+            throw new IllegalArgumentException("考试ID不合法");
+        }
+        ExamDO exam = examWarmUpService.getExam(examId);
+        if (exam == null || (exam.getIsDelete() != null && exam.getIsDelete() == 1)) {
+            throw new IllegalArgumentException("考试不存在或已被删除");
+        }
+        return examPaperCacheService.getPaperView(examId, () -> buildExamQuestions(examId));
+    }
 
+    private ExamRandomGenerateResponse buildExamQuestions(Long examId) {
         List<ExamQuestionDO> relations = examQuestionMapper.selectList(
                 new LambdaQueryWrapper<ExamQuestionDO>()
                         .eq(ExamQuestionDO::getExamId, examId)
                         .orderByAsc(ExamQuestionDO::getSortOrder)
         );
         if (relations.isEmpty()) {
-            return new ExamRandomGenerateResponse(Collections.emptyList(), 0, 0);
+            return new ExamRandomGenerateResponse(Collections.emptyList(), 0, 0, null);
         }
 
         List<Long> questionIds = relations.stream()
@@ -170,7 +212,7 @@ public class ExamService {
             totalScore += relation.getQuestionScore() == null ? 0 : relation.getQuestionScore();
         }
 
-        return new ExamRandomGenerateResponse(items, items.size(), totalScore);
+        return new ExamRandomGenerateResponse(items, items.size(), totalScore, null);
     }
 
     @Transactional
@@ -247,29 +289,36 @@ public class ExamService {
             var existingMap = existing.stream()
                     .collect(Collectors.toMap(ExamQuestionDO::getSortOrder, q -> q));
 
+            List<ExamQuestionDO> changed = new ArrayList<>(items.size());
             for (ExamQuestionItemRequest item : items) {
                 ExamQuestionDO relation = existingMap.get(item.getSortOrder());
                 if (relation == null) {
                     throw new IllegalArgumentException("未找到 sort_order 对应的题目：" + item.getSortOrder());
                 }
-                relation.setQuestionId(item.getQuestionId());
-                relation.setQuestionScore(item.getQuestionScore());
-                relation.setGroupId(item.getGroupId());
-                // sort_order 作为定位字段，此处保持原值
-                examQuestionMapper.updateById(relation);
+                // 未提供的字段保持原值；sort_order 作为定位字段，此处保持原值
+                if (item.getQuestionId() != null) {
+                    relation.setQuestionId(item.getQuestionId());
+                }
+                if (item.getQuestionScore() != null) {
+                    relation.setQuestionScore(item.getQuestionScore());
+                }
+                if (item.getGroupId() != null) {
+                    relation.setGroupId(item.getGroupId());
+                }
+                changed.add(relation);
+            }
+            for (int from = 0; from < changed.size(); from += WRITE_BATCH_SIZE) {
+                examQuestionMapper.batchUpdateById(changed.subList(from, Math.min(from + WRITE_BATCH_SIZE, changed.size())));
             }
 
-            // 重新计算总分（题量不变）
-            List<ExamQuestionDO> afterUpdate = examQuestionMapper.selectList(
-                    new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<ExamQuestionDO>()
-                            .eq(ExamQuestionDO::getExamId, examId)
-            );
-            int totalScore = afterUpdate.stream()
-                    .mapToInt(ExamQuestionDO::getQuestionScore)
+            // 按内存中更新后的映射重新计算总分（题量不变）
+            int totalScore = existing.stream()
+                    .mapToInt(q -> q.getQuestionScore() == null ? 0 : q.getQuestionScore())
                     .sum();
-            exam.setQuestionCount(afterUpdate.size());
+            exam.setQuestionCount(existing.size());
             exam.setTotalScore(totalScore);
             hasExamUpdate = true; // 总分变动
+            examPaperCacheService.invalidate(examId);
         }
 
         if (!hasExamUpdate) {
@@ -277,6 +326,7 @@ public class ExamService {
         }
 
         examMapper.updateById(exam);
+        examWarmUpService.invalidateExam(examId);
     }
 
     @Transactional
@@ -307,6 +357,7 @@ public class ExamService {
         }
 
         examMapper.updateById(exam);
+        examWarmUpService.invalidateExam(examId);
     }
 
     @Transactional
@@ -353,18 +404,24 @@ public class ExamService {
 
         int totalAddedScore = 0;
         int idx = 0;
+        List<ExamQuestionDO> relations = new ArrayList<>(items.size());
         for (ExamQuestionItemRequest item : items) {
             ExamQuestionDO relation = new ExamQuestionDO();
             relation.setExamId(examId);
             relation.setQuestionId(item.getQuestionId());
             relation.setQuestionScore(item.getQuestionScore());
-            relation.setGroupId(item.getGroupId());
+            // 与单条 insert 一致：未指定分组时使用表默认值
+            relation.setGroupId(item.getGroupId() != null ? item.getGroupId() : 1);
             int sortOrder = item.getSortOrder() != null ? item.getSortOrder() : (sortSeed + idx);
             relation.setSortOrder(sortOrder);
-            examQuestionMapper.insert(relation);
+            relations.add(relation);
             totalAddedScore += item.getQuestionScore();
             idx++;
         }
+        // 多行 INSERT 分批写入，组卷 100~200 题只需一两次往返
+        for (int from = 0; from < relations.size(); from += WRITE_BATCH_SIZE) {
+            examQuestionMapper.batchInsert(relations.subList(from, Math.min(from + WRITE_BATCH_SIZE, relations.size())));
+        }
 
         // 更新考试总分与题量
         int existingCount = exam.getQuestionCount() == null ? 0 : exam.getQuestionCount();
@@ -372,6 +429,7 @@ public class ExamService {
         exam.setQuestionCount(existingCount + items.size());
         exam.setTotalScore(existingScore + totalAddedScore);
         examMapper.updateById(exam);
+        examPaperCacheService.invalidate(examId);
     }
 
     @Transactional
@@ -398,73 +456,98 @@ public class ExamService {
                 .map(ExamQuestionDO::getQuestionId)
                 .collect(Collectors.toSet());
 
-        // 根据标签查询所有符合条件的题目
-        LambdaQueryWrapper<QuestionBankDO> questionWrapper = new LambdaQueryWrapper<QuestionBankDO>()
-                .eq(QuestionBankDO::getIsDeleted, 0)
-                .like(QuestionBankDO::getQuestionTags, request.getQuestionTag());
-        
-        List<QuestionBankDO> allQuestions = questionBankMapper.selectList(questionWrapper);
-        
-        // 过滤掉已添加的题目
-        List<QuestionBankDO> availableQuestions = allQuestions.stream()
-                .filter(q -> !existingQuestionIds.contains(q.getId()))
-                .collect(Collectors.toList());
+        // 只在倒排索引的题目ID上抽样，题目内容仅为选中的题目查询
+        Map<Integer, long[]> availableByCategory = new HashMap<>();
+        int totalAvailable = 0;
+        for (Map.Entry<Integer, long[]> entry : questionTagService.findQuestionIdsByCategory(request.getQuestionTag()).entrySet()) {
+            long[] ids = existingQuestionIds.isEmpty()
+                    ? entry.getValue()
+                    : excluding(entry.getValue(), existingQuestionIds);
+            if (ids.length > 0) {
+                availableByCategory.put(entry.getKey(), ids);
+                totalAvailable += ids.length;
+            }
+        }
 
-        if (availableQuestions.isEmpty()) {
+        if (totalAvailable == 0) {
             throw new IllegalArgumentException("没有可用的题目，可能所有符合条件的题目都已添加到该考试中");
         }
 
-        // 按题型分组
-        var questionsByCategory = availableQuestions.stream()
-                .collect(Collectors.groupingBy(QuestionBankDO::getQuestionCategory));
-
         // 确定题型配置
         List<ExamRandomGenerateRequest.QuestionTypeConfig> typeConfigs;
         if (request.getTypeConfigs() == null || request.getTypeConfigs().isEmpty()) {
             // 启用兜底机制
-            typeConfigs = generateDefaultTypeConfigs(availableQuestions.size(), questionsByCategory);
+            Map<Integer, Integer> availableCounts = new HashMap<>();
+            availableByCategory.forEach((category, ids) -> availableCounts.put(category, ids.length));
+            typeConfigs = generateDefaultTypeConfigs(totalAvailable, availableCounts);
         } else {
             typeConfigs = request.getTypeConfigs();
         }
 
-        // 验证题型配置并抽取题目
-        List<ExamQuestionItemRequest> items = new ArrayList<>();
-        List<ExamRandomGenerateResponse.QuestionItem> questionItems = new ArrayList<>();
-        int sortSeed = existingQuestions.isEmpty() ? 1 : 
-                examQuestionMapper.selectCount(
-                        new LambdaQueryWrapper<ExamQuestionDO>()
-                                .eq(ExamQuestionDO::getExamId, examId)
-                ).intValue() + 1;
+        long seed = request.getSeed() != null ? request.getSeed() : ThreadLocalRandom.current().nextLong();
+        SplittableRandom random = new SplittableRandom(seed);
 
-        int currentSortOrder = sortSeed;
-        int totalScore = 0;
-        
+        // 验证题型配置并抽取题目ID
+        List<long[]> selectedByConfig = new ArrayList<>(typeConfigs.size());
         for (ExamRandomGenerateRequest.QuestionTypeConfig config : typeConfigs) {
             Integer category = config.getCategory();
             Integer count = config.getCount();
-            Integer score = config.getScore();
-            Integer groupId = config.getGroupId() != null ? config.getGroupId() : category; // 默认使用题型作为组别
+            long[] categoryIds = availableByCategory.getOrDefault(category, new long[0]);
 
-            // 获取该题型的可用题目
-            List<QuestionBankDO> categoryQuestions = questionsByCategory.getOrDefault(category, Collections.emptyList());
-            
-            if (categoryQuestions.isEmpty()) {
+            if (categoryIds.length == 0) {
                 throw new IllegalArgumentException(
                         String.format("题型%d没有可用的题目", category));
             }
 
-            if (categoryQuestions.size() < count) {
+            if (categoryIds.length < count) {
                 throw new IllegalArgumentException(
                         String.format("题型%d可用题目数量不足：需要%d道，但只有%d道可用", 
-                                category, count, categoryQuestions.size()));
+                                category, count, categoryIds.length));
             }
 
-            // 随机打乱并抽取指定数量的题目
-            Collections.shuffle(categoryQuestions);
-            List<QuestionBankDO> selectedQuestions = categoryQuestions.subList(0, count);
+            long[] selected = sample(categoryIds, count, random);
+            selectedByConfig.add(selected);
+            // 同一题型出现在多个配置中时，后续配置不再抽到已选中的题目
+            Set<Long> selectedSet = Arrays.stream(selected).boxed().collect(Collectors.toSet());
+            availableByCategory.put(category, excluding(categoryIds, selectedSet));
+        }
+
+        List<Long> selectedIds = selectedByConfig.stream()
+                .flatMapToLong(Arrays::stream)
+                .boxed()
+                .toList();
+        Map<Long, QuestionBankDO> questionMap = selectedIds.isEmpty()
+                ? Map.of()
+                : questionBankMapper.selectList(new LambdaQueryWrapper<QuestionBankDO>()
+                                .select(QuestionBankDO::getId, QuestionBankDO::getQuestionCategory,
+                                        QuestionBankDO::getQuestionContent, QuestionBankDO::getQuestionOptions)
+                                .in(QuestionBankDO::getId, selectedIds)
+                                .eq(QuestionBankDO::getIsDeleted, 0))
+                        .stream()
+                        .collect(Collectors.toMap(QuestionBankDO::getId, q -> q));
+
+        List<ExamQuestionItemRequest> items = new ArrayList<>();
+        List<ExamRandomGenerateResponse.QuestionItem> questionItems = new ArrayList<>();
+        int sortSeed = existingQuestions.isEmpty() ? 1 : 
+                examQuestionMapper.selectCount(
+                        new LambdaQueryWrapper<ExamQuestionDO>()
+                                .eq(ExamQuestionDO::getExamId, examId)
+                ).intValue() + 1;
+
+        int currentSortOrder = sortSeed;
+        int totalScore = 0;
+        
+        for (int i = 0; i < typeConfigs.size(); i++) {
+            ExamRandomGenerateRequest.QuestionTypeConfig config = typeConfigs.get(i);
+            Integer score = config.getScore();
+            Integer groupId = config.getGroupId() != null ? config.getGroupId() : config.getCategory(); // 默认使用题型作为组别
 
             // 添加到items和questionItems
-            for (QuestionBankDO question : selectedQuestions) {
+            for (long questionId : selectedByConfig.get(i)) {
+                QuestionBankDO question = questionMap.get(questionId);
+                if (question == null) {
+                    throw new IllegalArgumentException("题目不存在或已被删除: " + questionId);
+                }
                 ExamQuestionItemRequest item = new ExamQuestionItemRequest();
                 item.setQuestionId(question.getId());
                 item.setQuestionScore(score);
@@ -486,9 +569,6 @@ public class ExamService {
                 totalScore += score;
                 currentSortOrder++;
             }
-
-            // 从可用题目中移除已选中的题目，避免重复
-            categoryQuestions.removeAll(selectedQuestions);
         }
 
         if (items.isEmpty()) {
@@ -505,6 +585,7 @@ public class ExamService {
         response.setQuestions(questionItems);
         response.setTotalCount(questionItems.size());
         response.setTotalScore(totalScore);
+        response.setSeed(seed);
         
         return response;
     }
@@ -514,22 +595,22 @@ public class ExamService {
      * 比例：选择（单选+多选）：判断：填空：简答：编程 = 5：3：2：2：1
      * 
      * @param totalAvailableCount 可用题目总数
-     * @param questionsByCategory 按题型分组的题目
+     * @param availableCounts 按题型统计的可用题目数
      * @return 题型配置列表
      */
     private List<ExamRandomGenerateRequest.QuestionTypeConfig> generateDefaultTypeConfigs(
             int totalAvailableCount, 
-            java.util.Map<Integer, List<QuestionBankDO>> questionsByCategory) {
+            Map<Integer, Integer> availableCounts) {
         
         List<ExamRandomGenerateRequest.QuestionTypeConfig> configs = new ArrayList<>();
         
         // 计算各题型的可用数量
-        int singleChoiceCount = questionsByCategory.getOrDefault(1, Collections.emptyList()).size();
-        int multipleChoiceCount = questionsByCategory.getOrDefault(2, Collections.emptyList()).size();
-        int judgeCount = questionsByCategory.getOrDefault(3, Collections.emptyList()).size();
-        int fillBlankCount = questionsByCategory.getOrDefault(4, Collections.emptyList()).size();
-        int shortAnswerCount = questionsByCategory.getOrDefault(5, Collections.emptyList()).size();
-        int programmingCount = questionsByCategory.getOrDefault(6, Collections.emptyList()).size();
+        int singleChoiceCount = availableCounts.getOrDefault(1, 0);
+        int multipleChoiceCount = availableCounts.getOrDefault(2, 0);
+        int judgeCount = availableCounts.getOrDefault(3, 0);
+        int fillBlankCount = availableCounts.getOrDefault(4, 0);
+        int shortAnswerCount = availableCounts.getOrDefault(5, 0);
+        int programmingCount = availableCounts.getOrDefault(6, 0);
 
         // 总比例：选择5 + 判断3 + 填空2 + 简答2 + 编程1 = 13
         // 根据可用题目数量和比例，计算各题型的理想数量
@@ -633,6 +714,57 @@ public class ExamService {
         return configs;
     }
 
+    /**
+     * Floyd 算法从 ids 中无放回抽取 count 个下标（只产生 count 次随机数，不复制或打乱整个候选数组），
+     * 再按下标升序取出题目ID后洗牌，保证同一种子得到相同顺序
+     */
+    static long[] sample(long[] ids, int count, SplittableRandom random) {
+        int n = ids.length;
+        Set<Integer> chosen = new HashSet<>(count * 2);
+        for (int j = n - count; j < n; j++) {
+            int t = random.nextInt(j + 1);
+            chosen.add(chosen.contains(t) ? j : t);
+        }
+        int[] positions = chosen.stream().mapToInt(Integer::intValue).sorted().toArray();
+        long[] selected = new long[count];
+        for (int i = 0; i < count; i++) {
+            selected[i] = ids[positions[i]];
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long tmp = selected[i];
+            selected[i] = selected[j];
+            selected[j] = tmp;
+        }
+        return selected;
+    }
+
+    /**
+     * 返回去掉 excluded 后的题目ID（保持升序）
+     */
+    private static long[] excluding(long[] ids, Set<Long> excluded) {
+        return Arrays.stream(ids).filter(id -> !excluded.contains(id)).toArray();
+    }
+
+    private int previewLength() {
+        return Math.max(previewLength, 0);
+    }
+
+    private ExamSummaryResponse toSummary(ExamDO e) {
+        return new ExamSummaryResponse(
+                e.getId(),
+                e.getExamName(),
+                e.getExamDescription(),
+                e.getExamType(),
+                e.getStatus(),
+                e.getStartTime(),
+                e.getEndTime(),
+                e.getDuration(),
+                e.getTotalScore(),
+                e.getQuestionCount()
+        );
+    }
+
     private void validateTimeRange(LocalDateTime start, LocalDateTime end) {
         if (start != null && end != null && !end.isAfter(start)) {
             throw new IllegalArgumentException("结束时间必须晚于开始时间");
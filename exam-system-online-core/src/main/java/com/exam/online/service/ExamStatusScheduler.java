@@ -1,6 +1,8 @@
 package com.exam.online.service;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.exam.online.config.ExamWarmUpConfig;
 import com.exam.online.dal.dataobject.ExamDO;
 import com.exam.online.dal.mapper.ExamMapper;
 import lombok.RequiredArgsConstructor;
@@ -9,9 +11,10 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
- * 定时根据时间窗口自动将考试置为进行中。
+ * 定时根据时间窗口自动将考试置为进行中，并在开考前预热考试相关缓存。
  */
 @Slf4j
 @Component
@@ -22,9 +25,44 @@ public class ExamStatusScheduler {
     private static final int STATUS_IN_PROGRESS = 2;
 
     private final ExamMapper examMapper;
+    private final ExamPaperCacheService examPaperCacheService;
+    private final ExamWarmUpService examWarmUpService;
+    private final ExamWarmUpConfig examWarmUpConfig;
 
     /**
-     * 每隔固定时间扫描，将已到开始时间且未开始的考试置为进行中。
+     * 每隔固定时间扫描即将开始（leadTime 内）或进行中但本节点尚未预热的考试，批量预热。
+     */
+    @Scheduled(
+            fixedDelayString = "#{T(org.springframework.boot.convert.DurationStyle).detectAndParse('${exam.warm-up.interval:30s}').toMillis()}",
+            initialDelayString = "#{T(org.springframework.boot.convert.DurationStyle).detectAndParse('${exam.status.initial-delay:10s}').toMillis()}"
+    )
+    public void preWarmExams() {
+        if (!examWarmUpConfig.isEnabled()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        examWarmUpService.pruneFinished(now);
+
+        List<ExamDO> exams = examMapper.selectList(new LambdaQueryWrapper<ExamDO>()
+                .in(ExamDO::getStatus, STATUS_NOT_STARTED, STATUS_IN_PROGRESS)
+                .isNotNull(ExamDO::getStartTime)
+                .le(ExamDO::getStartTime, now.plus(examWarmUpConfig.getLeadTime()))
+                .gt(ExamDO::getEndTime, now)
+                .and(w -> w.isNull(ExamDO::getIsDelete).or().ne(ExamDO::getIsDelete, 1)));
+        for (ExamDO exam : exams) {
+            if (examWarmUpService.isWarmed(exam.getId())) {
+                continue;
+            }
+            try {
+                examWarmUpService.warmUp(exam);
+            } catch (Exception e) {
+                log.error("考试预热失败: examId={}", exam.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * 每隔固定时间扫描，将已到开始时间且未开始的考试置为进行中，并预热其试卷编排。
      */
     @Scheduled(
             fixedDelayString = "#{T(org.springframework.boot.convert.DurationStyle).detectAndParse('${exam.status.update-interval:60s}').toMillis()}",
@@ -33,12 +71,23 @@ public class ExamStatusScheduler {
     public void autoStartExams() {
         LocalDateTime now = LocalDateTime.now();
 
+        List<Long> examIds = examMapper.selectList(new LambdaQueryWrapper<ExamDO>()
+                        .select(ExamDO::getId)
+                        .eq(ExamDO::getStatus, STATUS_NOT_STARTED)
+                        .isNotNull(ExamDO::getStartTime)
+                        .le(ExamDO::getStartTime, now)
+                        .gt(ExamDO::getEndTime, now)
+                        .and(w -> w.isNull(ExamDO::getIsDelete).or().ne(ExamDO::getIsDelete, 1)))
+                .stream()
+                .map(ExamDO::getId)
+                .toList();
+        if (examIds.isEmpty()) {
+            return;
+        }
+
         LambdaUpdateWrapper<ExamDO> updateWrapper = new LambdaUpdateWrapper<ExamDO>()
+                .in(ExamDO::getId, examIds)
                 .eq(ExamDO::getStatus, STATUS_NOT_STARTED)
-                .isNotNull(ExamDO::getStartTime)
-                .le(ExamDO::getStartTime, now)
-                .gt(ExamDO::getEndTime, now)
-                .and(w -> w.isNull(ExamDO::getIsDelete).or().ne(ExamDO::getIsDelete, 1))
                 .set(ExamDO::getStatus, STATUS_IN_PROGRESS)
                 .set(ExamDO::getUpdateTime, now);
 
@@ -46,6 +95,15 @@ public class ExamStatusScheduler {
         if (updated > 0) {
             log.info("自动将 {} 场考试置为进行中", updated);
         }
+
+        for (Long examId : examIds) {
+            examWarmUpService.invalidateExam(examId);
+            try {
+                examPaperCacheService.warmUp(examId);
+            } catch (Exception e) {
+                log.error("预热试卷编排失败: examId={}", examId, e);
+            }
+        }
     }
 }
 
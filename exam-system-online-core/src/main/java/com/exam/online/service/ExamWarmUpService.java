@@ -0,0 +1,384 @@
+package com.exam.online.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.exam.online.config.ExamWarmUpConfig;
+import com.exam.online.dal.dataobject.ExamDO;
+import com.exam.online.dal.dataobject.ExamParticipantDO;
+import com.exam.online.dal.dataobject.SystemUserDO;
+import com.exam.online.dal.mapper.ExamMapper;
+import com.exam.online.dal.mapper.ExamParticipantMapper;
+import com.exam.online.dal.mapper.SystemUserMapper;
+import com.exam.online.util.RedisKeyUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 开考预热：在开始时间前批量加载考试信息、试卷编排、已有参与记录和学生名册，
+ * 使进入考试时的校验只读缓存，首次进入只需一次插入。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExamWarmUpService {
+
+    private static final String INVALIDATE_TOPIC = "exam:info:invalidate";
+    private static final String STUDENT_INVALIDATE_TOPIC = "exam:roster:invalidate";
+    private static final String[] CACHE_NAMES = {"exam", "student", "participant"};
+
+    private final ExamMapper examMapper;
+    private final SystemUserMapper systemUserMapper;
+    private final ExamParticipantMapper examParticipantMapper;
+    private final ExamPaperCacheService examPaperCacheService;
+    private final ParticipantSessionCache participantSessionCache;
+    private final RedisService redisService;
+    private final RedissonClient redissonClient;
+    private final ExamWarmUpConfig examWarmUpConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Long, ExamDO> exams = new ConcurrentHashMap<>();
+    /**
+     * 本地学生名册，每轮加载构建新集合后整体替换引用，不在旧集合上增量追加
+     */
+    private volatile Set<Long> students = ConcurrentHashMap.newKeySet();
+    /**
+     * 名册加载过程中被移出名册的学生，加载完成替换后再次移除，避免加载读到变更前的数据
+     */
+    private final Set<Long> evictedDuringLoad = ConcurrentHashMap.newKeySet();
+    /**
+     * 已在本节点预热过参与记录的考试
+     */
+    private final Set<Long> warmedExams = ConcurrentHashMap.newKeySet();
+    private final Map<String, Counter> hitCounters = new HashMap<>();
+    private final Map<String, Counter> missCounters = new HashMap<>();
+    private volatile long rosterLoadedAtMillis;
+    private RTopic invalidateTopic;
+    private RTopic studentInvalidateTopic;
+
+    @PostConstruct
+    public void init() {
+        invalidateTopic = redissonClient.getTopic(INVALIDATE_TOPIC, LongCodec.INSTANCE);
+        invalidateTopic.addListener(Long.class, (channel, examId) -> exams.remove(examId));
+        studentInvalidateTopic = redissonClient.getTopic(STUDENT_INVALIDATE_TOPIC, LongCodec.INSTANCE);
+        studentInvalidateTopic.addListener(Long.class, (channel, studentId) -> {
+            students.remove(studentId);
+            evictedDuringLoad.add(studentId);
+        });
+
+        for (String cache : CACHE_NAMES) {
+            Counter hit = Counter.builder("exam.warmup.cache.requests")
+                .description("进入考试链路的预热缓存访问次数")
+                .tag("cache", cache).tag("result", "hit")
+                .register(meterRegistry);
+            Counter miss = Counter.builder("exam.warmup.cache.requests")
+                .description("进入考试链路的预热缓存访问次数")
+                .tag("cache", cache).tag("result", "miss")
+                .register(meterRegistry);
+            hitCounters.put(cache, hit);
+            missCounters.put(cache, miss);
+            Gauge.builder("exam.warmup.cache.hit.ratio", () -> {
+                    double total = hit.count() + miss.count();
+                    return total == 0 ? 0 : hit.count() / total;
+                })
+                .description("进入考试链路的预热缓存命中率")
+                .tag("cache", cache)
+                .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 预热单场考试：考试信息、试卷编排、已有参与记录；学生名册按 leadTime 周期整体刷新
+     */
+    public void warmUp(ExamDO exam) {
+        if (!isRosterFresh()) {
+            warmUpRoster();
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Long examId = exam.getId();
+        exams.put(examId, exam);
+        cacheExamWindow(exam);
+        examPaperCacheService.warmUp(examId);
+
+        List<ExamParticipantDO> participants = examParticipantMapper.selectList(
+            new LambdaQueryWrapper<ExamParticipantDO>()
+                .select(ExamParticipantDO::getId, ExamParticipantDO::getUserId,
+                    ExamParticipantDO::getStatus, ExamParticipantDO::getAccessToken, ExamParticipantDO::getPaperSeed)
+                .eq(ExamParticipantDO::getExamId, examId)
+                .orderByDesc(ExamParticipantDO::getCreatedAt)
+        );
+        Map<Long, ParticipantSessionCache.Session> sessions = new HashMap<>();
+        for (ExamParticipantDO participant : participants) {
+            sessions.putIfAbsent(participant.getUserId(), new ParticipantSessionCache.Session(
+                participant.getId(), participant.getStatus(), participant.getAccessToken(), participant.getPaperSeed()));
+        }
+        // 与进入考试写入的过期时间一致：考试结束后30分钟，预热不会把会话过期时间改短
+        Long sessionTtlMillis = exam.getEndTime() == null ? null
+            : Math.max(toEpochMillis(exam.getEndTime()) - System.currentTimeMillis(), 0) + Duration.ofMinutes(30).toMillis();
+        participantSessionCache.putAll(examId, sessions, sessionTtlMillis);
+        warmedExams.add(examId);
+
+        long nanos = sample.stop(Timer.builder("exam.warmup.duration")
+            .description("开考预热耗时")
+            .tag("stage", "exam")
+            .register(meterRegistry));
+        log.info("考试预热完成: examId={}, participants={}, costMs={}", examId, sessions.size(), nanos / 1_000_000);
+    }
+
+    /**
+     * 按主键分页加载全部有效学生ID，构建新名册后整体替换：本地替换集合引用，
+     * Redis 写入临时key后 RENAME 覆盖正式名册，已删除或角色变更的学生随之移出
+     */
+    public void warmUpRoster() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        int batchSize = Math.max(examWarmUpConfig.getRosterBatchSize(), 1);
+        long ttlMillis = examWarmUpConfig.getRosterTtl().toMillis();
+        String loadingKey = RedisKeyUtil.getStudentRosterLoadingKey(UUID.randomUUID().toString());
+        Set<Long> loaded = ConcurrentHashMap.newKeySet();
+        boolean redisWritable = true;
+        evictedDuringLoad.clear();
+        long lastId = 0;
+        while (true) {
+            List<Long> ids = systemUserMapper.selectList(new LambdaQueryWrapper<SystemUserDO>()
+                    .select(SystemUserDO::getId)
+                    .eq(SystemUserDO::getUserRole, 1)
+                    .and(w -> w.isNull(SystemUserDO::getIsDeleted).or().ne(SystemUserDO::getIsDeleted, 1))
+                    .gt(SystemUserDO::getId, lastId)
+                    .orderByAsc(SystemUserDO::getId)
+                    .last("LIMIT " + batchSize))
+                .stream()
+                .map(SystemUserDO::getId)
+                .toList();
+            if (ids.isEmpty()) {
+                break;
+            }
+            loaded.addAll(ids);
+            if (redisWritable) {
+                try {
+                    redisService.setAddAll(loadingKey, ids, ttlMillis);
+                } catch (Exception e) {
+                    log.warn("写入Redis学生名册失败，本轮仅替换本地名册: size={}", ids.size(), e);
+                    redisWritable = false;
+                }
+            }
+            lastId = ids.get(ids.size() - 1);
+            if (ids.size() < batchSize) {
+                break;
+            }
+        }
+
+        loaded.removeAll(evictedDuringLoad);
+        students = loaded;
+        publishRoster(loadingKey, loaded.isEmpty(), redisWritable);
+        // 替换期间被移出的学生再移除一次（替换前的移除作用在旧集合和临时key上）
+        Set<Long> evicted = Set.copyOf(evictedDuringLoad);
+        if (!evicted.isEmpty()) {
+            students.removeAll(evicted);
+            try {
+                removeFromRedisRoster(evicted);
+            } catch (Exception e) {
+                redisService.delete(RedisKeyUtil.getStudentRosterKey());
+            }
+        }
+        rosterLoadedAtMillis = System.currentTimeMillis();
+        long nanos = sample.stop(Timer.builder("exam.warmup.duration")
+            .description("开考预热耗时")
+            .tag("stage", "roster")
+            .register(meterRegistry));
+        log.info("学生名册预热完成: students={}, costMs={}", loaded.size(), nanos / 1_000_000);
+    }
+
+    /**
+     * 用本轮加载的临时key覆盖Redis正式名册；本轮写入失败时删除正式名册，进入考试回源数据库校验
+     */
+    private void publishRoster(String loadingKey, boolean empty, boolean redisWritable) {
+        String rosterKey = RedisKeyUtil.getStudentRosterKey();
+        try {
+            if (redisWritable && !empty) {
+                redisService.rename(loadingKey, rosterKey);
+            } else {
+                redisService.delete(loadingKey);
+                redisService.delete(rosterKey);
+            }
+        } catch (Exception e) {
+            log.warn("替换Redis学生名册失败: loadingKey={}", loadingKey, e);
+            redisService.delete(rosterKey);
+        }
+    }
+
+    /**
+     * 本节点是否已预热该场考试
+     */
+    public boolean isWarmed(Long examId) {
+        return warmedExams.contains(examId);
+    }
+
+    /**
+     * 获取考试信息：优先预热缓存，未命中查询数据库并缓存（返回对象只读）
+     */
+    public ExamDO getExam(Long examId) {
+        ExamDO exam = exams.get(examId);
+        recordLookup("exam", exam != null);
+        if (exam != null) {
+            return exam;
+        }
+        exam = examMapper.selectById(examId);
+        if (exam != null) {
+            exams.put(examId, exam);
+        }
+        return exam;
+    }
+
+    /**
+     * 将考试时间窗口写入Redis hash（epoch毫秒，原始字符串），过期时间为考试结束后1小时
+     */
+    public void cacheExamWindow(ExamDO exam) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("startTime", exam.getStartTime() == null ? "" : String.valueOf(toEpochMillis(exam.getStartTime())));
+        fields.put("endTime", exam.getEndTime() == null ? "" : String.valueOf(toEpochMillis(exam.getEndTime())));
+        fields.put("deleted", exam.getIsDelete() != null && exam.getIsDelete() == 1 ? "1" : "0");
+        long ttlMillis = Duration.ofDays(1).toMillis();
+        if (exam.getEndTime() != null) {
+            ttlMillis = Math.max(toEpochMillis(exam.getEndTime()) - System.currentTimeMillis(), 0)
+                + Duration.ofHours(1).toMillis();
+        }
+        try {
+            redisService.rawHashPutAll(RedisKeyUtil.getExamInfoKey(exam.getId()), fields, ttlMillis);
+        } catch (Exception e) {
+            log.warn("写入考试时间窗口缓存失败: examId={}", exam.getId(), e);
+        }
+    }
+
+    /**
+     * 是否为预热名册中的有效学生（本地 -> Redis），返回false时由调用方回源数据库校验
+     */
+    public boolean isKnownStudent(Long studentId) {
+        boolean known = students.contains(studentId);
+        if (!known && redisService.setIsMember(RedisKeyUtil.getStudentRosterKey(), studentId)) {
+            students.add(studentId);
+            known = true;
+        }
+        recordLookup("student", known);
+        return known;
+    }
+
+    /**
+     * 数据库校验通过的学生加入本地名册
+     */
+    public void rememberStudent(Long studentId) {
+        students.add(studentId);
+    }
+
+    /**
+     * 学生被删除或角色变更后移出两级名册，处于事务中时在提交后执行，并广播其它节点
+     */
+    public void evictStudent(Long studentId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishStudentEvict(studentId);
+                }
+            });
+        } else {
+            publishStudentEvict(studentId);
+        }
+    }
+
+    /**
+     * 考试信息变更后失效缓存，处于事务中时在提交后执行，并广播其它节点
+     */
+    public void invalidateExam(Long examId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishInvalidate(examId);
+                }
+            });
+        } else {
+            publishInvalidate(examId);
+        }
+    }
+
+    /**
+     * 记录预热缓存命中情况
+     */
+    public void recordLookup(String cache, boolean hit) {
+        Counter counter = hit ? hitCounters.get(cache) : missCounters.get(cache);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * 清理已结束考试的预热数据
+     */
+    public void pruneFinished(LocalDateTime now) {
+        exams.values().removeIf(exam -> {
+            if (exam.getEndTime() != null && exam.getEndTime().isBefore(now)) {
+                warmedExams.remove(exam.getId());
+                examPaperCacheService.release(exam.getId());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private boolean isRosterFresh() {
+        return System.currentTimeMillis() - rosterLoadedAtMillis < examWarmUpConfig.getLeadTime().toMillis();
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void publishStudentEvict(Long studentId) {
+        students.remove(studentId);
+        evictedDuringLoad.add(studentId);
+        try {
+            removeFromRedisRoster(Set.of(studentId));
+        } catch (Exception e) {
+            // 移除失败时删除整个Redis名册，进入考试回源数据库校验
+            redisService.delete(RedisKeyUtil.getStudentRosterKey());
+        }
+        try {
+            studentInvalidateTopic.publish(studentId);
+        } catch (Exception e) {
+            log.error("广播学生名册失效失败: studentId={}", studentId, e);
+        }
+    }
+
+    private void removeFromRedisRoster(Set<Long> studentIds) {
+        redisService.setRemove(RedisKeyUtil.getStudentRosterKey(), studentIds);
+    }
+
+    private void publishInvalidate(Long examId) {
+        exams.remove(examId);
+        redisService.delete(RedisKeyUtil.getExamInfoKey(examId));
+        try {
+            invalidateTopic.publish(examId);
+        } catch (Exception e) {
+            log.error("广播考试信息失效失败: examId={}", examId, e);
+        }
+    }
+}
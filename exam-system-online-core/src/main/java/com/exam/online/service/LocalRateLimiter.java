@@ -0,0 +1,140 @@
+package com.exam.online.service;
+
+import com.exam.online.config.RateLimitConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 本地令牌桶预过滤（每个节点独立，无锁）。
+ * 每个 (接口, 用户) 一个桶，状态打包在一个 long 中（高40位为相对启动时间的毫秒，低24位为千分之一令牌数），
+ * 通过 CAS 更新；桶按 userId 哈希分段存放，空闲桶定期清理。
+ * 容量与补充速率为规则值按节点数均分后的份额，明显超出份额的请求在本地直接拒绝，不再访问 Redis。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LocalRateLimiter {
+
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLI_TOKENS = 1000;
+    private static final long MAX_MILLI_TOKENS = TOKEN_MASK;
+
+    private final RateLimitConfig rateLimitConfig;
+
+    /**
+     * 时钟（毫秒），测试中可替换
+     */
+    private LongSupplier clock = System::currentTimeMillis;
+    private long epochMillis = clock.getAsLong();
+    private final Map<String, Map<Long, AtomicLong>[]> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * 尝试从本地桶获取一个令牌
+     * @return true 放行（继续访问Redis），false 本地拒绝
+     */
+    public boolean tryAcquire(String interfaceType, Long userId, RateLimitConfig.Rule rule) {
+        RateLimitConfig.Local local = rateLimitConfig.getLocal();
+        double share = local.getBurstFactor() / Math.max(local.getNodeCount(), 1);
+        long capacity = Math.min(Math.max((long) Math.ceil(rule.getCapacity() * share), 1) * MILLI_TOKENS, MAX_MILLI_TOKENS);
+        // 每毫秒补充的千分之一令牌数 = refillRate * share / interval秒
+        double refillPerMilli = rule.getRefillRate() * share / Math.max(rule.getInterval(), 1);
+
+        AtomicLong bucket = stripe(interfaceType, userId).computeIfAbsent(userId, k -> new AtomicLong(pack(now(), capacity)));
+        while (true) {
+            long state = bucket.get();
+            long now = now();
+            long last = state >>> TOKEN_BITS;
+            long tokens = state & TOKEN_MASK;
+            long elapsed = Math.max(now - last, 0);
+            long refilled = Math.min(capacity, tokens + (long) (elapsed * refillPerMilli));
+            // 未满时时间戳只前进已折算成令牌的时长，避免频繁请求下补充量的小数部分被舍入吞掉
+            long stamp;
+            if (refilled >= capacity) {
+                stamp = now;
+            } else if (refilled == tokens) {
+                stamp = last;
+            } else {
+                stamp = Math.min(last + (long) ((refilled - tokens) / refillPerMilli), now);
+            }
+            if (refilled < MILLI_TOKENS) {
+                if (refilled != tokens && !bucket.compareAndSet(state, pack(stamp, refilled))) {
+                    continue;
+                }
+                return false;
+            }
+            if (bucket.compareAndSet(state, pack(stamp, refilled - MILLI_TOKENS))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 清理空闲桶（空闲超过 idleSeconds 的桶已补满，删除不影响限流结果）
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void evictIdle() {
+        long threshold = now() - rateLimitConfig.getLocal().getIdleSeconds() * 1000L;
+        int removed = 0;
+        for (Map<Long, AtomicLong>[] stripes : buckets.values()) {
+            for (Map<Long, AtomicLong> stripe : stripes) {
+                int before = stripe.size();
+                stripe.values().removeIf(bucket -> (bucket.get() >>> TOKEN_BITS) < threshold);
+                removed += before - stripe.size();
+            }
+        }
+        if (removed > 0) {
+            log.debug("[限流监控] 清理空闲本地令牌桶: removed={}", removed);
+        }
+    }
+
+    /**
+     * 替换时钟并以当前时间作为新的起点（仅供测试，需在首次获取令牌前调用）
+     */
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+        this.epochMillis = clock.getAsLong();
+    }
+
+    /**
+     * 当前本地桶数量
+     */
+    int bucketCount() {
+        int count = 0;
+        for (Map<Long, AtomicLong>[] stripes : buckets.values()) {
+            for (Map<Long, AtomicLong> stripe : stripes) {
+                count += stripe.size();
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, AtomicLong> stripe(String interfaceType, Long userId) {
+        Map<Long, AtomicLong>[] stripes = buckets.computeIfAbsent(interfaceType, k -> {
+            int count = Math.max(rateLimitConfig.getLocal().getStripes(), 1);
+            Map<Long, AtomicLong>[] created = new Map[count];
+            for (int i = 0; i < count; i++) {
+                created[i] = new ConcurrentHashMap<>();
+            }
+            return created;
+        });
+        int h = userId.hashCode();
+        return stripes[((h ^ (h >>> 16)) & 0x7fffffff) % stripes.length];
+    }
+
+    private long now() {
+        return clock.getAsLong() - epochMillis;
+    }
+
+    static long pack(long millis, long milliTokens) {
+        return (millis << TOKEN_BITS) | (milliTokens & TOKEN_MASK);
+    }
+}
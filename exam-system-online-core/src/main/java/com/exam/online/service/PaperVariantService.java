@@ -0,0 +1,426 @@
+package com.exam.online.service;
+
+import com.exam.online.config.ParticipantCacheConfig;
+import com.exam.online.dto.ExamRandomGenerateResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按考生生成试卷变体：由参与记录上的种子对同一组别内的题目顺序、单选/多选的选项顺序做置换，
+ * 在缓存的原始试卷上计算，不复制试卷；每个种子的题序置换按试卷版本缓存。
+ * 变体题号（sortOrder）与答案中的选项字母在进入答题缓冲前映射回原始题号和原始选项，
+ * Redis、MQ 和 answer_records 中始终保存原始题号下的答案。
+ * 保存答案时只读考生会话缓存（本地 + Redis），不回源数据库；未开启变体时不做任何查找。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PaperVariantService {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * 每份试卷最多缓存的题序置换数（每个种子一份）
+     */
+    private static final int MAX_ORDERS_PER_PAPER = 20_000;
+
+    private final ExamService examService;
+    private final ExamParticipantService examParticipantService;
+    private final ParticipantSessionCache participantSessionCache;
+    private final ParticipantCacheConfig participantCacheConfig;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 是否开启试卷变体；关闭时所有考生看到原始试卷，答案原样进入缓冲
+     */
+    @Value("${exam.paper-variant.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 本地试卷与试卷详情缓存的核对间隔，间隔内保存答案直接使用已构建的置换数据
+     */
+    @Value("${exam.paper-cache.revalidate-interval:5s}")
+    private Duration revalidateInterval;
+
+    /**
+     * 会话缓存未命中的考生在本地记住的时间，期间保存答案按原始题号处理
+     */
+    @Value("${exam.paper-variant.session-miss-ttl:30s}")
+    private Duration sessionMissTtl;
+
+    /**
+     * examId -> 由当前版本试卷派生的置换基础数据，试卷详情缓存更新后按响应体引用重建
+     */
+    private final Map<Long, CanonicalPaper> papers = new ConcurrentHashMap<>();
+
+    /**
+     * examId:studentId -> 过期时间，会话缓存中没有该考生（未进入考试）
+     */
+    private final Map<String, Long> sessionMisses = new ConcurrentHashMap<>();
+
+    /**
+     * 映射回原始试卷的答案
+     */
+    public record CanonicalAnswer(Integer sortOrder, String answer) {
+    }
+
+    /**
+     * 获取考生看到的试卷：未开启变体或无种子时返回原始试卷
+     */
+    public ExamRandomGenerateResponse getPaper(Long examId, Long studentId) {
+        ParticipantSessionCache.Session session = examParticipantService.getSession(examId, studentId);
+        if (session == null) {
+            throw new IllegalArgumentException("未找到考试参与记录，请先进入考试");
+        }
+        // 回源数据库后会话已回填缓存，清除未命中标记使保存答案立即按变体映射
+        sessionMisses.remove(sessionKey(examId, studentId));
+        CanonicalPaper paper = canonicalPaper(examId);
+        Long seed = session.paperSeed();
+        if (!enabled || seed == null) {
+            return paper.source();
+        }
+
+        int[] canonicalAt = paper.questionOrder(seed);
+        List<ExamRandomGenerateResponse.QuestionItem> items = new ArrayList<>(paper.source().getQuestions().size());
+        for (int slot = 0; slot < canonicalAt.length; slot++) {
+            ExamRandomGenerateResponse.QuestionItem item = paper.items()[canonicalAt[slot]];
+            if (item == null) {
+                continue;
+            }
+            ExamRandomGenerateResponse.QuestionItem variant = new ExamRandomGenerateResponse.QuestionItem(
+                item.getQuestionId(), item.getQuestionCategory(), item.getQuestionContent(), item.getQuestionOptions(),
+                item.getQuestionScore(), slot, item.getGroupId());
+            String[] options = paper.options()[canonicalAt[slot]];
+            if (options != null) {
+                int[] perm = optionOrder(seed, item.getQuestionId(), options.length);
+                String[] shuffled = new String[options.length];
+                for (int i = 0; i < perm.length; i++) {
+                    shuffled[i] = options[perm[i]];
+                }
+                variant.setQuestionOptions(writeOptions(shuffled, item.getQuestionOptions()));
+            }
+            items.add(variant);
+        }
+        return new ExamRandomGenerateResponse(items, paper.source().getTotalCount(), paper.source().getTotalScore(), null);
+    }
+
+    /**
+     * 将考生提交的变体题号和选项字母映射回原始试卷；未开启变体、无种子或题号不在试卷中时原样返回
+     */
+    public CanonicalAnswer toCanonical(Long examId, Long studentId, Integer sortOrder, String answer) {
+        if (!enabled || sortOrder == null) {
+            return new CanonicalAnswer(sortOrder, answer);
+        }
+        Long seed = cachedSeed(examId, studentId);
+        if (seed == null) {
+            return new CanonicalAnswer(sortOrder, answer);
+        }
+        CanonicalPaper paper = papers.get(examId);
+        if (paper == null || System.currentTimeMillis() - paper.checkedAtMillis() >= revalidateInterval.toMillis()) {
+            paper = canonicalPaper(examId);
+        }
+        int[] canonicalAt = paper.questionOrder(seed);
+        if (sortOrder < 0 || sortOrder >= canonicalAt.length || paper.items()[canonicalAt[sortOrder]] == null) {
+            return new CanonicalAnswer(sortOrder, answer);
+        }
+        int canonicalSortOrder = canonicalAt[sortOrder];
+        String[] options = paper.options()[canonicalSortOrder];
+        if (options == null || answer == null) {
+            return new CanonicalAnswer(canonicalSortOrder, answer);
+        }
+        int[] perm = optionOrder(seed, paper.items()[canonicalSortOrder].getQuestionId(), options.length);
+        return new CanonicalAnswer(canonicalSortOrder, mapOptionLetters(answer, perm));
+    }
+
+    /**
+     * 同一组别内的题目在该组占用的题号之间置换，组别占用的题号集合与原始试卷一致
+     * @return 下标为变体题号，值为该位置展示的原始题号
+     */
+    private static int[] shuffleWithinGroups(int[][] groupSlots, int length, long seed) {
+        int[] canonicalAt = new int[length];
+        // 不在试卷中的题号映射到自身
+        for (int i = 0; i < length; i++) {
+            canonicalAt[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int[] slots : groupSlots) {
+            int[] shuffled = slots.clone();
+            for (int i = shuffled.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = shuffled[i];
+                shuffled[i] = shuffled[j];
+                shuffled[j] = tmp;
+            }
+            for (int i = 0; i < slots.length; i++) {
+                canonicalAt[slots[i]] = shuffled[i];
+            }
+        }
+        return canonicalAt;
+    }
+
+    /**
+     * 选项置换：种子与题目ID混合，同一考生同一题目每次得到相同顺序
+     * @return 下标为展示位置，值为原始选项下标
+     */
+    private static int[] optionOrder(long seed, Long questionId, int size) {
+        SplittableRandom random = new SplittableRandom(seed ^ (questionId * GOLDEN_GAMMA));
+        int[] perm = new int[size];
+        for (int i = 0; i < size; i++) {
+            perm[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = perm[i];
+            perm[i] = perm[j];
+            perm[j] = tmp;
+        }
+        return perm;
+    }
+
+    /**
+     * 将答案中的选项字母（如 "C"、"A,C,D"、"ACD"）按置换映射回原始字母，多选按字母升序输出；
+     * 含其它字符或字母超出选项范围时原样返回
+     */
+    static String mapOptionLetters(String answer, int[] perm) {
+        String trimmed = answer.trim();
+        if (trimmed.isEmpty()) {
+            return answer;
+        }
+        boolean commaSeparated = trimmed.indexOf(',') >= 0;
+        List<Character> letters = new ArrayList<>();
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c == ',' || c == ' ') {
+                continue;
+            }
+            int index = Character.toUpperCase(c) - 'A';
+            if (index < 0 || index >= perm.length) {
+                return answer;
+            }
+            letters.add((char) ('A' + perm[index]));
+        }
+        letters.sort(null);
+        StringBuilder mapped = new StringBuilder();
+        for (Character letter : letters) {
+            if (commaSeparated && !mapped.isEmpty()) {
+                mapped.append(',');
+            }
+            mapped.append(letter);
+        }
+        return mapped.toString();
+    }
+
+    /**
+     * 只从会话缓存读取种子，不回源数据库；未命中的考生记入本地，过期前不再查询 Redis
+     */
+    private Long cachedSeed(Long examId, Long studentId) {
+        String key = sessionKey(examId, studentId);
+        long now = System.currentTimeMillis();
+        Long missExpireAt = sessionMisses.get(key);
+        if (missExpireAt != null) {
+            if (missExpireAt > now) {
+                return null;
+            }
+            sessionMisses.remove(key);
+        }
+        ParticipantSessionCache.Session session = participantSessionCache.get(examId, studentId);
+        if (session == null) {
+            if (sessionMisses.size() >= participantCacheConfig.getLocalMaxSize()) {
+                evictMisses(now);
+            }
+            sessionMisses.put(key, now + sessionMissTtl.toMillis());
+            return null;
+        }
+        return session.paperSeed();
+    }
+
+    /**
+     * 容量满时先清理过期条目，仍超出则按迭代顺序淘汰约十分之一
+     */
+    private void evictMisses(long now) {
+        sessionMisses.values().removeIf(expireAt -> expireAt <= now);
+        int maxSize = participantCacheConfig.getLocalMaxSize();
+        if (sessionMisses.size() < maxSize) {
+            return;
+        }
+        int toRemove = Math.max(maxSize / 10, 1);
+        Iterator<String> iterator = sessionMisses.keySet().iterator();
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private CanonicalPaper canonicalPaper(Long examId) {
+        ExamPaperCacheService.PaperView view = examService.getExamQuestionsView(examId);
+        long now = System.currentTimeMillis();
+        CanonicalPaper cached = papers.get(examId);
+        if (cached != null && cached.body() == view.body()) {
+            cached.markChecked(now);
+            return cached;
+        }
+        CanonicalPaper built = build(view, now);
+        papers.put(examId, built);
+        return built;
+    }
+
+    private CanonicalPaper build(ExamPaperCacheService.PaperView view, long now) {
+        ExamRandomGenerateResponse source = view.paper();
+        int maxSortOrder = -1;
+        for (ExamRandomGenerateResponse.QuestionItem item : source.getQuestions()) {
+            if (item.getSortOrder() != null) {
+                maxSortOrder = Math.max(maxSortOrder, item.getSortOrder());
+            }
+        }
+        ExamRandomGenerateResponse.QuestionItem[] items = new ExamRandomGenerateResponse.QuestionItem[maxSortOrder + 1];
+        String[][] options = new String[maxSortOrder + 1][];
+        Map<Integer, List<Integer>> slotsByGroup = new LinkedHashMap<>();
+        for (ExamRandomGenerateResponse.QuestionItem item : source.getQuestions()) {
+            Integer sortOrder = item.getSortOrder();
+            if (sortOrder == null || sortOrder < 0 || items[sortOrder] != null) {
+                continue;
+            }
+            items[sortOrder] = item;
+            Integer category = item.getQuestionCategory();
+            if (category != null && (category == 1 || category == 2)) {
+                options[sortOrder] = readOptions(item);
+            }
+        }
+        for (int sortOrder = 0; sortOrder < items.length; sortOrder++) {
+            if (items[sortOrder] != null) {
+                int groupId = items[sortOrder].getGroupId() == null ? 0 : items[sortOrder].getGroupId();
+                slotsByGroup.computeIfAbsent(groupId, k -> new ArrayList<>()).add(sortOrder);
+            }
+        }
+        int[][] groupSlots = slotsByGroup.values().stream()
+            .map(slots -> slots.stream().mapToInt(Integer::intValue).toArray())
+            .toArray(int[][]::new);
+        return new CanonicalPaper(view.body(), source, items, options, groupSlots, now);
+    }
+
+    private String[] readOptions(ExamRandomGenerateResponse.QuestionItem item) {
+        if (item.getQuestionOptions() == null) {
+            return null;
+        }
+        try {
+            List<String> parsed = objectMapper.readValue(item.getQuestionOptions(), new TypeReference<List<String>>() { });
+            return parsed.size() > 1 ? parsed.toArray(new String[0]) : null;
+        } catch (JsonProcessingException e) {
+            // 选项不是JSON数组时不打乱该题选项
+            log.warn("题目选项无法解析，保持原始选项顺序: questionId={}", item.getQuestionId());
+            return null;
+        }
+    }
+
+    private String writeOptions(String[] options, String fallback) {
+        try {
+            return objectMapper.writeValueAsString(Arrays.asList(options));
+        } catch (JsonProcessingException e) {
+            return fallback;
+        }
+    }
+
+    private static String sessionKey(Long examId, Long studentId) {
+        return examId + ":" + studentId;
+    }
+
+    /**
+     * 由一个版本的试卷派生的置换基础数据，按种子缓存题序置换
+     */
+    private static final class CanonicalPaper {
+
+        /**
+         * 派生来源的试卷响应体，按引用判断试卷详情缓存是否已更新
+         */
+        private final byte[] body;
+        private final ExamRandomGenerateResponse source;
+        /**
+         * 下标为原始题号
+         */
+        private final ExamRandomGenerateResponse.QuestionItem[] items;
+        /**
+         * 下标为原始题号，仅单选/多选有值
+         */
+        private final String[][] options;
+        /**
+         * 每个组别占用的原始题号（升序）
+         */
+        private final int[][] groupSlots;
+        /**
+         * 种子 -> 题序置换
+         */
+        private final Map<Long, int[]> orders = new ConcurrentHashMap<>();
+        private volatile long checkedAtMillis;
+
+        CanonicalPaper(byte[] body, ExamRandomGenerateResponse source, ExamRandomGenerateResponse.QuestionItem[] items,
+                       String[][] options, int[][] groupSlots, long checkedAtMillis) {
+            this.body = body;
+            this.source = source;
+            this.items = items;
+            this.options = options;
+            this.groupSlots = groupSlots;
+            this.checkedAtMillis = checkedAtMillis;
+        }
+
+        byte[] body() {
+            return body;
+        }
+
+        ExamRandomGenerateResponse source() {
+            return source;
+        }
+
+        ExamRandomGenerateResponse.QuestionItem[] items() {
+            return items;
+        }
+
+        String[][] options() {
+            return options;
+        }
+
+        long checkedAtMillis() {
+            return checkedAtMillis;
+        }
+
+        void markChecked(long now) {
+            checkedAtMillis = now;
+        }
+
+        /**
+         * @return 下标为变体题号，值为该位置展示的原始题号；调用方不得修改
+         */
+        int[] questionOrder(long seed) {
+            int[] order = orders.get(seed);
+            if (order != null) {
+                return order;
+            }
+            if (orders.size() >= MAX_ORDERS_PER_PAPER) {
+                // 按迭代顺序淘汰约十分之一
+                int toRemove = MAX_ORDERS_PER_PAPER / 10;
+                Iterator<Long> iterator = orders.keySet().iterator();
+                while (toRemove-- > 0 && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            order = shuffleWithinGroups(groupSlots, items.length, seed);
+            orders.put(seed, order);
+            return order;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.exam.online.service;
+
+import com.exam.online.config.ParticipantCacheConfig;
+import com.exam.online.util.RedisKeyUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 考生会话缓存：本地有界 TTL 缓存 + Redis hash（exam:sessions:{examId}，field 为学生ID）两级，
+ * 保存参与记录ID、状态、token 和试卷变体种子。进入考试时写入，提交后写入已提交状态并广播失效其它节点的本地缓存，
+ * 答题落库和提交链路据此解析考生，不再逐条查询 exam_participants。
+ * Redis hash 的过期时间只延长不缩短：进入考试按考试结束时间写入的过期时间不会被之后的回填或提交改短。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ParticipantSessionCache {
+
+    private static final String INVALIDATE_TOPIC = "exam:participant:invalidate";
+
+    /**
+     * 单次脚本写入的最大会话数，避免预热时一次携带过多参数
+     */
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    /**
+     * 写入会话字段（原始字符串），剩余过期时间短于 ARGV[1] 毫秒（或未设置过期）时才续期
+     */
+    private static final RedisService.LuaScript<Long> PUT_SESSIONS_SCRIPT = RedisService.LuaScript.of("participant-sessions-put",
+        "for i = 2, #ARGV, 2 do\n" +
+        "    redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+        "end\n" +
+        "local ttl = tonumber(ARGV[1])\n" +
+        "if redis.call('pttl', KEYS[1]) < ttl then\n" +
+        "    redis.call('pexpire', KEYS[1], ttl)\n" +
+        "    return 1\n" +
+        "end\n" +
+        "return 0",
+        Long.class);
+
+    private final RedisService redisService;
+    private final RedissonClient redissonClient;
+    private final ParticipantCacheConfig participantCacheConfig;
+
+    private final Map<String, LocalEntry> local = new ConcurrentHashMap<>();
+    private RTopic invalidateTopic;
+
+    /**
+     * 考生会话
+     * @param paperSeed 试卷变体种子，为null时使用原始题序
+     */
+    public record Session(Long participantId, Integer status, String token, Long paperSeed) {
+
+        String encode() {
+            return participantId + "," + (status == null ? "" : status) + "," + (token == null ? "" : token)
+                + "," + (paperSeed == null ? "" : paperSeed);
+        }
+
+        /**
+         * 兼容不带种子的旧格式（participantId,status,token）
+         */
+        static Session decode(String value) {
+            String[] parts = value.split(",", 4);
+            if (parts.length < 3) {
+                return null;
+            }
+            try {
+                return new Session(Long.parseLong(parts[0]),
+                    parts[1].isEmpty() ? null : Integer.parseInt(parts[1]),
+                    parts[2].isEmpty() ? null : parts[2],
+                    parts.length < 4 || parts[3].isEmpty() ? null : Long.parseLong(parts[3]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private record LocalEntry(Session session, long expireAtMillis) {
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        invalidateTopic = redissonClient.getTopic(INVALIDATE_TOPIC, StringCodec.INSTANCE);
+        invalidateTopic.addListener(String.class, (channel, key) -> local.remove(key));
+    }
+
+    /**
+     * 获取单个考生会话：本地 -> Redis，均未命中返回null
+     */
+    public Session get(Long examId, Long studentId) {
+        return getAll(examId, List.of(studentId)).get(studentId);
+    }
+
+    /**
+     * 批量获取考生会话：本地未命中的学生一次 HMGET
+     * @return studentId -> 会话，两级缓存都未命中的学生不在结果中
+     */
+    public Map<Long, Session> getAll(Long examId, Collection<Long> studentIds) {
+        Map<Long, Session> result = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Long studentId : studentIds) {
+            LocalEntry entry = local.get(localKey(examId, studentId));
+            if (entry != null && entry.expireAtMillis() > now) {
+                result.put(studentId, entry.session());
+            } else {
+                misses.add(studentId);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        List<String> fields = new ArrayList<>(misses.size());
+        misses.forEach(studentId -> fields.add(String.valueOf(studentId)));
+        List<String> values = redisService.rawHashMultiGet(RedisKeyUtil.getParticipantSessionKey(examId), fields);
+        for (int i = 0; i < misses.size(); i++) {
+            String value = values.get(i);
+            Session session = value == null ? null : Session.decode(value);
+            if (session != null) {
+                result.put(misses.get(i), session);
+                putLocal(examId, misses.get(i), session);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 写入考生会话（两级），处于事务中时在提交后执行
+     * @param ttlMillis Redis会话hash的过期时间（只延长不缩短），为null时使用配置的默认值
+     */
+    public void put(Long examId, Long studentId, Session session, Long ttlMillis) {
+        afterCommit(() -> {
+            putLocal(examId, studentId, session);
+            writeRedis(examId, Map.of(studentId, session), ttlMillis);
+        });
+    }
+
+    /**
+     * 批量写入回源数据库得到的会话，Redis过期时间不短于配置的默认值
+     */
+    public void putAll(Long examId, Map<Long, Session> sessions) {
+        putAll(examId, sessions, null);
+    }
+
+    /**
+     * 批量写入回源数据库得到的会话
+     * @param ttlMillis Redis会话hash的过期时间（只延长不缩短），为null时使用配置的默认值
+     */
+    public void putAll(Long examId, Map<Long, Session> sessions, Long ttlMillis) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        sessions.forEach((studentId, session) -> putLocal(examId, studentId, session));
+        writeRedis(examId, sessions, ttlMillis);
+    }
+
+    /**
+     * 提交后更新会话：Redis 写入已提交状态，本地缓存失效并广播其它节点
+     */
+    public void markSubmitted(Long examId, Long studentId, Session session) {
+        afterCommit(() -> {
+            writeRedis(examId, Map.of(studentId, session), null);
+            String key = localKey(examId, studentId);
+            local.remove(key);
+            try {
+                invalidateTopic.publish(key);
+            } catch (Exception e) {
+                log.error("广播考生会话失效失败: examId={}, studentId={}", examId, studentId, e);
+            }
+        });
+    }
+
+    private void writeRedis(Long examId, Map<Long, Session> sessions, Long ttlMillis) {
+        long ttl = ttlMillis != null ? ttlMillis : participantCacheConfig.getRedisTtl().toMillis();
+        List<String> key = List.of(RedisKeyUtil.getParticipantSessionKey(examId));
+        List<String> args = new ArrayList<>();
+        try {
+            for (Map.Entry<Long, Session> entry : sessions.entrySet()) {
+                if (args.isEmpty()) {
+                    args.add(String.valueOf(ttl));
+                }
+                args.add(String.valueOf(entry.getKey()));
+                args.add(entry.getValue().encode());
+                if (args.size() > WRITE_BATCH_SIZE * 2) {
+                    redisService.evalScript(PUT_SESSIONS_SCRIPT, key, args);
+                    args = new ArrayList<>();
+                }
+            }
+            if (!args.isEmpty()) {
+                redisService.evalScript(PUT_SESSIONS_SCRIPT, key, args);
+            }
+        } catch (Exception e) {
+            // Redis 只是加速层，写失败时下次回源数据库
+            log.warn("写入考生会话缓存失败: examId={}, size={}", examId, sessions.size(), e);
+        }
+    }
+
+    private void putLocal(Long examId, Long studentId, Session session) {
+        long now = System.currentTimeMillis();
+        if (local.size() >= participantCacheConfig.getLocalMaxSize()) {
+            evict(now);
+        }
+        local.put(localKey(examId, studentId), new LocalEntry(session, now + participantCacheConfig.getLocalTtl().toMillis()));
+    }
+
+    /**
+     * 容量满时先清理过期条目，仍超出则按迭代顺序淘汰约十分之一
+     */
+    private void evict(long now) {
+        local.values().removeIf(entry -> entry.expireAtMillis() <= now);
+        int maxSize = participantCacheConfig.getLocalMaxSize();
+        if (local.size() < maxSize) {
+            return;
+        }
+        int toRemove = Math.max(maxSize / 10, 1);
+        Iterator<String> iterator = local.keySet().iterator();
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private String localKey(Long examId, Long studentId) {
+        return examId + ":" + studentId;
+    }
+}
@@ -2,16 +2,23 @@ package com.exam.online.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.exam.online.dal.dataobject.ExamQuestionDO;
 import com.exam.online.dal.dataobject.QuestionBankDO;
+import com.exam.online.dal.mapper.ExamQuestionMapper;
 import com.exam.online.dal.mapper.QuestionBankMapper;
+import com.exam.online.dto.CursorPageResponse;
 import com.exam.online.dto.QuestionCreateRequest;
 import com.exam.online.dto.QuestionResponse;
+import com.exam.online.dto.QuestionSummaryResponse;
 import com.exam.online.dto.QuestionUpdateRequest;
+import com.exam.online.util.CursorUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import java.util.Arrays;
 import java.util.List;
 
 @Service
@@ -19,55 +26,109 @@ import java.util.List;
 public class QuestionService {
 
     private final QuestionBankMapper questionBankMapper;
+    private final ExamQuestionMapper examQuestionMapper;
+    private final ExamPaperCacheService examPaperCacheService;
+    private final QuestionTagService questionTagService;
     private static final long MAX_PAGE_SIZE = 100L;
 
-    public List<QuestionResponse> listByTag(String tag, int page, int pageSize) {
+    @Value("${exam.listing.preview-length:100}")
+    private int previewLength;
+
+    public List<QuestionSummaryResponse> listByTag(String tag, int page, int pageSize) {
         if (!StringUtils.hasText(tag)) {
             throw new IllegalArgumentException("tag不能为空");
         }
         int safePage = Math.max(page, 1);
         long safeSize = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
 
-        LambdaQueryWrapper<QuestionBankDO> wrapper = new LambdaQueryWrapper<QuestionBankDO>()
-                .eq(QuestionBankDO::getIsDeleted, 0)
-                .like(QuestionBankDO::getQuestionTags, tag)
-                .orderByAsc(QuestionBankDO::getId);
-
-        Page<QuestionBankDO> pageResult = questionBankMapper.selectPage(new Page<>(safePage, safeSize), wrapper);
-
-        return pageResult.getRecords().stream()
-                .map(q -> new QuestionResponse(
-                        q.getId(),
-                        q.getQuestionCategory(),
-                        q.getQuestionContent(),
-                        sanitizeOptionsForResponse(q.getQuestionCategory(), q.getQuestionOptions()),
-                        q.getQuestionAnswer(),
-                        q.getQuestionTags()))
+        // 倒排索引中按ID升序取出该标签的题目，按页截取后主键查询
+        long[] ids = questionTagService.findQuestionIds(tag, null);
+        long from = (safePage - 1) * safeSize;
+        if (from >= ids.length) {
+            return List.of();
+        }
+        List<Long> pageIds = Arrays.stream(ids, (int) from, (int) Math.min(from + safeSize, ids.length))
+                .boxed()
+                .toList();
+
+        return questionBankMapper.selectSummaries(previewLength(), null, pageIds, null, pageIds.size()).stream()
+                .map(this::toSummary)
                 .toList();
     }
 
-    public List<QuestionResponse> listAll(int page, int pageSize) {
+    /**
+     * 分页查询题目摘要：内容只取预览，不读取选项与答案，不执行 COUNT
+     */
+    public List<QuestionSummaryResponse> listAll(int page, int pageSize) {
         int safePage = Math.max(page, 1);
         long safeSize = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
 
-        LambdaQueryWrapper<QuestionBankDO> wrapper = new LambdaQueryWrapper<QuestionBankDO>()
-                .eq(QuestionBankDO::getIsDeleted, 0)
-                .orderByAsc(QuestionBankDO::getId);
+        return questionBankMapper.selectSummaries(previewLength(), null, null, (safePage - 1) * safeSize, (int) safeSize)
+                .stream()
+                .map(this::toSummary)
+                .toList();
+    }
+
+    /**
+     * 按ID游标分页查询题目摘要：WHERE id > 游标 ORDER BY id LIMIT size+1，不做 COUNT
+     */
+    public CursorPageResponse<QuestionSummaryResponse> listByCursor(String cursor, int pageSize) {
+        long lastId = CursorUtil.decode(cursor);
+        int safeSize = (int) Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
 
-        Page<QuestionBankDO> pageResult = questionBankMapper.selectPage(new Page<>(safePage, safeSize), wrapper);
+        List<QuestionBankDO> rows = questionBankMapper.selectSummaries(previewLength(), lastId, null, null, safeSize + 1);
+
+        boolean hasMore = rows.size() > safeSize;
+        List<QuestionBankDO> page = hasMore ? rows.subList(0, safeSize) : rows;
+        String nextCursor = hasMore ? CursorUtil.encode(page.get(page.size() - 1).getId()) : null;
+        return new CursorPageResponse<>(page.stream().map(this::toSummary).toList(), nextCursor);
+    }
+
+    /**
+     * 按标签游标分页：在倒排索引的升序ID数组上二分定位游标，截取一页后主键查询摘要
+     */
+    public CursorPageResponse<QuestionSummaryResponse> listByTagCursor(String tag, String cursor, int pageSize) {
+        if (!StringUtils.hasText(tag)) {
+            throw new IllegalArgumentException("tag不能为空");
+        }
+        long lastId = CursorUtil.decode(cursor);
+        int safeSize = (int) Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
+
+        long[] ids = questionTagService.findQuestionIds(tag, null);
+        int pos = Arrays.binarySearch(ids, lastId);
+        int from = pos >= 0 ? pos + 1 : -pos - 1;
+        int to = Math.min(from + safeSize, ids.length);
+        if (from >= to) {
+            return new CursorPageResponse<>(List.of(), null);
+        }
+        List<Long> pageIds = Arrays.stream(ids, from, to).boxed().toList();
 
-        return pageResult.getRecords().stream()
-                .map(q -> new QuestionResponse(
-                        q.getId(),
-                        q.getQuestionCategory(),
-                        q.getQuestionContent(),
-                        sanitizeOptionsForResponse(q.getQuestionCategory(), q.getQuestionOptions()),
-                        q.getQuestionAnswer(),
-                        q.getQuestionTags()))
+        List<QuestionSummaryResponse> items = questionBankMapper
+                .selectSummaries(previewLength(), null, pageIds, null, pageIds.size())
+                .stream()
+                .map(this::toSummary)
                 .toList();
+        String nextCursor = to < ids.length ? CursorUtil.encode(ids[to - 1]) : null;
+        return new CursorPageResponse<>(items, nextCursor);
     }
 
+    /**
+     * 根据题目ID查询完整题目（内容、选项与答案）
+     */
+    public QuestionResponse getById(Long id) {
+        if (id == null || id <= 0) {
+            throw new IllegalArgumentException("题目ID不合法");
+        }
+        QuestionBankDO question = questionBankMapper.selectById(id);
+        if (question == null || (question.getIsDeleted() != null && question.getIsDeleted() == 1)) {
+            throw new IllegalArgumentException("题目不存在或已删除");
+        }
+        return toResponse(question);
+    }
+
+    @Transactional
     public QuestionResponse createQuestion(QuestionCreateRequest request) {
+        QuestionTagService.parseTags(request.getQuestionTags());
         QuestionBankDO entity = new QuestionBankDO();
         entity.setQuestionCategory(request.getQuestionCategory());
         entity.setQuestionContent(request.getQuestionContent());
@@ -77,6 +138,7 @@ public class QuestionService {
         entity.setIsDeleted(0);
 
         questionBankMapper.insert(entity);
+        questionTagService.syncQuestionTags(entity.getId(), entity.getQuestionTags());
 
         return new QuestionResponse(
                 entity.getId(),
@@ -88,6 +150,7 @@ public class QuestionService {
         );
     }
 
+    @Transactional
     public QuestionResponse updateQuestion(QuestionUpdateRequest request) {
         QuestionBankDO exists = questionBankMapper.selectById(request.getId());
         if (exists == null || (exists.getIsDeleted() != null && exists.getIsDeleted() == 1)) {
@@ -130,6 +193,20 @@ public class QuestionService {
         }
 
         questionBankMapper.update(null, wrapper);
+        if (request.getQuestionTags() != null) {
+            questionTagService.syncQuestionTags(request.getId(), request.getQuestionTags());
+        } else if (request.getQuestionCategory() != null) {
+            // 题型变化会改变其在倒排索引中的分组
+            questionTagService.onQuestionChanged(request.getId());
+        }
+        // 题目内容变更后，引用该题目的试卷详情缓存整体失效
+        examQuestionMapper.selectList(new LambdaQueryWrapper<ExamQuestionDO>()
+                        .select(ExamQuestionDO::getExamId)
+                        .eq(ExamQuestionDO::getQuestionId, request.getId()))
+                .stream()
+                .map(ExamQuestionDO::getExamId)
+                .distinct()
+                .forEach(examPaperCacheService::invalidate);
 
         QuestionBankDO updated = questionBankMapper.selectById(request.getId());
         return new QuestionResponse(
@@ -142,6 +219,24 @@ public class QuestionService {
         );
     }
 
+    private int previewLength() {
+        return Math.max(previewLength, 0);
+    }
+
+    private QuestionSummaryResponse toSummary(QuestionBankDO q) {
+        return new QuestionSummaryResponse(q.getId(), q.getQuestionCategory(), q.getQuestionContent(), q.getQuestionTags());
+    }
+
+    private QuestionResponse toResponse(QuestionBankDO q) {
+        return new QuestionResponse(
+                q.getId(),
+                q.getQuestionCategory(),
+                q.getQuestionContent(),
+                sanitizeOptionsForResponse(q.getQuestionCategory(), q.getQuestionOptions()),
+                q.getQuestionAnswer(),
+                q.getQuestionTags());
+    }
+
     private boolean categoryHasOptions(Integer category) {
         return category != null && (category == 1 || category == 2);
     }
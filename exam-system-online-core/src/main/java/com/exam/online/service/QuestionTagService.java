@@ -0,0 +1,365 @@
+package com.exam.online.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.exam.online.dal.dataobject.QuestionBankDO;
+import com.exam.online.dal.dataobject.QuestionTagDO;
+import com.exam.online.dal.dataobject.QuestionTagRelationDO;
+import com.exam.online.dal.mapper.QuestionBankMapper;
+import com.exam.online.dal.mapper.QuestionTagMapper;
+import com.exam.online.dal.mapper.QuestionTagRelationMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 题目标签：维护 question_tag_relations 关联表，并在内存中保存倒排索引
+ * （标签ID -> 题型 -> 升序题目ID数组），按标签检索和随机组卷不再对 questions_bank 做 LIKE 全表扫描。
+ * 题目创建/修改在事务提交后刷新本节点索引，并通过 Redis 广播让其它节点刷新该题目。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QuestionTagService {
+
+    private static final String INVALIDATE_TOPIC = "exam:question-tag:invalidate";
+    private static final int LOAD_BATCH_SIZE = 5000;
+    private static final int MAX_TAG_LENGTH = 50;
+    private static final long[] EMPTY = new long[0];
+
+    private final QuestionTagMapper questionTagMapper;
+    private final QuestionTagRelationMapper questionTagRelationMapper;
+    private final QuestionBankMapper questionBankMapper;
+    private final RedissonClient redissonClient;
+
+    /**
+     * 索引快照，只读，变更时在写锁内整体替换
+     */
+    private volatile TagIndex index;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private RTopic invalidateTopic;
+
+    /**
+     * @param tagIds 规范化标签名（见 {@link #normalize}）-> 标签ID
+     * @param postings 标签ID -> 题型 -> 升序题目ID数组
+     * @param allPostings 标签ID -> 全部题型合并后的升序题目ID数组，随快照一起构建，检索时直接返回
+     */
+    private record TagIndex(Map<String, Long> tagIds, Map<Long, Map<Integer, long[]>> postings,
+                            Map<Long, long[]> allPostings) {
+    }
+
+    @PostConstruct
+    public void init() {
+        invalidateTopic = redissonClient.getTopic(INVALIDATE_TOPIC, LongCodec.INSTANCE);
+        invalidateTopic.addListener(Long.class, (channel, questionId) -> refreshQuestion(questionId));
+        try {
+            ensureLoaded();
+        } catch (Exception e) {
+            // 启动时加载失败不阻塞启动，首次检索时重试
+            log.error("加载题目标签倒排索引失败", e);
+        }
+    }
+
+    /**
+     * 解析逗号分隔的标签字符串（兼容中文逗号），去空白、忽略大小写去重并保持顺序
+     */
+    public static List<String> parseTags(String rawTags) {
+        if (!StringUtils.hasText(rawTags)) {
+            return List.of();
+        }
+        Map<String, String> names = new LinkedHashMap<>();
+        for (String part : rawTags.split("[,，]")) {
+            String name = part.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (name.length() > MAX_TAG_LENGTH) {
+                throw new IllegalArgumentException("标签长度不能超过" + MAX_TAG_LENGTH + "：" + name);
+            }
+            names.putIfAbsent(normalize(name), name);
+        }
+        return new ArrayList<>(names.values());
+    }
+
+    /**
+     * 标签名的索引键：tag_name 列为 utf8mb4_general_ci，库内比较不区分大小写，索引键统一转小写
+     */
+    static String normalize(String tagName) {
+        return tagName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 按题目的标签字符串重建其标签关联（在调用方事务内执行），不存在的标签自动创建，提交后刷新索引
+     */
+    public void syncQuestionTags(Long questionId, String rawTags) {
+        List<String> names = parseTags(rawTags);
+        questionTagRelationMapper.delete(new LambdaQueryWrapper<QuestionTagRelationDO>()
+                .eq(QuestionTagRelationDO::getQuestionId, questionId));
+        if (!names.isEmpty()) {
+            questionTagMapper.insertIgnore(names);
+            List<Long> tagIds = questionTagMapper.selectList(new LambdaQueryWrapper<QuestionTagDO>()
+                            .select(QuestionTagDO::getTagId)
+                            .in(QuestionTagDO::getTagName, names))
+                    .stream()
+                    .map(QuestionTagDO::getTagId)
+                    .toList();
+            questionTagRelationMapper.batchInsert(questionId, tagIds);
+        }
+        onQuestionChanged(questionId);
+    }
+
+    /**
+     * 题目题型或删除状态变化后刷新其索引项，处于事务中时在提交后执行，并广播其它节点
+     */
+    public void onQuestionChanged(Long questionId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishRefresh(questionId);
+                }
+            });
+        } else {
+            publishRefresh(questionId);
+        }
+    }
+
+    /**
+     * 查询带有指定标签（精确匹配标签名）的未删除题目ID，按ID升序
+     * @param category 题型，为null时返回全部题型
+     */
+    public long[] findQuestionIds(String tag, Integer category) {
+        if (category != null) {
+            return findQuestionIdsByCategory(tag).getOrDefault(category, EMPTY);
+        }
+        if (!StringUtils.hasText(tag)) {
+            return EMPTY;
+        }
+        TagIndex current = ensureLoaded();
+        Long tagId = current.tagIds().get(normalize(tag));
+        return tagId == null ? EMPTY : current.allPostings().getOrDefault(tagId, EMPTY);
+    }
+
+    /**
+     * 查询带有指定标签的未删除题目ID，按题型分组（返回的数组只读）
+     */
+    public Map<Integer, long[]> findQuestionIdsByCategory(String tag) {
+        if (!StringUtils.hasText(tag)) {
+            return Map.of();
+        }
+        TagIndex current = ensureLoaded();
+        Long tagId = current.tagIds().get(normalize(tag));
+        if (tagId == null) {
+            return Map.of();
+        }
+        return current.postings().getOrDefault(tagId, Map.of());
+    }
+
+    private TagIndex ensureLoaded() {
+        TagIndex current = index;
+        if (current != null) {
+            return current;
+        }
+        writeLock.lock();
+        try {
+            if (index == null) {
+                index = loadIndex();
+            }
+            return index;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 全量加载：标签名一次查询，关联按主键 keyset 分页，同一标签内按题目ID升序到达，追加即有序
+     */
+    private TagIndex loadIndex() {
+        long start = System.currentTimeMillis();
+        Map<String, Long> tagIds = new HashMap<>();
+        for (QuestionTagDO tag : questionTagMapper.selectList(new LambdaQueryWrapper<QuestionTagDO>()
+                .select(QuestionTagDO::getTagId, QuestionTagDO::getTagName))) {
+            tagIds.put(normalize(tag.getTagName()), tag.getTagId());
+        }
+
+        Map<Long, Map<Integer, LongList>> building = new HashMap<>();
+        long lastTagId = 0;
+        long lastQuestionId = 0;
+        int relations = 0;
+        while (true) {
+            List<QuestionTagRelationDO> page = questionTagRelationMapper.selectIndexPage(lastTagId, lastQuestionId, LOAD_BATCH_SIZE);
+            for (QuestionTagRelationDO relation : page) {
+                building.computeIfAbsent(relation.getTagId(), k -> new HashMap<>())
+                        .computeIfAbsent(relation.getQuestionCategory(), k -> new LongList())
+                        .add(relation.getQuestionId());
+            }
+            relations += page.size();
+            if (page.size() < LOAD_BATCH_SIZE) {
+                break;
+            }
+            QuestionTagRelationDO last = page.get(page.size() - 1);
+            lastTagId = last.getTagId();
+            lastQuestionId = last.getQuestionId();
+        }
+
+        Map<Long, Map<Integer, long[]>> postings = new HashMap<>();
+        Map<Long, long[]> allPostings = new HashMap<>();
+        building.forEach((tagId, byCategory) -> {
+            Map<Integer, long[]> arrays = new HashMap<>();
+            byCategory.forEach((category, ids) -> arrays.put(category, ids.toArray()));
+            postings.put(tagId, Map.copyOf(arrays));
+            allPostings.put(tagId, mergeCategories(arrays));
+        });
+        log.info("题目标签倒排索引加载完成: tags={}, relations={}, costMs={}",
+                tagIds.size(), relations, System.currentTimeMillis() - start);
+        return new TagIndex(Map.copyOf(tagIds), Map.copyOf(postings), Map.copyOf(allPostings));
+    }
+
+    /**
+     * 从数据库重新读取单道题目的题型和标签，先从所有标签中移除该题，再加入当前标签
+     */
+    private void refreshQuestion(Long questionId) {
+        writeLock.lock();
+        try {
+            TagIndex current = index;
+            if (current == null) {
+                // 尚未加载，首次检索时全量加载即可
+                return;
+            }
+            QuestionBankDO question = questionBankMapper.selectOne(new LambdaQueryWrapper<QuestionBankDO>()
+                    .select(QuestionBankDO::getId, QuestionBankDO::getQuestionCategory, QuestionBankDO::getIsDeleted)
+                    .eq(QuestionBankDO::getId, questionId));
+            boolean active = question != null && (question.getIsDeleted() == null || question.getIsDeleted() == 0);
+            List<Long> tagIdsOfQuestion = active
+                    ? questionTagRelationMapper.selectList(new LambdaQueryWrapper<QuestionTagRelationDO>()
+                            .eq(QuestionTagRelationDO::getQuestionId, questionId))
+                        .stream()
+                        .map(QuestionTagRelationDO::getTagId)
+                        .toList()
+                    : List.of();
+
+            Map<String, Long> tagIds = current.tagIds();
+            if (!tagIdsOfQuestion.isEmpty() && !tagIds.values().containsAll(tagIdsOfQuestion)) {
+                // 其它节点新建的标签
+                Map<String, Long> merged = new HashMap<>(tagIds);
+                questionTagMapper.selectBatchIds(tagIdsOfQuestion)
+                        .forEach(tag -> merged.put(normalize(tag.getTagName()), tag.getTagId()));
+                tagIds = Map.copyOf(merged);
+            }
+
+            Map<Long, Map<Integer, long[]>> postings = new HashMap<>(current.postings());
+            Set<Long> changedTags = new HashSet<>(tagIdsOfQuestion);
+            current.postings().forEach((tagId, byCategory) -> {
+                Map<Integer, long[]> updated = null;
+                for (Map.Entry<Integer, long[]> entry : byCategory.entrySet()) {
+                    long[] ids = entry.getValue();
+                    int pos = Arrays.binarySearch(ids, questionId);
+                    if (pos >= 0) {
+                        if (updated == null) {
+                            updated = new HashMap<>(byCategory);
+                        }
+                        long[] removed = new long[ids.length - 1];
+                        System.arraycopy(ids, 0, removed, 0, pos);
+                        System.arraycopy(ids, pos + 1, removed, pos, ids.length - pos - 1);
+                        updated.put(entry.getKey(), removed);
+                    }
+                }
+                if (updated != null) {
+                    postings.put(tagId, Map.copyOf(updated));
+                    changedTags.add(tagId);
+                }
+            });
+            for (Long tagId : tagIdsOfQuestion) {
+                Map<Integer, long[]> updated = new HashMap<>(postings.getOrDefault(tagId, Map.of()));
+                long[] ids = updated.getOrDefault(question.getQuestionCategory(), EMPTY);
+                int pos = -Arrays.binarySearch(ids, questionId) - 1;
+                long[] added = new long[ids.length + 1];
+                System.arraycopy(ids, 0, added, 0, pos);
+                added[pos] = questionId;
+                System.arraycopy(ids, pos, added, pos + 1, ids.length - pos);
+                updated.put(question.getQuestionCategory(), added);
+                postings.put(tagId, Map.copyOf(updated));
+            }
+            Map<Long, long[]> allPostings = new HashMap<>(current.allPostings());
+            for (Long tagId : changedTags) {
+                allPostings.put(tagId, mergeCategories(postings.getOrDefault(tagId, Map.of())));
+            }
+            index = new TagIndex(tagIds, Map.copyOf(postings), Map.copyOf(allPostings));
+        } catch (Exception e) {
+            // 增量刷新失败时丢弃索引，下次检索全量重建
+            log.error("刷新题目标签索引失败，索引将全量重建: questionId={}", questionId, e);
+            index = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 合并各题型的升序数组（一道题只有一个题型，数组之间无重复），只在构建快照时执行
+     */
+    private static long[] mergeCategories(Map<Integer, long[]> byCategory) {
+        if (byCategory.isEmpty()) {
+            return EMPTY;
+        }
+        if (byCategory.size() == 1) {
+            return byCategory.values().iterator().next();
+        }
+        int total = 0;
+        for (long[] ids : byCategory.values()) {
+            total += ids.length;
+        }
+        long[] merged = new long[total];
+        int pos = 0;
+        for (long[] ids : byCategory.values()) {
+            System.arraycopy(ids, 0, merged, pos, ids.length);
+            pos += ids.length;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private void publishRefresh(Long questionId) {
+        refreshQuestion(questionId);
+        try {
+            invalidateTopic.publish(questionId);
+        } catch (Exception e) {
+            log.error("广播题目标签索引刷新失败: questionId={}", questionId, e);
+        }
+    }
+
+    /**
+     * 加载时按题型累积题目ID的可增长数组
+     */
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.exam.online.service;
+
+import com.exam.online.config.RateLimitConfig;
+
+import java.util.List;
+
+/**
+ * 用户级别限流算法，脚本返回 1 放行、0 拒绝、-1 参数无效（按放行处理）
+ */
+public enum RateLimitAlgorithm {
+
+    /**
+     * 令牌桶：hash 保存 tokens/lastUpdate，容量 capacity，每 interval 秒补充 refillRate 个，允许突发
+     */
+    TOKEN_BUCKET("token-bucket", RedisService.LuaScript.of("token-bucket",
+        "local key = KEYS[1]\n" +
+        "local capacity = tonumber(ARGV[1])\n" +
+        "local refillRate = tonumber(ARGV[2])\n" +
+        "local interval = tonumber(ARGV[3])\n" +
+        "local now = tonumber(ARGV[4])\n" +
+        "local expireTime = tonumber(ARGV[5])\n" +
+        "\n" +
+        "-- 参数有效性检查\n" +
+        "if not capacity or not refillRate or not interval or not now or not expireTime then\n" +
+        "    return -1\n" +
+        "end\n" +
+        "\n" +
+        "local tokens = redis.call('hget', key, 'tokens')\n" +
+        "local lastUpdate = redis.call('hget', key, 'lastUpdate')\n" +
+        "\n" +
+        "if not tokens or tokens == false then\n" +
+        "    tokens = capacity\n" +
+        "    lastUpdate = now\n" +
+        "else\n" +
+        "    tokens = tonumber(tokens)\n" +
+        "    lastUpdate = tonumber(lastUpdate)\n" +
+        "    if not tokens or not lastUpdate then\n" +
+        "        tokens = capacity\n" +
+        "        lastUpdate = now\n" +
+        "    else\n" +
+        "        local elapsed = (now - lastUpdate) / 1000\n" +
+        "        local refill = math.floor(elapsed * refillRate / interval)\n" +
+        "        tokens = math.min(capacity, math.max(0, tokens + refill))\n" +
+        "    end\n" +
+        "end\n" +
+        "\n" +
+        "local expireSeconds = math.floor(expireTime)\n" +
+        "if expireSeconds <= 0 then\n" +
+        "    expireSeconds = 60\n" +
+        "end\n" +
+        "\n" +
+        "if tokens and tokens > 0 then\n" +
+        "    tokens = tokens - 1\n" +
+        "    redis.call('hmset', key, 'tokens', tostring(tokens), 'lastUpdate', tostring(now))\n" +
+        "    redis.call('expire', key, expireSeconds)\n" +
+        "    return 1\n" +
+        "else\n" +
+        "    redis.call('hmset', key, 'tokens', tostring(tokens), 'lastUpdate', tostring(now))\n" +
+        "    redis.call('expire', key, expireSeconds)\n" +
+        "    return 0\n" +
+        "end",
+        Long.class)) {
+        @Override
+        List<String> keys(String key, RateLimitConfig.Rule rule, long now) {
+            return List.of(key);
+        }
+
+        @Override
+        List<String> args(RateLimitConfig.Rule rule, long now) {
+            return List.of(
+                String.valueOf(rule.getCapacity()),
+                String.valueOf(rule.getRefillRate()),
+                String.valueOf(rule.getInterval()),
+                String.valueOf(now),
+                "60" // 过期时间60秒
+            );
+        }
+    },
+
+    /**
+     * GCRA：单个字符串 key 保存理论到达时间（TAT，毫秒），放行时一次 SET PX，拒绝时不写入。
+     * 速率与突发语义同令牌桶：每 interval 秒 refillRate 个，最多突发 capacity 个。
+     */
+    GCRA("gcra", RedisService.LuaScript.of("gcra",
+        "local now = tonumber(ARGV[1])\n" +
+        "local emission = tonumber(ARGV[2])\n" +
+        "local burst = tonumber(ARGV[3])\n" +
+        "if not now or not emission or not burst or emission <= 0 then\n" +
+        "    return -1\n" +
+        "end\n" +
+        "local tat = tonumber(redis.call('get', KEYS[1]))\n" +
+        "if not tat or tat < now then\n" +
+        "    tat = now\n" +
+        "end\n" +
+        "local newTat = tat + emission\n" +
+        "if newTat - now > burst then\n" +
+        "    return 0\n" +
+        "end\n" +
+        "redis.call('set', KEYS[1], tostring(newTat), 'PX', math.ceil(newTat - now))\n" +
+        "return 1",
+        Long.class)) {
+        @Override
+        List<String> keys(String key, RateLimitConfig.Rule rule, long now) {
+            return List.of(key + ":gcra");
+        }
+
+        @Override
+        List<String> args(RateLimitConfig.Rule rule, long now) {
+            double emission = rule.getInterval() * 1000.0 / Math.max(rule.getRefillRate(), 1);
+            return List.of(
+                String.valueOf(now),
+                String.valueOf(emission),
+                String.valueOf(emission * Math.max(rule.getCapacity(), 1))
+            );
+        }
+    },
+
+    /**
+     * 滑动窗口计数：当前与上一个固定窗口各一个计数 key，按上一窗口剩余占比加权，
+     * 任意 interval 秒内约不超过 refillRate 次，无突发额度。放行时一次 INCR（窗口首次写入时加 PEXPIRE）。
+     */
+    SLIDING_WINDOW("sliding-window", RedisService.LuaScript.of("sliding-window",
+        "local now = tonumber(ARGV[1])\n" +
+        "local window = tonumber(ARGV[2])\n" +
+        "local limit = tonumber(ARGV[3])\n" +
+        "if not now or not window or not limit or window <= 0 then\n" +
+        "    return -1\n" +
+        "end\n" +
+        "local counts = redis.call('mget', KEYS[1], KEYS[2])\n" +
+        "local current = tonumber(counts[1]) or 0\n" +
+        "local previous = tonumber(counts[2]) or 0\n" +
+        "local weight = (window - now % window) / window\n" +
+        "if previous * weight + current + 1 > limit then\n" +
+        "    return 0\n" +
+        "end\n" +
+        "if redis.call('incr', KEYS[1]) == 1 then\n" +
+        "    redis.call('pexpire', KEYS[1], window * 2)\n" +
+        "end\n" +
+        "return 1",
+        Long.class)) {
+        @Override
+        List<String> keys(String key, RateLimitConfig.Rule rule, long now) {
+            long window = now / windowMillis(rule);
+            return List.of(key + ":sw:" + window, key + ":sw:" + (window - 1));
+        }
+
+        @Override
+        List<String> args(RateLimitConfig.Rule rule, long now) {
+            return List.of(
+                String.valueOf(now),
+                String.valueOf(windowMillis(rule)),
+                String.valueOf(rule.getRefillRate())
+            );
+        }
+    };
+
+    private final String code;
+    private final RedisService.LuaScript<Long> script;
+
+    RateLimitAlgorithm(String code, RedisService.LuaScript<Long> script) {
+        this.code = code;
+        this.script = script;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public RedisService.LuaScript<Long> getScript() {
+        return script;
+    }
+
+    /**
+     * 脚本 KEYS
+     */
+    abstract List<String> keys(String key, RateLimitConfig.Rule rule, long now);
+
+    /**
+     * 脚本 ARGV
+     */
+    abstract List<String> args(RateLimitConfig.Rule rule, long now);
+
+    /**
+     * 按配置名称解析算法（token-bucket / gcra / sliding-window）
+     */
+    public static RateLimitAlgorithm of(String code) {
+        for (RateLimitAlgorithm algorithm : values()) {
+            if (algorithm.code.equalsIgnoreCase(code)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("不支持的限流算法: " + code);
+    }
+
+    private static long windowMillis(RateLimitConfig.Rule rule) {
+        return Math.max(rule.getInterval(), 1) * 1000L;
+    }
+}
@@ -1,11 +1,26 @@
 package com.exam.online.service;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -14,6 +29,15 @@ import java.util.concurrent.TimeUnit;
 public class RedisService {
     
     private final RedisTemplate<String, Object> redisTemplate;
+    /**
+     * 原始字符串读写，供Lua脚本直接解析的数据使用（不经过JSON序列化）
+     */
+    private final StringRedisTemplate stringRedisTemplate;
+    
+    /**
+     * 已注册的Lua脚本：名称 -> 脚本
+     */
+    private final Map<String, LuaScript<?>> scripts = new ConcurrentHashMap<>();
     
     /**
      * 设置key-value，带过期时间（秒）
@@ -52,6 +76,166 @@ public class RedisService {
         }
     }
     
+    /**
+     * 管道批量写入多个hash的字段，并为每个hash续期（毫秒），一次往返完成
+     * @param hashValues hash key -> (field -> value)
+     */
+    public void pipelineHashPutAll(Map<String, Map<String, String>> hashValues, long timeoutMillis) {
+        if (hashValues == null || hashValues.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    hashValues.forEach((key, fields) -> {
+                        ops.opsForHash().putAll(key, fields);
+                        ops.expire(key, timeoutMillis, TimeUnit.MILLISECONDS);
+                    });
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.error("Redis管道写入hash失败: size={}", hashValues.size(), e);
+            throw new RuntimeException("Redis操作失败", e);
+        }
+    }
+    
+    /**
+     * 获取hash的全部字段
+     */
+    public Map<String, String> hashGetAll(String key) {
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(key);
+            Map<String, String> result = new HashMap<>(entries.size() * 2);
+            entries.forEach((field, value) -> {
+                if (value != null) {
+                    result.put(field.toString(), value.toString());
+                }
+            });
+            return result;
+        } catch (Exception e) {
+            log.error("Redis获取hash失败: key={}", key, e);
+            return Map.of();
+        }
+    }
+    
+    /**
+     * 批量获取hash字段（HMGET），与fields一一对应，不存在为null
+     */
+    public List<String> hashMultiGet(String key, List<String> fields) {
+        List<String> result = new ArrayList<>(fields.size());
+        try {
+            List<Object> values = redisTemplate.opsForHash().multiGet(key, new ArrayList<>(fields));
+            for (int i = 0; i < fields.size(); i++) {
+                Object value = values == null ? null : values.get(i);
+                result.add(value != null ? value.toString() : null);
+            }
+        } catch (Exception e) {
+            log.error("Redis批量获取hash字段失败: key={}, size={}", key, fields.size(), e);
+            fields.forEach(f -> result.add(null));
+        }
+        return result;
+    }
+    
+    /**
+     * 向set批量添加成员并设置过期时间（毫秒）
+     */
+    public void setAddAll(String key, Collection<?> members, long timeoutMillis) {
+        if (members == null || members.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.opsForSet().add(key, members.toArray());
+            redisTemplate.expire(key, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.error("Redis批量添加set成员失败: key={}, size={}", key, members.size(), e);
+            throw new RuntimeException("Redis操作失败", e);
+        }
+    }
+    
+    /**
+     * 从set中批量移除成员
+     */
+    public void setRemove(String key, Collection<?> members) {
+        if (members == null || members.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.opsForSet().remove(key, members.toArray());
+        } catch (Exception e) {
+            log.error("Redis批量移除set成员失败: key={}, size={}", key, members.size(), e);
+            throw new RuntimeException("Redis操作失败", e);
+        }
+    }
+    
+    /**
+     * 重命名key（RENAME，原子覆盖目标key，过期时间随源key转移）
+     */
+    public void rename(String oldKey, String newKey) {
+        try {
+            redisTemplate.rename(oldKey, newKey);
+        } catch (Exception e) {
+            log.error("Redis重命名失败: oldKey={}, newKey={}", oldKey, newKey, e);
+            throw new RuntimeException("Redis操作失败", e);
+        }
+    }
+    
+    /**
+     * 判断是否为set成员，Redis异常时返回false
+     */
+    public boolean setIsMember(String key, Object member) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(key, member));
+        } catch (Exception e) {
+            log.error("Redis判断set成员失败: key={}", key, e);
+            return false;
+        }
+    }
+    
+    /**
+     * 仅当字段不存在时写入hash（HSETNX）
+     */
+    public Boolean hashPutIfAbsent(String key, String field, String value) {
+        try {
+            return redisTemplate.opsForHash().putIfAbsent(key, field, value);
+        } catch (Exception e) {
+            log.error("Redis HSETNX失败: key={}, field={}", key, field, e);
+            return false;
+        }
+    }
+    
+    /**
+     * 设置key过期时间（毫秒）
+     */
+    public void expireMilliseconds(String key, long timeoutMillis) {
+        try {
+            redisTemplate.expire(key, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.error("Redis设置过期时间失败: key={}", key, e);
+        }
+    }
+    
+    /**
+     * 批量获取value（MGET），与keys一一对应，不存在为null
+     */
+    public List<String> multiGet(List<String> keys) {
+        List<String> result = new ArrayList<>(keys.size());
+        try {
+            List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < keys.size(); i++) {
+                Object value = values == null ? null : values.get(i);
+                result.add(value != null ? value.toString() : null);
+            }
+        } catch (Exception e) {
+            log.error("Redis批量获取失败: size={}", keys.size(), e);
+            keys.forEach(k -> result.add(null));
+        }
+        return result;
+    }
+    
     /**
      * 使用SETNX原子操作设置key（如果不存在）
      * @return true表示设置成功，false表示key已存在
@@ -102,28 +286,176 @@ public class RedisService {
     }
     
     /**
-     * 执行Lua脚本
-     * @param script Lua脚本
-     * @param keys 键列表
-     * @param args 参数列表
-     * @return 执行结果
+     * 以原始字符串写入hash并设置过期时间（毫秒），供Lua脚本读取
      */
-    @SuppressWarnings("unchecked")
-    public <T> T executeScript(String script, java.util.List<String> keys, java.util.List<Object> args) {
+    public void rawHashPutAll(String key, Map<String, String> fields, long timeoutMillis) {
         try {
-            log.debug("[Redis Lua] 准备执行脚本: keys={}, args={}", keys, args);
-            org.springframework.data.redis.core.script.DefaultRedisScript<T> redisScript = 
-                new org.springframework.data.redis.core.script.DefaultRedisScript<>();
-            redisScript.setScriptText(script);
-            redisScript.setResultType((Class<T>) Long.class);
-            // 使用正确的execute方法签名：execute(RedisScript<T> script, List<K> keys, Object... args)
-            T result = redisTemplate.execute(redisScript, keys, args.toArray());
-            log.debug("[Redis Lua] 脚本执行完成: keys={}, result={}", keys, result);
-            return result;
+            stringRedisTemplate.opsForHash().putAll(key, fields);
+            stringRedisTemplate.expire(key, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.error("Redis写入hash失败: key={}", key, e);
+            throw new RuntimeException("Redis操作失败", e);
+        }
+    }
+    
+    /**
+     * 以原始字符串批量获取hash字段（HMGET，不经过JSON反序列化），与fields一一对应，不存在为null
+     */
+    public List<String> rawHashMultiGet(String key, List<String> fields) {
+        List<String> result = new ArrayList<>(fields.size());
+        try {
+            List<Object> values = stringRedisTemplate.opsForHash().multiGet(key, new ArrayList<>(fields));
+            for (int i = 0; i < fields.size(); i++) {
+                Object value = values == null ? null : values.get(i);
+                result.add(value != null ? value.toString() : null);
+            }
+        } catch (Exception e) {
+            log.error("Redis批量获取hash字段失败: key={}, size={}", key, fields.size(), e);
+            fields.forEach(f -> result.add(null));
+        }
+        return result;
+    }
+    
+    /**
+     * 以原始字符串读取value（不经过JSON反序列化）
+     */
+    public String rawGet(String key) {
+        return stringRedisTemplate.opsForValue().get(key);
+    }
+    
+    /**
+     * 以原始字符串写入value并设置过期时间（毫秒）
+     */
+    public void rawSet(String key, String value, long timeoutMillis) {
+        stringRedisTemplate.opsForValue().set(key, value, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 原子自增（INCR），返回自增后的值
+     */
+    public Long rawIncrement(String key) {
+        return stringRedisTemplate.opsForValue().increment(key);
+    }
+    
+    /**
+     * 以原始字符串删除zset成员（与Lua脚本写入的成员格式一致）
+     */
+    public void rawZSetRemove(String key, String member) {
+        try {
+            stringRedisTemplate.opsForZSet().remove(key, member);
         } catch (Exception e) {
-            log.error("执行Lua脚本失败: script={}, keys={}, args={}", script, keys, args, e);
+            log.error("Redis删除zset成员失败: key={}", key, e);
+        }
+    }
+    
+    /**
+     * 注册并预加载Lua脚本（SCRIPT LOAD），之后通过 {@link #evalScript} 以 EVALSHA 执行，请求中只携带SHA1。
+     * Redis不可用时只登记脚本，首次执行遇到 NOSCRIPT 时再加载。
+     */
+    public void registerScript(LuaScript<?> script) {
+        LuaScript<?> existing = scripts.putIfAbsent(script.getName(), script);
+        if (existing != null && !existing.getSha1().equals(script.getSha1())) {
+            throw new IllegalArgumentException("Lua脚本名称重复: " + script.getName());
+        }
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> loadScript(connection, script));
+            log.info("Lua脚本已加载: name={}, sha1={}", script.getName(), script.getSha1());
+        } catch (Exception e) {
+            log.warn("Lua脚本预加载失败，将在首次执行时加载: name={}", script.getName(), e);
+        }
+    }
+    
+    /**
+     * 以 EVALSHA 执行已注册的Lua脚本，脚本缓存被清空（NOSCRIPT，如Redis重启或主从切换）时自动重新加载后重试一次。
+     * 键和参数均按原始UTF-8字符串传递；整数返回Long，字符串返回String，多值返回List（元素为Long或String）。
+     */
+    public <T> T evalScript(LuaScript<T> script, List<String> keys, List<String> args) {
+        if (!scripts.containsKey(script.getName())) {
+            registerScript(script);
+        }
+        byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+        int i = 0;
+        for (String key : keys) {
+            keysAndArgs[i++] = key.getBytes(StandardCharsets.UTF_8);
+        }
+        for (String arg : args) {
+            keysAndArgs[i++] = arg.getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            Object raw = stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+                try {
+                    return connection.scriptingCommands().evalSha(script.getSha1(), script.getReturnType(), keys.size(), keysAndArgs);
+                } catch (Exception e) {
+                    if (!isNoScript(e)) {
+                        throw e;
+                    }
+                    log.warn("Lua脚本缓存缺失，重新加载: name={}", script.getName());
+                    loadScript(connection, script);
+                    return connection.scriptingCommands().evalSha(script.getSha1(), script.getReturnType(), keys.size(), keysAndArgs);
+                }
+            });
+            return script.getResultType().cast(convertScriptResult(raw));
+        } catch (Exception e) {
+            log.error("执行Lua脚本失败: name={}, keys={}", script.getName(), keys, e);
             throw new RuntimeException("执行Lua脚本失败", e);
         }
     }
+    
+    private String loadScript(RedisConnection connection, LuaScript<?> script) {
+        String sha1 = connection.scriptingCommands().scriptLoad(script.getText().getBytes(StandardCharsets.UTF_8));
+        if (!script.getSha1().equals(sha1)) {
+            throw new IllegalStateException("Lua脚本SHA1不一致: name=" + script.getName());
+        }
+        return sha1;
+    }
+    
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static Object convertScriptResult(Object raw) {
+        if (raw instanceof byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (raw instanceof List<?> list) {
+            List<Object> result = new ArrayList<>(list.size());
+            for (Object element : list) {
+                result.add(convertScriptResult(element));
+            }
+            return result;
+        }
+        return raw;
+    }
+    
+    /**
+     * 具名Lua脚本，SHA1在构造时本地计算
+     */
+    @Getter
+    public static final class LuaScript<T> {
+        private final String name;
+        private final String text;
+        private final String sha1;
+        private final Class<T> resultType;
+        private final ReturnType returnType;
+        
+        private LuaScript(String name, String text, Class<T> resultType) {
+            this.name = name;
+            this.text = text;
+            this.sha1 = new DefaultRedisScript<>(text, resultType).getSha1();
+            this.resultType = resultType;
+            this.returnType = ReturnType.fromJavaType(resultType);
+        }
+        
+        /**
+         * @param resultType Long、Boolean、String 或 List
+         */
+        public static <T> LuaScript<T> of(String name, String text, Class<T> resultType) {
+            return new LuaScript<>(name, text, resultType);
+        }
+    }
 }
-
@@ -2,16 +2,21 @@ package com.exam.online.service;
 
 import com.exam.online.config.RateLimitConfig;
 import com.exam.online.exception.RateLimitException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 用户级别限流服务（使用Redis + Lua脚本实现令牌桶算法）
+ * 用户级别限流服务（本地令牌桶预过滤 + Redis Lua脚本，算法按规则可选：令牌桶 / GCRA / 滑动窗口）
  */
 @Slf4j
 @Service
@@ -20,61 +25,36 @@ public class UserRateLimitService {
     
     private final RedisService redisService;
     private final RateLimitConfig rateLimitConfig;
+    private final LocalRateLimiter localRateLimiter;
+    private final MeterRegistry meterRegistry;
     
     // 监控统计
     private final AtomicLong rateLimitSuccessCount = new AtomicLong(0);
     private final AtomicLong rateLimitFailureCount = new AtomicLong(0);
     
     /**
-     * 令牌桶算法的Lua脚本
+     * interfaceType -> 限流决策计数器，启动时按规则注册，限流检查不再构建和查找 meter
      */
-    private static final String TOKEN_BUCKET_SCRIPT =
-        "local key = KEYS[1]\n" +
-        "local capacity = tonumber(ARGV[1])\n" +
-        "local refillRate = tonumber(ARGV[2])\n" +
-        "local interval = tonumber(ARGV[3])\n" +
-        "local now = tonumber(ARGV[4])\n" +
-        "local expireTime = tonumber(ARGV[5])\n" +
-        "\n" +
-        "-- 参数有效性检查\n" +
-        "if not capacity or not refillRate or not interval or not now or not expireTime then\n" +
-        "    return -1\n" +
-        "end\n" +
-        "\n" +
-        "local tokens = redis.call('hget', key, 'tokens')\n" +
-        "local lastUpdate = redis.call('hget', key, 'lastUpdate')\n" +
-        "\n" +
-        "if not tokens or tokens == false then\n" +
-        "    tokens = capacity\n" +
-        "    lastUpdate = now\n" +
-        "else\n" +
-        "    tokens = tonumber(tokens)\n" +
-        "    lastUpdate = tonumber(lastUpdate)\n" +
-        "    if not tokens or not lastUpdate then\n" +
-        "        tokens = capacity\n" +
-        "        lastUpdate = now\n" +
-        "    else\n" +
-        "        local elapsed = (now - lastUpdate) / 1000\n" +
-        "        local refill = math.floor(elapsed * refillRate / interval)\n" +
-        "        tokens = math.min(capacity, math.max(0, tokens + refill))\n" +
-        "    end\n" +
-        "end\n" +
-        "\n" +
-        "local expireSeconds = math.floor(expireTime)\n" +
-        "if expireSeconds <= 0 then\n" +
-        "    expireSeconds = 60\n" +
-        "end\n" +
-        "\n" +
-        "if tokens and tokens > 0 then\n" +
-        "    tokens = tokens - 1\n" +
-        "    redis.call('hmset', key, 'tokens', tostring(tokens), 'lastUpdate', tostring(now))\n" +
-        "    redis.call('expire', key, expireSeconds)\n" +
-        "    return 1\n" +
-        "else\n" +
-        "    redis.call('hmset', key, 'tokens', tostring(tokens), 'lastUpdate', tostring(now))\n" +
-        "    redis.call('expire', key, expireSeconds)\n" +
-        "    return 0\n" +
-        "end";
+    private final Map<String, DecisionCounters> decisionCounters = new ConcurrentHashMap<>();
+    
+    /**
+     * 限流决策计数（layer=local/remote，result=allowed/rejected）
+     */
+    private record DecisionCounters(Counter localAllowed, Counter localRejected,
+                                    Counter remoteAllowed, Counter remoteRejected) {
+    }
+    
+    /**
+     * 启动时校验各规则的算法配置并预加载用到的脚本，限流检查只发送EVALSHA；同时注册各接口的决策计数器
+     */
+    @PostConstruct
+    public void loadScripts() {
+        Set<RateLimitAlgorithm> algorithms = EnumSet.noneOf(RateLimitAlgorithm.class);
+        rateLimitConfig.getUserLevel().getRules().values()
+            .forEach(rule -> algorithms.add(resolveAlgorithm(rule)));
+        algorithms.forEach(algorithm -> redisService.registerScript(algorithm.getScript()));
+        rateLimitConfig.getUserLevel().getRules().keySet().forEach(this::decisionCounters);
+    }
     
     /**
      * 检查用户级别限流
@@ -93,32 +73,40 @@ public class UserRateLimitService {
         }
         
         String key = buildRateLimitKey(userId, interfaceType);
-        long now = System.currentTimeMillis();
+        DecisionCounters counters = decisionCounters(interfaceType);
         
+        // 本地预过滤：超出本节点份额直接拒绝，不访问Redis
+        if (rateLimitConfig.getLocal().isEnabled()) {
+            if (!localRateLimiter.tryAcquire(interfaceType, userId, rule)) {
+                counters.localRejected().increment();
+                rateLimitFailureCount.incrementAndGet();
+                log.warn("[限流监控] 本地限流触发: userId={}, interfaceType={}, qps={}, capacity={}",
+                    userId, interfaceType, rule.getQps(), rule.getCapacity());
+                throw new RateLimitException("请求过于频繁，请稍后重试", rule.getInterval());
+            }
+            counters.localAllowed().increment();
+        }
+        
+        long now = System.currentTimeMillis();
+        RateLimitAlgorithm algorithm = resolveAlgorithm(rule);
         try {
-            List<String> keys = Arrays.asList(key);
-            List<Object> args = Arrays.asList(
-                String.valueOf(rule.getCapacity()),
-                String.valueOf(rule.getRefillRate()),
-                String.valueOf(rule.getInterval()),
-                String.valueOf(now),
-                "60" // 过期时间60秒
-            );
-            
-            Long result = redisService.executeScript(TOKEN_BUCKET_SCRIPT, keys, args);
+            Long result = redisService.evalScript(algorithm.getScript(),
+                algorithm.keys(key, rule, now), algorithm.args(rule, now));
             
             if (result == null || result == 0) {
                 // 被限流
+                counters.remoteRejected().increment();
                 rateLimitFailureCount.incrementAndGet();
                 double failureRate = calculateFailureRate();
-                log.warn("[限流监控] 用户级别限流触发: userId={}, interfaceType={}, key={}, " +
+                log.warn("[限流监控] 用户级别限流触发: userId={}, interfaceType={}, key={}, algorithm={}, " +
                     "qps={}, capacity={}, totalSuccess={}, totalFailure={}, failureRate={}%",
-                    userId, interfaceType, key, rule.getQps(), rule.getCapacity(),
+                    userId, interfaceType, key, algorithm.getCode(), rule.getQps(), rule.getCapacity(),
                     rateLimitSuccessCount.get(), rateLimitFailureCount.get(), 
                     String.format("%.2f", failureRate));
                 throw new RateLimitException("请求过于频繁，请稍后重试", rule.getInterval());
             } else {
                 // 允许通过
+                counters.remoteAllowed().increment();
                 rateLimitSuccessCount.incrementAndGet();
                 log.debug("[限流监控] 用户级别限流检查通过: userId={}, interfaceType={}, key={}",
                     userId, interfaceType, key);
@@ -133,6 +121,44 @@ public class UserRateLimitService {
         }
     }
     
+    /**
+     * 规则算法：规则配置 -> user-level.algorithm -> default-algorithm
+     */
+    private RateLimitAlgorithm resolveAlgorithm(RateLimitConfig.Rule rule) {
+        String code = rule.getAlgorithm();
+        if (code == null || code.isBlank()) {
+            code = rateLimitConfig.getUserLevel().getAlgorithm();
+        }
+        if (code == null || code.isBlank()) {
+            code = rateLimitConfig.getDefaultAlgorithm();
+        }
+        return RateLimitAlgorithm.of(code);
+    }
+    
+    /**
+     * 获取接口的决策计数器，启动后新增的规则在首次检查时注册
+     */
+    private DecisionCounters decisionCounters(String interfaceType) {
+        DecisionCounters counters = decisionCounters.get(interfaceType);
+        if (counters != null) {
+            return counters;
+        }
+        return decisionCounters.computeIfAbsent(interfaceType, type -> new DecisionCounters(
+            decisionCounter("local", "allowed", type),
+            decisionCounter("local", "rejected", type),
+            decisionCounter("remote", "allowed", type),
+            decisionCounter("remote", "rejected", type)));
+    }
+    
+    private Counter decisionCounter(String layer, String result, String interfaceType) {
+        return Counter.builder("exam.rate.limit.decisions")
+            .description("用户级别限流决策次数")
+            .tag("layer", layer)
+            .tag("result", result)
+            .tag("interface", interfaceType)
+            .register(meterRegistry);
+    }
+    
     /**
      * 构建限流key
      */
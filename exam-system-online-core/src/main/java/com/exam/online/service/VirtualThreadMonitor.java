@@ -0,0 +1,139 @@
+package com.exam.online.service;
+
+import com.exam.online.config.VirtualThreadConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 虚拟线程监控：为应用的虚拟线程执行器提供计数的线程工厂，
+ * 暴露已挂载（mounted，占用载体线程运行中）与已停放（parked，等待IO/锁/休眠）的虚拟线程数，
+ * 并通过JFR事件 jdk.VirtualThreadPinned 记录钉住载体线程的 synchronized 段或本地调用。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VirtualThreadMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String CARRIER_THREAD_CLASS = "jdk.internal.misc.CarrierThread";
+    private static final String CONTINUATION_CLASS = "jdk.internal.vm.Continuation";
+    private static final long MOUNTED_SAMPLE_INTERVAL_MILLIS = 1000;
+
+    private final VirtualThreadConfig virtualThreadConfig;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 由本类线程工厂创建、尚未结束的虚拟线程数
+     */
+    private final AtomicInteger live = new AtomicInteger(0);
+    private volatile int mounted;
+    private volatile long mountedSampledAtMillis;
+    private RecordingStream pinnedStream;
+    private Timer pinnedTimer;
+
+    @PostConstruct
+    public void start() {
+        if (!virtualThreadConfig.isEnabled()) {
+            return;
+        }
+        Gauge.builder("exam.virtual.threads", this, m -> m.sampleMounted())
+            .description("应用虚拟线程数（mounted 为已挂载虚拟线程的载体线程数，parked 为其余存活虚拟线程）")
+            .tag("state", "mounted")
+            .register(meterRegistry);
+        Gauge.builder("exam.virtual.threads", this, m -> Math.max(m.live.get() - m.sampleMounted(), 0))
+            .description("应用虚拟线程数（mounted 为已挂载虚拟线程的载体线程数，parked 为其余存活虚拟线程）")
+            .tag("state", "parked")
+            .register(meterRegistry);
+        pinnedTimer = Timer.builder("exam.virtual.threads.pinned")
+            .description("虚拟线程钉住载体线程的次数与时长")
+            .register(meterRegistry);
+
+        if (virtualThreadConfig.isPinnedDiagnostics()) {
+            pinnedStream = new RecordingStream();
+            pinnedStream.enable(PINNED_EVENT)
+                .withThreshold(virtualThreadConfig.getPinnedThreshold())
+                .withStackTrace();
+            pinnedStream.onEvent(PINNED_EVENT, this::onPinned);
+            pinnedStream.startAsync();
+        }
+        log.info("虚拟线程模式已启用: pinnedDiagnostics={}, pinnedThreshold={}",
+            virtualThreadConfig.isPinnedDiagnostics(), virtualThreadConfig.getPinnedThreshold());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (pinnedStream != null) {
+            pinnedStream.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return virtualThreadConfig.isEnabled();
+    }
+
+    /**
+     * 创建虚拟线程的线程工厂，线程结束时扣减存活计数
+     */
+    public ThreadFactory newThreadFactory(String namePrefix) {
+        ThreadFactory delegate = Thread.ofVirtual().name(namePrefix, 0).factory();
+        return task -> delegate.newThread(() -> {
+            live.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                live.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * 已挂载虚拟线程的载体线程数，按采样间隔缓存，避免每次读取都遍历线程栈
+     */
+    private int sampleMounted() {
+        long now = System.currentTimeMillis();
+        if (now - mountedSampledAtMillis >= MOUNTED_SAMPLE_INTERVAL_MILLIS) {
+            int count = 0;
+            for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+                // 载体线程挂载虚拟线程时栈顶为 Continuation.run（包括被钉住而阻塞的情况），空闲时停在 ForkJoinPool.awaitWork
+                StackTraceElement[] stack = entry.getValue();
+                if (CARRIER_THREAD_CLASS.equals(entry.getKey().getClass().getName())
+                        && stack.length > 0 && CONTINUATION_CLASS.equals(stack[0].getClassName())) {
+                    count++;
+                }
+            }
+            mounted = count;
+            mountedSampledAtMillis = now;
+        }
+        return mounted;
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedTimer.record(event.getDuration());
+        StringBuilder frames = new StringBuilder();
+        if (event.getStackTrace() != null) {
+            List<RecordedFrame> stack = event.getStackTrace().getFrames();
+            int depth = Math.min(stack.size(), Math.max(virtualThreadConfig.getPinnedStackDepth(), 1));
+            for (int i = 0; i < depth; i++) {
+                RecordedFrame frame = stack.get(i);
+                frames.append("\n\tat ").append(frame.getMethod().getType().getName())
+                    .append('.').append(frame.getMethod().getName())
+                    .append(':').append(frame.getLineNumber());
+            }
+        }
+        log.warn("[虚拟线程] 载体线程被钉住: durationMs={}{}", event.getDuration().toMillis(), frames);
+    }
+}
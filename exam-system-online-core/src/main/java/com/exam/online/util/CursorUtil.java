@@ -0,0 +1,47 @@
+package com.exam.online.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页工具：游标为上一页最后一条记录主键的不透明编码，客户端原样回传
+ */
+public class CursorUtil {
+
+    private static final String PREFIX = "id:";
+
+    /**
+     * 编码游标
+     * @param lastId 本页最后一条记录的主键
+     * @return 游标字符串
+     */
+    public static String encode(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标，为空表示从头开始
+     * @param cursor 游标字符串
+     * @return 上一页最后一条记录的主键，从头开始时为0
+     */
+    public static long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0L;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!value.startsWith(PREFIX)) {
+                throw new IllegalArgumentException("cursor不合法");
+            }
+            long lastId = Long.parseLong(value.substring(PREFIX.length()));
+            if (lastId < 0) {
+                throw new IllegalArgumentException("cursor不合法");
+            }
+            return lastId;
+        } catch (IllegalArgumentException e) {
+            // Base64 与数字解析失败均为 IllegalArgumentException 子类
+            throw new IllegalArgumentException("cursor不合法");
+        }
+    }
+}
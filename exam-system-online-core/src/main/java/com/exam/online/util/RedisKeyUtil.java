@@ -4,6 +4,13 @@ public class RedisKeyUtil {
     
     private static final String EXAM_TOKEN_PREFIX = "exam:token:";
     private static final String EXAM_ANSWER_PREFIX = "exam:ans:";
+    private static final String EXAM_ANSWER_HASH_PREFIX = "exam:answers:";
+    private static final String EXAM_SESSION_PREFIX = "exam:sessions:";
+    private static final String STUDENT_ROSTER_KEY = "exam:roster:students";
+    private static final String EXAM_INFO_PREFIX = "exam:info:";
+    private static final String EXAM_ADMISSION_PREFIX = "exam:admission:";
+    private static final String EXAM_PAPER_VERSION_PREFIX = "exam:paper:version:";
+    private static final String EXAM_PAPER_VIEW_PREFIX = "exam:paper:view:";
     
     /**
      * 生成考试token的key
@@ -16,24 +23,87 @@ public class RedisKeyUtil {
     }
     
     /**
-     * 生成答题记录的key
+     * 生成考试时间窗口hash的key（供进入考试Lua脚本校验）
+     * @param examId 考试ID
+     * @return key
+     */
+    public static String getExamInfoKey(Long examId) {
+        return EXAM_INFO_PREFIX + examId;
+    }
+    
+    /**
+     * 学生名册set的key（成员为有效学生ID）
+     * @return key
+     */
+    public static String getStudentRosterKey() {
+        return STUDENT_ROSTER_KEY;
+    }
+    
+    /**
+     * 学生名册重建时的临时set的key，加载完成后 RENAME 覆盖正式名册
+     * @param loadId 本次加载的唯一标识
+     * @return key
+     */
+    public static String getStudentRosterLoadingKey(String loadId) {
+        return STUDENT_ROSTER_KEY + ":loading:" + loadId;
+    }
+    
+    /**
+     * 生成考试会话hash的key（field为学生ID）
+     * @param examId 考试ID
+     * @return key
+     */
+    public static String getParticipantSessionKey(Long examId) {
+        return EXAM_SESSION_PREFIX + examId;
+    }
+    
+    /**
+     * 生成考生答题记录hash的key（field为题目序号）
+     * @param examId 考试ID
+     * @param studentId 学生ID
+     * @return key
+     */
+    public static String getAnswerHashKey(Long examId, Long studentId) {
+        return EXAM_ANSWER_HASH_PREFIX + examId + ":" + studentId;
+    }
+    
+    /**
+     * 生成旧格式（每题一个key）的答题记录key，仅用于兼容读取和迁移
      * @param examId 考试ID
      * @param studentId 学生ID
      * @param sortOrder 题目序号
      * @return key
      */
-    public static String getAnswerKey(Long examId, Long studentId, Integer sortOrder) {
+    public static String getLegacyAnswerKey(Long examId, Long studentId, Integer sortOrder) {
         return EXAM_ANSWER_PREFIX + examId + ":" + studentId + ":" + sortOrder;
     }
     
     /**
-     * 生成答题记录的模式key（用于批量查询）
+     * 生成试卷版本号key（试卷变更时自增）
      * @param examId 考试ID
-     * @param studentId 学生ID
-     * @return pattern
+     * @return key
+     */
+    public static String getPaperVersionKey(Long examId) {
+        return EXAM_PAPER_VERSION_PREFIX + examId;
+    }
+    
+    /**
+     * 生成某版本试卷详情JSON的key
+     * @param examId 考试ID
+     * @param version 试卷版本号
+     * @return key
      */
-    public static String getAnswerPattern(Long examId, Long studentId) {
-        return EXAM_ANSWER_PREFIX + examId + ":" + studentId + ":*";
+    public static String getPaperViewKey(Long examId, long version) {
+        return EXAM_PAPER_VIEW_PREFIX + examId + ":" + version;
+    }
+    
+    /**
+     * 生成考试级别准入许可zset的key（member为许可ID，score为获取时间）
+     * @param operation 操作（enter-exam, submit-exam）
+     * @param examId 考试ID
+     * @return key
+     */
+    public static String getExamAdmissionKey(String operation, Long examId) {
+        return EXAM_ADMISSION_PREFIX + operation + ":" + examId;
     }
 }
-
@@ -0,0 +1,142 @@
+package com.exam.online.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void acquiresUpToLimitThenRejectsWithoutWaiting() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 10);
+
+        assertThat(limiter.tryAcquire(0)).isTrue();
+        assertThat(limiter.tryAcquire(0)).isTrue();
+        assertThat(limiter.tryAcquire(0)).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+    }
+
+    @Test
+    void queuedRequestTimesOutAndLeavesQueue() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 10);
+        assertThat(limiter.tryAcquire(0)).isTrue();
+
+        long start = System.nanoTime();
+        boolean acquired = limiter.tryAcquire(TimeUnit.MILLISECONDS.toNanos(50));
+        long waited = System.nanoTime() - start;
+
+        assertThat(acquired).isFalse();
+        assertThat(waited).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(limiter.getWaiting()).isZero();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsImmediatelyWhenQueueIsFull() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0);
+        assertThat(limiter.tryAcquire(0)).isTrue();
+
+        long start = System.nanoTime();
+        assertThat(limiter.tryAcquire(TimeUnit.SECONDS.toNanos(5))).isFalse();
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void queuedRequestProceedsWhenPermitIsReleased() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 10);
+        assertThat(limiter.tryAcquire(0)).isTrue();
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.tryAcquire(TimeUnit.SECONDS.toNanos(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        await().atMost(5, TimeUnit.SECONDS).until(() -> limiter.getWaiting() == 1);
+        limiter.release(RTT);
+
+        assertThat(waiter.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.getWaiting()).isZero();
+    }
+
+    @Test
+    void limitGrowsWhenSaturatedWithoutQueueing() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, 0);
+        acquire(limiter, 10);
+
+        limiter.release(RTT);
+
+        // 耗时等于最小耗时，估算排队为0，上限增加 max(log10(10), 1) = 1
+        assertThat(limiter.getLimit()).isEqualTo(11);
+    }
+
+    @Test
+    void limitStaysWhenMostlyIdle() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, 0);
+        acquire(limiter, 1);
+
+        limiter.release(RTT);
+
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void limitShrinksWhenLatencyRisesAboveBaseline() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 1, 100, 0);
+        acquire(limiter, 2);
+        limiter.release(RTT);
+        int baseline = limiter.getLimit();
+
+        // 耗时为基准的10倍：排队约 limit * 0.9，超过 6 * log 时收缩
+        limiter.release(RTT * 10);
+
+        assertThat(limiter.getLimit()).isLessThan(baseline);
+    }
+
+    @Test
+    void limitStaysWithinBounds() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 8, 40, 0);
+        acquire(limiter, 1);
+        limiter.release(RTT);
+        for (int i = 0; i < 50; i++) {
+            acquire(limiter, 1);
+            limiter.release(RTT * 100);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(8);
+
+        for (int i = 0; i < 50; i++) {
+            int limit = limiter.getLimit();
+            acquire(limiter, limit);
+            for (int j = 0; j < limit; j++) {
+                limiter.release(RTT);
+            }
+        }
+        assertThat(limiter.getLimit()).isEqualTo(40);
+    }
+
+    @Test
+    void releaseWithoutSampleDoesNotChangeLimit() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(5, 1, 100, 0);
+        acquire(limiter, 5);
+
+        limiter.release(-1);
+
+        assertThat(limiter.getLimit()).isEqualTo(5);
+        assertThat(limiter.getInFlight()).isEqualTo(4);
+    }
+
+    private static void acquire(AdaptiveConcurrencyLimiter limiter, int permits) throws InterruptedException {
+        for (int i = 0; i < permits; i++) {
+            assertThat(limiter.tryAcquire(0)).isTrue();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.exam.online.service;
+
+import com.exam.online.config.AnswerSendConfig;
+import com.exam.online.dto.AnswerMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AnswerSendJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private AnswerSendConfig config;
+    private AnswerSendJournal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        config = new AnswerSendConfig();
+        config.getJournal().setDir(dir.toString());
+        config.getJournal().setSegmentSize(DataSize.ofBytes(4096));
+        journal = open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    void readReturnsAppendedMessagesInOrderUntilCommitted() {
+        journal.append(messages(1, 3, ""));
+
+        AnswerSendJournal.JournalBatch first = journal.read(10);
+        AnswerSendJournal.JournalBatch again = journal.read(10);
+
+        assertThat(sortOrders(first.messages())).containsExactly(1, 2, 3);
+        assertThat(first.records()).isEqualTo(3);
+        // 未提交时读取位置不前进
+        assertThat(sortOrders(again.messages())).containsExactly(1, 2, 3);
+        assertThat(journal.getPendingCount()).isEqualTo(3);
+
+        journal.commit(first);
+
+        assertThat(journal.getPendingCount()).isZero();
+        assertThat(journal.hasPending()).isFalse();
+        assertThat(journal.read(10)).isNull();
+    }
+
+    @Test
+    void readHonoursMaxRecords() {
+        journal.append(messages(1, 5, ""));
+
+        AnswerSendJournal.JournalBatch batch = journal.read(2);
+        journal.commit(batch);
+
+        assertThat(sortOrders(batch.messages())).containsExactly(1, 2);
+        assertThat(sortOrders(journal.read(10).messages())).containsExactly(3, 4, 5);
+        assertThat(journal.getPendingCount()).isEqualTo(3);
+    }
+
+    @Test
+    void rollsToNewSegmentAndDeletesReplayedSegments() throws IOException {
+        // 每条约 1KB，4KB 的段放不下 4 条
+        String answer = "x".repeat(900);
+        journal.append(messages(1, 10, answer));
+
+        assertThat(segmentFiles()).hasSizeGreaterThan(2);
+
+        List<Integer> replayed = new ArrayList<>();
+        AnswerSendJournal.JournalBatch batch;
+        while ((batch = journal.read(3)) != null) {
+            replayed.addAll(sortOrders(batch.messages()));
+            journal.commit(batch);
+        }
+
+        assertThat(replayed).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        assertThat(journal.getPendingCount()).isZero();
+        // 只保留当前写入段，已重放的段最多保留 spareSegments 个空闲段，其余删除
+        assertThat(segmentFiles()).hasSize(1);
+        assertThat(spareFiles()).hasSize(2);
+    }
+
+    @Test
+    void recycledSegmentIsZeroedAndReused() throws IOException {
+        // 每条约 1KB，每段 4 条：第一段 1~4，第二段 5
+        String answer = "x".repeat(900);
+        journal.append(messages(1, 5, answer));
+        journal.commit(journal.read(5));
+        assertThat(spareFiles()).hasSize(1);
+
+        // 第二段写满后新建的段复用空闲段，空闲段中的旧记录不会被再次读出
+        journal.append(messages(6, 10, answer));
+
+        assertThat(spareFiles()).isEmpty();
+        assertThat(segmentFiles()).hasSize(2);
+        List<Integer> replayed = new ArrayList<>();
+        AnswerSendJournal.JournalBatch batch;
+        while ((batch = journal.read(10)) != null) {
+            replayed.addAll(sortOrders(batch.messages()));
+            journal.commit(batch);
+        }
+        assertThat(replayed).containsExactly(6, 7, 8, 9, 10);
+        assertThat(journal.getPendingCount()).isZero();
+    }
+
+    @Test
+    void reopenDeletesLeftoverSpareSegments() throws IOException {
+        journal.append(messages(1, 5, "x".repeat(900)));
+        journal.commit(journal.read(4));
+        journal.commit(journal.read(1));
+        journal.close();
+        assertThat(spareFiles()).hasSize(1);
+
+        journal = open();
+
+        assertThat(spareFiles()).isEmpty();
+        assertThat(journal.hasPending()).isFalse();
+    }
+
+    @Test
+    void appendFailsWithoutWritingOnceSegmentLimitIsReached() throws IOException {
+        journal.close();
+        config.getJournal().setDir(dir.resolve("capped").toString());
+        config.getJournal().setMaxSegments(2);
+        journal = open();
+        String answer = "x".repeat(900);
+        journal.append(messages(1, 6, answer));
+
+        // 7、8 可写入第二段，9 需要第三段：整批拒绝，不写入任何记录
+        assertThatThrownBy(() -> journal.append(messages(7, 9, answer)))
+            .isInstanceOf(IllegalStateException.class);
+
+        assertThat(journal.getPendingCount()).isEqualTo(6);
+        List<Integer> replayed = new ArrayList<>();
+        AnswerSendJournal.JournalBatch batch;
+        while ((batch = journal.read(10)) != null) {
+            replayed.addAll(sortOrders(batch.messages()));
+            journal.commit(batch);
+        }
+        assertThat(replayed).containsExactly(1, 2, 3, 4, 5, 6);
+    }
+
+    @Test
+    void reopenResumesFromCheckpoint() throws IOException {
+        journal.append(messages(1, 5, ""));
+        journal.commit(journal.read(2));
+        journal.close();
+
+        journal = open();
+
+        assertThat(journal.getPendingCount()).isEqualTo(3);
+        AnswerSendJournal.JournalBatch batch = journal.read(10);
+        assertThat(sortOrders(batch.messages())).containsExactly(3, 4, 5);
+
+        // 重启后追加写入新段，排在旧段剩余记录之后
+        journal.append(messages(6, 6, ""));
+        journal.commit(batch);
+        assertThat(sortOrders(journal.read(10).messages())).containsExactly(6);
+    }
+
+    @Test
+    void reopenTruncatesTornRecordAtSegmentTail() throws IOException {
+        journal.append(messages(1, 3, ""));
+        journal.close();
+        Path segment = segmentFiles().get(0);
+        corruptPayload(segment, 2);
+
+        journal = open();
+
+        assertThat(journal.getPendingCount()).isEqualTo(2);
+        AnswerSendJournal.JournalBatch batch = journal.read(10);
+        assertThat(sortOrders(batch.messages())).containsExactly(1, 2);
+
+        journal.append(messages(4, 4, ""));
+        journal.commit(batch);
+        assertThat(sortOrders(journal.read(10).messages())).containsExactly(4);
+    }
+
+    @Test
+    void readSkipsRestOfSegmentWhenChecksumFails() throws IOException {
+        String answer = "y".repeat(900);
+        journal.append(messages(1, 6, answer));
+        List<Path> files = segmentFiles();
+        assertThat(files).hasSizeGreaterThan(1);
+        // 第一段（已写满、非当前写入段）的第二条记录损坏：其后同段记录被跳过，继续读取下一段
+        corruptPayload(files.get(0), 1);
+
+        List<Integer> replayed = new ArrayList<>();
+        AnswerSendJournal.JournalBatch batch;
+        while ((batch = journal.read(10)) != null) {
+            replayed.addAll(sortOrders(batch.messages()));
+            journal.commit(batch);
+        }
+
+        assertThat(replayed).startsWith(1).doesNotContain(2, 3).contains(6);
+        assertThat(journal.hasPending()).isFalse();
+    }
+
+    private AnswerSendJournal open() throws IOException {
+        AnswerSendJournal opened = new AnswerSendJournal(config, objectMapper);
+        opened.open();
+        return opened;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        return files("answer-journal-");
+    }
+
+    private List<Path> spareFiles() throws IOException {
+        return files("answer-journal.spare-");
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+    }
+
+    /**
+     * 翻转段内第 index 条记录的最后一个负载字节，使其 CRC 校验失败（模拟写到一半断电）
+     */
+    private static void corruptPayload(Path segment, int index) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long pos = 0;
+            for (int i = 0; i < index; i++) {
+                file.seek(pos);
+                pos += 8 + file.readInt();
+            }
+            file.seek(pos);
+            int length = file.readInt();
+            long last = pos + 8 + length - 1;
+            file.seek(last);
+            int value = file.read();
+            file.seek(last);
+            file.write(value ^ 0xFF);
+        }
+    }
+
+    private static List<AnswerMessage> messages(int fromSortOrder, int toSortOrder, String answerSuffix) {
+        List<AnswerMessage> messages = new ArrayList<>();
+        for (int sortOrder = fromSortOrder; sortOrder <= toSortOrder; sortOrder++) {
+            messages.add(new AnswerMessage(1L, 100L, sortOrder, 1000L + sortOrder, "A" + answerSuffix,
+                LocalDateTime.of(2026, 1, 1, 9, 0, sortOrder % 60)));
+        }
+        return messages;
+    }
+
+    private static List<Integer> sortOrders(List<AnswerMessage> messages) {
+        return messages.stream().map(AnswerMessage::getSortOrder).toList();
+    }
+}
@@ -0,0 +1,86 @@
+package com.exam.online.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExamServiceSampleTest {
+
+    private static final long[] IDS = LongStream.rangeClosed(101, 150).toArray();
+
+    @Test
+    void sameSeedYieldsSameSelectionAndOrder() {
+        long[] first = ExamService.sample(IDS, 10, new SplittableRandom(20260101L));
+        long[] second = ExamService.sample(IDS, 10, new SplittableRandom(20260101L));
+
+        assertThat(first).containsExactly(second);
+    }
+
+    @Test
+    void sequentialSamplesFromOneRandomAreReproducible() {
+        // 组卷时多个题型配置共用同一个 Random，整套试卷须随种子整体复现
+        SplittableRandom a = new SplittableRandom(7L);
+        SplittableRandom b = new SplittableRandom(7L);
+
+        for (int round = 0; round < 5; round++) {
+            assertThat(ExamService.sample(IDS, 8, a)).containsExactly(ExamService.sample(IDS, 8, b));
+        }
+    }
+
+    @Test
+    void differentSeedsUsuallyDiffer() {
+        long[] base = ExamService.sample(IDS, 10, new SplittableRandom(1L));
+        int differing = 0;
+        for (long seed = 2; seed <= 21; seed++) {
+            if (!Arrays.equals(base, ExamService.sample(IDS, 10, new SplittableRandom(seed)))) {
+                differing++;
+            }
+        }
+
+        assertThat(differing).isEqualTo(20);
+    }
+
+    @Test
+    void selectsDistinctIdsFromCandidates() {
+        for (long seed = 0; seed < 200; seed++) {
+            long[] selected = ExamService.sample(IDS, 15, new SplittableRandom(seed));
+
+            assertThat(selected).hasSize(15).doesNotHaveDuplicates();
+            assertThat(IDS).contains(selected);
+        }
+    }
+
+    @Test
+    void takingAllCandidatesYieldsPermutation() {
+        long[] selected = ExamService.sample(IDS, IDS.length, new SplittableRandom(3L));
+
+        assertThat(selected).containsExactlyInAnyOrder(IDS);
+    }
+
+    @Test
+    void zeroCountYieldsEmptySelection() {
+        assertThat(ExamService.sample(IDS, 0, new SplittableRandom(3L))).isEmpty();
+    }
+
+    @Test
+    void everyCandidateIsChosenWithRoughlyEqualFrequency() {
+        // 50 选 10，每个候选的期望命中率为 1/5；固定种子保证结果稳定
+        int trials = 20000;
+        int[] hits = new int[IDS.length];
+        SplittableRandom random = new SplittableRandom(42L);
+        for (int i = 0; i < trials; i++) {
+            for (long id : ExamService.sample(IDS, 10, random)) {
+                hits[(int) (id - IDS[0])]++;
+            }
+        }
+
+        double expected = trials * 10.0 / IDS.length;
+        for (int count : hits) {
+            assertThat((double) count).isBetween(expected * 0.9, expected * 1.1);
+        }
+    }
+}
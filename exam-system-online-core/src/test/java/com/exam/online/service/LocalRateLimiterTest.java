@@ -0,0 +1,170 @@
+package com.exam.online.service;
+
+import com.exam.online.config.RateLimitConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalRateLimiterTest {
+
+    private static final String INTERFACE_TYPE = "save-answer";
+
+    private final AtomicLong time = new AtomicLong(1_000_000L);
+    private RateLimitConfig config;
+    private LocalRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        config = new RateLimitConfig();
+        limiter = new LocalRateLimiter(config);
+        limiter.setClock(time::get);
+    }
+
+    @Test
+    void packKeepsMillisInHigh40BitsAndTokensInLow24Bits() {
+        long maxMillis = (1L << 40) - 1;
+        long maxTokens = (1L << 24) - 1;
+        long state = LocalRateLimiter.pack(maxMillis, maxTokens);
+
+        assertThat(state >>> 24).isEqualTo(maxMillis);
+        assertThat(state & maxTokens).isEqualTo(maxTokens);
+
+        // 超出24位的令牌数被截断，不会进位到时间部分
+        long overflow = LocalRateLimiter.pack(5, (1L << 24) | 7);
+        assertThat(overflow >>> 24).isEqualTo(5);
+        assertThat(overflow & maxTokens).isEqualTo(7);
+    }
+
+    @Test
+    void capacityIsClampedToTokenBits() {
+        RateLimitConfig.Rule rule = rule(100_000, 0, 1);
+
+        int allowed = 0;
+        while (limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)) {
+            allowed++;
+        }
+
+        // 低24位最多容纳 16777215 个千分之一令牌
+        assertThat(allowed).isEqualTo(16_777);
+    }
+
+    @Test
+    void rejectsWhenEmptyAndRefillsOverTime() {
+        RateLimitConfig.Rule rule = rule(2, 1, 1);
+
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).isTrue();
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).isTrue();
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).isFalse();
+
+        time.addAndGet(999);
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).isFalse();
+        time.addAndGet(1);
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).isTrue();
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).isFalse();
+    }
+
+    @Test
+    void frequentPollingDoesNotLoseFractionalRefill() {
+        // 每60秒补充1个令牌，每毫秒只补充约0.017个千分之一令牌
+        RateLimitConfig.Rule rule = rule(1, 1, 60);
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).isTrue();
+
+        for (int i = 1; i < 600; i++) {
+            time.addAndGet(100);
+            assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).as("t=%dms", i * 100).isFalse();
+        }
+        time.addAndGet(100);
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).isTrue();
+    }
+
+    @Test
+    void splitsCapacityAcrossNodes() {
+        config.getLocal().setNodeCount(2);
+        RateLimitConfig.Rule rule = rule(10, 0, 1);
+
+        int allowed = 0;
+        while (limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)) {
+            allowed++;
+        }
+
+        assertThat(allowed).isEqualTo(5);
+    }
+
+    @Test
+    void bucketsAreIndependentPerUserAndInterface() {
+        RateLimitConfig.Rule rule = rule(1, 0, 1);
+
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).isTrue();
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)).isFalse();
+        assertThat(limiter.tryAcquire(INTERFACE_TYPE, 2L, rule)).isTrue();
+        assertThat(limiter.tryAcquire("submit-exam", 1L, rule)).isTrue();
+    }
+
+    @Test
+    void concurrentAcquiresNeverExceedCapacity() throws Exception {
+        RateLimitConfig.Rule rule = rule(1000, 0, 1);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int allowed = 0;
+                    for (int i = 0; i < 500; i++) {
+                        if (limiter.tryAcquire(INTERFACE_TYPE, 1L, rule)) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get(10, TimeUnit.SECONDS);
+            }
+            assertThat(total).isEqualTo(1000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void evictIdleRemovesOnlyBucketsIdleLongerThanThreshold() {
+        config.getLocal().setIdleSeconds(60);
+        RateLimitConfig.Rule rule = rule(5, 5, 1);
+
+        limiter.tryAcquire(INTERFACE_TYPE, 1L, rule);
+        time.addAndGet(30_000);
+        limiter.tryAcquire(INTERFACE_TYPE, 2L, rule);
+        time.addAndGet(31_000);
+        limiter.evictIdle();
+
+        assertThat(limiter.bucketCount()).isEqualTo(1);
+
+        time.addAndGet(30_000);
+        limiter.evictIdle();
+
+        assertThat(limiter.bucketCount()).isZero();
+    }
+
+    private static RateLimitConfig.Rule rule(int capacity, int refillRate, int interval) {
+        RateLimitConfig.Rule rule = new RateLimitConfig.Rule();
+        rule.setCapacity(capacity);
+        rule.setRefillRate(refillRate);
+        rule.setInterval(interval);
+        return rule;
+    }
+}
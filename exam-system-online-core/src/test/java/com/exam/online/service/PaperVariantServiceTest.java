@@ -0,0 +1,218 @@
+package com.exam.online.service;
+
+import com.exam.online.config.ParticipantCacheConfig;
+import com.exam.online.dto.ExamRandomGenerateResponse;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class PaperVariantServiceTest {
+
+    private static final long EXAM_ID = 1L;
+    private static final long STUDENT_ID = 100L;
+    private static final List<String> OPTIONS = List.of("o0", "o1", "o2", "o3");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ExamService examService;
+    private ExamParticipantService examParticipantService;
+    private ParticipantSessionCache participantSessionCache;
+    private PaperVariantService service;
+    private ExamRandomGenerateResponse source;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        examService = mock(ExamService.class);
+        examParticipantService = mock(ExamParticipantService.class);
+        participantSessionCache = mock(ParticipantSessionCache.class);
+        service = new PaperVariantService(examService, examParticipantService, participantSessionCache,
+            new ParticipantCacheConfig(), objectMapper);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "revalidateInterval", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(service, "sessionMissTtl", Duration.ofSeconds(30));
+
+        String options = objectMapper.writeValueAsString(OPTIONS);
+        List<ExamRandomGenerateResponse.QuestionItem> questions = new ArrayList<>();
+        // 组别1：题号1~6的单选/多选；组别2：题号7~8的填空
+        for (int sortOrder = 1; sortOrder <= 6; sortOrder++) {
+            questions.add(new ExamRandomGenerateResponse.QuestionItem(10L + sortOrder, sortOrder % 2 == 0 ? 2 : 1,
+                "q" + sortOrder, options, 2, sortOrder, 1));
+        }
+        for (int sortOrder = 7; sortOrder <= 8; sortOrder++) {
+            questions.add(new ExamRandomGenerateResponse.QuestionItem(10L + sortOrder, 4,
+                "q" + sortOrder, null, 2, sortOrder, 2));
+        }
+        source = new ExamRandomGenerateResponse(questions, questions.size(), 16, null);
+        byte[] body = objectMapper.writeValueAsBytes(source);
+        when(examService.getExamQuestionsView(EXAM_ID))
+            .thenReturn(new ExamPaperCacheService.PaperView(1L, "\"paper-1-1\"", body, source, 0L));
+    }
+
+    @Test
+    void mapOptionLettersTranslatesDisplayLettersToCanonical() {
+        // 展示位置 A/B/C 对应原始选项 C/A/B
+        int[] perm = {2, 0, 1};
+
+        assertThat(PaperVariantService.mapOptionLetters("A", perm)).isEqualTo("C");
+        assertThat(PaperVariantService.mapOptionLetters("b", perm)).isEqualTo("A");
+        assertThat(PaperVariantService.mapOptionLetters("A,C", perm)).isEqualTo("B,C");
+        assertThat(PaperVariantService.mapOptionLetters(" CA ", perm)).isEqualTo("BC");
+        assertThat(PaperVariantService.mapOptionLetters("A, B", perm)).isEqualTo("A,C");
+    }
+
+    @Test
+    void mapOptionLettersKeepsUnrecognisedAnswers() {
+        int[] perm = {2, 0, 1};
+
+        assertThat(PaperVariantService.mapOptionLetters("D", perm)).isEqualTo("D");
+        assertThat(PaperVariantService.mapOptionLetters("A1", perm)).isEqualTo("A1");
+        assertThat(PaperVariantService.mapOptionLetters("  ", perm)).isEqualTo("  ");
+    }
+
+    @Test
+    void paperWithoutSeedIsTheCanonicalPaper() {
+        session(null);
+
+        assertThat(service.getPaper(EXAM_ID, STUDENT_ID)).isSameAs(source);
+        assertThat(service.toCanonical(EXAM_ID, STUDENT_ID, 3, "B"))
+            .isEqualTo(new PaperVariantService.CanonicalAnswer(3, "B"));
+    }
+
+    @Test
+    void variantIsDeterministicAndShufflesOnlyWithinGroups() {
+        session(42L);
+
+        ExamRandomGenerateResponse first = service.getPaper(EXAM_ID, STUDENT_ID);
+        ExamRandomGenerateResponse second = service.getPaper(EXAM_ID, STUDENT_ID);
+
+        assertThat(first).isEqualTo(second);
+        Map<Long, ExamRandomGenerateResponse.QuestionItem> canonical = byQuestionId(source);
+        for (ExamRandomGenerateResponse.QuestionItem item : first.getQuestions()) {
+            int canonicalSortOrder = canonical.get(item.getQuestionId()).getSortOrder();
+            assertThat(item.getGroupId()).isEqualTo(canonical.get(item.getQuestionId()).getGroupId());
+            assertThat(item.getSortOrder() <= 6).isEqualTo(canonicalSortOrder <= 6);
+        }
+        assertThat(first.getQuestions()).extracting(ExamRandomGenerateResponse.QuestionItem::getSortOrder)
+            .containsExactlyInAnyOrder(1, 2, 3, 4, 5, 6, 7, 8);
+    }
+
+    @Test
+    void displayedAnswersRoundTripToCanonicalQuestionAndOptions() throws Exception {
+        Map<Long, ExamRandomGenerateResponse.QuestionItem> canonical = byQuestionId(source);
+        boolean reordered = false;
+        for (long seed = 1; seed <= 50; seed++) {
+            session(seed);
+            ExamRandomGenerateResponse variant = service.getPaper(EXAM_ID, STUDENT_ID);
+
+            for (ExamRandomGenerateResponse.QuestionItem item : variant.getQuestions()) {
+                int canonicalSortOrder = canonical.get(item.getQuestionId()).getSortOrder();
+                reordered |= canonicalSortOrder != item.getSortOrder();
+                if (item.getQuestionOptions() == null) {
+                    assertThat(service.toCanonical(EXAM_ID, STUDENT_ID, item.getSortOrder(), "text"))
+                        .isEqualTo(new PaperVariantService.CanonicalAnswer(canonicalSortOrder, "text"));
+                    continue;
+                }
+                List<String> displayed = objectMapper.readValue(item.getQuestionOptions(), new TypeReference<>() { });
+                assertThat(displayed).containsExactlyInAnyOrderElementsOf(OPTIONS);
+
+                // 考生选择展示中的 o1 与 o3，映射回原始字母应为 B、D
+                String answer = letter(displayed.indexOf("o3")) + "," + letter(displayed.indexOf("o1"));
+                assertThat(service.toCanonical(EXAM_ID, STUDENT_ID, item.getSortOrder(), answer))
+                    .isEqualTo(new PaperVariantService.CanonicalAnswer(canonicalSortOrder, "B,D"));
+            }
+        }
+        assertThat(reordered).isTrue();
+    }
+
+    @Test
+    void unknownSortOrderIsReturnedUnchanged() {
+        session(7L);
+
+        assertThat(service.toCanonical(EXAM_ID, STUDENT_ID, 99, "A"))
+            .isEqualTo(new PaperVariantService.CanonicalAnswer(99, "A"));
+        assertThat(service.toCanonical(EXAM_ID, STUDENT_ID, 0, "A"))
+            .isEqualTo(new PaperVariantService.CanonicalAnswer(0, "A"));
+    }
+
+    @Test
+    void disabledVariantsSkipAllLookups() {
+        ReflectionTestUtils.setField(service, "enabled", false);
+        session(42L);
+
+        assertThat(service.toCanonical(EXAM_ID, STUDENT_ID, 3, "B"))
+            .isEqualTo(new PaperVariantService.CanonicalAnswer(3, "B"));
+        verifyNoInteractions(participantSessionCache, examService);
+        // 关闭后已有种子的考生同样看到原始试卷，与答案映射保持一致
+        assertThat(service.getPaper(EXAM_ID, STUDENT_ID)).isSameAs(source);
+    }
+
+    @Test
+    void saveReadsSeedFromSessionCacheOnlyAndRemembersMisses() {
+        assertThat(service.toCanonical(EXAM_ID, STUDENT_ID, 3, "B"))
+            .isEqualTo(new PaperVariantService.CanonicalAnswer(3, "B"));
+        assertThat(service.toCanonical(EXAM_ID, STUDENT_ID, 4, "C"))
+            .isEqualTo(new PaperVariantService.CanonicalAnswer(4, "C"));
+
+        verify(participantSessionCache, times(1)).get(EXAM_ID, STUDENT_ID);
+        verify(examParticipantService, never()).getSession(EXAM_ID, STUDENT_ID);
+    }
+
+    @Test
+    void fetchingPaperClearsRememberedMiss() {
+        service.toCanonical(EXAM_ID, STUDENT_ID, 3, "B");
+        session(42L);
+        ExamRandomGenerateResponse variant = service.getPaper(EXAM_ID, STUDENT_ID);
+
+        Map<Long, ExamRandomGenerateResponse.QuestionItem> canonical = byQuestionId(source);
+        boolean reordered = false;
+        for (ExamRandomGenerateResponse.QuestionItem item : variant.getQuestions()) {
+            int canonicalSortOrder = canonical.get(item.getQuestionId()).getSortOrder();
+            reordered |= canonicalSortOrder != item.getSortOrder();
+            assertThat(service.toCanonical(EXAM_ID, STUDENT_ID, item.getSortOrder(), "text").sortOrder())
+                .isEqualTo(canonicalSortOrder);
+        }
+        assertThat(reordered).isTrue();
+    }
+
+    @Test
+    void repeatedSavesReuseBuiltPaperWithinRevalidateInterval() {
+        session(42L);
+
+        for (int i = 0; i < 10; i++) {
+            service.toCanonical(EXAM_ID, STUDENT_ID, 1 + i % 8, "A");
+        }
+
+        verify(examService, times(1)).getExamQuestionsView(EXAM_ID);
+    }
+
+    private void session(Long seed) {
+        ParticipantSessionCache.Session session = new ParticipantSessionCache.Session(1L, 1, "token", seed);
+        when(examParticipantService.getSession(EXAM_ID, STUDENT_ID)).thenReturn(session);
+        when(participantSessionCache.get(EXAM_ID, STUDENT_ID)).thenReturn(session);
+    }
+
+    private static Map<Long, ExamRandomGenerateResponse.QuestionItem> byQuestionId(ExamRandomGenerateResponse paper) {
+        return paper.getQuestions().stream()
+            .collect(Collectors.toMap(ExamRandomGenerateResponse.QuestionItem::getQuestionId, Function.identity()));
+    }
+
+    private static String letter(int index) {
+        return String.valueOf((char) ('A' + index));
+    }
+}
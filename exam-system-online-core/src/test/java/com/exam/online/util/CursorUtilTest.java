@@ -0,0 +1,69 @@
+package com.exam.online.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CursorUtilTest {
+
+    @Test
+    void encodedCursorDecodesToLastId() {
+        assertThat(CursorUtil.decode(CursorUtil.encode(0L))).isZero();
+        assertThat(CursorUtil.decode(CursorUtil.encode(12345L))).isEqualTo(12345L);
+        assertThat(CursorUtil.decode(CursorUtil.encode(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void encodedCursorIsUrlSafeWithoutPadding() {
+        assertThat(CursorUtil.encode(Long.MAX_VALUE)).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void blankCursorStartsFromBeginning() {
+        assertThat(CursorUtil.decode(null)).isZero();
+        assertThat(CursorUtil.decode("")).isZero();
+        assertThat(CursorUtil.decode("   ")).isZero();
+    }
+
+    @Test
+    void rejectsCursorThatIsNotBase64() {
+        assertInvalid("not a cursor!");
+        assertInvalid("a===");
+    }
+
+    @Test
+    void rejectsCursorWithoutPrefix() {
+        assertInvalid(raw("12345"));
+        assertInvalid(raw("ID:12345"));
+    }
+
+    @Test
+    void rejectsCursorWithNonNumericId() {
+        assertInvalid(raw("id:"));
+        assertInvalid(raw("id:abc"));
+        assertInvalid(raw("id:1.5"));
+        assertInvalid(raw("id:99999999999999999999"));
+    }
+
+    @Test
+    void rejectsCursorWithNegativeId() {
+        assertInvalid(raw("id:-1"));
+    }
+
+    /**
+     * 按 encode 的方式编码任意内容，模拟客户端伪造的游标
+     */
+    private static String raw(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertInvalid(String cursor) {
+        assertThatThrownBy(() -> CursorUtil.decode(cursor))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("cursor不合法");
+    }
+}
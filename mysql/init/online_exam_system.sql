@@ -28,6 +28,7 @@ CREATE TABLE `answer_records`  (
   `question_id` bigint(20) NOT NULL COMMENT '题目id',
   `user_answer` text CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL COMMENT '用户答案',
   `change_times` int(11) NULL DEFAULT 0 COMMENT '用户更改次数',
+  `answer_time` datetime(3) NULL DEFAULT NULL COMMENT '当前答案的作答时间（用于乱序消息的后写优先判断）',
   `correct_answer` text CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL COMMENT '正确答案',
   `is_correct` tinyint(4) NULL DEFAULT 0 COMMENT '是否答对',
   `question_score` int(11) NOT NULL COMMENT '本题分值',
@@ -67,6 +68,7 @@ CREATE TABLE `exam_participants`  (
   `submit_time` datetime NULL DEFAULT NULL COMMENT '考试提交时间',
   `status` tinyint(4) NULL DEFAULT 0 COMMENT '考试状态（0：未开始 1：进行中 2：已提交 3：超时 4：强制交卷 5：异常断开 6：已过期）',
   `access_token` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT '当前访问令牌',
+  `paper_seed` bigint(20) NULL DEFAULT NULL COMMENT '试卷变体种子（为空表示原始题序与选项顺序）',
   `connection_id` varchar(128) CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci NULL DEFAULT NULL COMMENT 'webSocket连接id',
   `is_connected` tinyint(4) NULL DEFAULT 0 COMMENT '是否在线连接',
   `disconnect_time` datetime NULL DEFAULT NULL COMMENT '断开连接时间',
@@ -1189,6 +1191,7 @@ CREATE TABLE `exams`  (
   `create_time` datetime NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` datetime NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   `is_delete` tinyint(4) NULL DEFAULT 0 COMMENT '逻辑删除',
+  `paper_version` bigint(20) NOT NULL DEFAULT 0 COMMENT '试卷版本号（试卷内容变更时自增，试卷详情缓存与ETag以此为准）',
   PRIMARY KEY (`id`) USING BTREE,
   INDEX `idx_status_time`(`status`, `start_time`, `end_time`) USING BTREE,
   INDEX `idx_creator`(`creator_id`) USING BTREE,
@@ -1199,8 +1202,8 @@ CREATE TABLE `exams`  (
 -- ----------------------------
 -- Records of exams
 -- ----------------------------
-INSERT INTO `exams` VALUES (1, 'test2', 'test2', 1, 2, '2025-12-11 20:00:00', '2025-12-11 23:00:00', 100, 0, 0, 2, '2025-12-11 19:33:27', '2025-12-11 19:33:27', 0);
-INSERT INTO `exams` VALUES (2, 'test2', 'test2', 3, 2, '2025-12-12 15:26:00', '2025-12-12 23:00:00', 100, 117, 55, 2, '2025-12-12 15:25:40', '2025-12-12 15:26:38', 0);
+INSERT INTO `exams` VALUES (1, 'test2', 'test2', 1, 2, '2025-12-11 20:00:00', '2025-12-11 23:00:00', 100, 0, 0, 2, '2025-12-11 19:33:27', '2025-12-11 19:33:27', 0, 0);
+INSERT INTO `exams` VALUES (2, 'test2', 'test2', 3, 2, '2025-12-12 15:26:00', '2025-12-12 23:00:00', 100, 117, 55, 2, '2025-12-12 15:25:40', '2025-12-12 15:26:38', 0, 0);
 
 -- ----------------------------
 -- Table structure for questions_bank
@@ -1375,6 +1378,27 @@ INSERT INTO `questions_tags` VALUES (8, '网络编程', 0, '2025-12-11 21:02:56'
 INSERT INTO `questions_tags` VALUES (9, 'JVM', 0, '2025-12-11 21:02:56', '2025-12-11 21:02:56');
 INSERT INTO `questions_tags` VALUES (10, '设计模式', 0, '2025-12-11 21:02:56', '2025-12-11 21:02:56');
 
+-- ----------------------------
+-- Table structure for question_tag_relations
+-- ----------------------------
+DROP TABLE IF EXISTS `question_tag_relations`;
+CREATE TABLE `question_tag_relations`  (
+  `tag_id` bigint(20) NOT NULL COMMENT '标签id',
+  `question_id` bigint(20) NOT NULL COMMENT '题目id',
+  PRIMARY KEY (`tag_id`, `question_id`) USING BTREE,
+  INDEX `idx_question_id`(`question_id`) USING BTREE,
+  CONSTRAINT `fk_question_tag_relations_tag` FOREIGN KEY (`tag_id`) REFERENCES `questions_tags` (`tag_id`) ON DELETE CASCADE ON UPDATE RESTRICT,
+  CONSTRAINT `fk_question_tag_relations_question` FOREIGN KEY (`question_id`) REFERENCES `questions_bank` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_general_ci COMMENT = '题目-标签关联表' ROW_FORMAT = Dynamic;
+
+-- ----------------------------
+-- Records of question_tag_relations（由 questions_bank.question_tags 逗号分隔的标签名拆分生成）
+-- ----------------------------
+INSERT INTO `question_tag_relations` (`tag_id`, `question_id`)
+SELECT t.`tag_id`, q.`id`
+FROM `questions_bank` q
+JOIN `questions_tags` t ON FIND_IN_SET(t.`tag_name`, q.`question_tags`) > 0;
+
 -- ----------------------------
 -- Table structure for system_users
 -- ----------------------------